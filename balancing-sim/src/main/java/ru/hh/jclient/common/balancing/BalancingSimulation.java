@@ -0,0 +1,305 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import static ru.hh.jclient.common.HttpStatuses.CONNECT_TIMEOUT_ERROR;
+import static ru.hh.jclient.common.JClientBase.HTTP_GET;
+import static ru.hh.jclient.common.JClientBase.HTTP_POST;
+import ru.hh.jclient.common.Response;
+import static ru.hh.jclient.common.ResponseStatusMessages.CONNECTION_RESET_MESSAGE;
+import static ru.hh.jclient.common.ResponseStatusMessages.REQUEST_TIMEOUT_MESSAGE;
+
+/**
+ * Replays traffic to synthetic {@link ServerModel servers} through real {@link Upstream} and {@link BalancingState}
+ * with {@link VirtualClock}, so balancing configs can be tuned offline: e.g. how much traffic a slow or failing server still gets,
+ * what tail latency a GC pause gives with and without retries, how a deploy with slow start looks.
+ * Requests go the same way as with {@link UpstreamRequestBalancer}: concurrency limit, server selection, release with response time,
+ * retries decided by {@link RetryPolicy} of the upstream config within max tries, request time left and retry budget.
+ * Timeouts and resets by restarted servers are 599 responses, like transport errors are mapped to.
+ * Hedging, outer timeout and timeout multiplier are not simulated.
+ * Traffic, servers and random picks of strategies are seeded, so runs with the same seed are equal
+ */
+public final class BalancingSimulation {
+  private static final String UPSTREAM_NAME = "simulated";
+  /**
+   * time to check traffic rate again if there is no traffic
+   */
+  private static final long IDLE_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final UpstreamConfigs configs;
+  private final String datacenter;
+  private final boolean allowCrossDCRequests;
+  private final List<ServerModel> serverModels = new ArrayList<>();
+  private TrafficShape traffic = TrafficShape.constant(100);
+  private long durationMillis = TimeUnit.MINUTES.toMillis(1);
+  private long seed;
+  private String profile = Upstream.DEFAULT_PROFILE;
+  private String method = HTTP_GET;
+  @Nullable
+  private BalancingStrategyType strategyType;
+  private boolean adaptive;
+
+  public BalancingSimulation(UpstreamConfigs configs) {
+    this(configs, null, false);
+  }
+
+  public BalancingSimulation(UpstreamConfigs configs, String datacenter, boolean allowCrossDCRequests) {
+    this.configs = configs;
+    this.datacenter = datacenter;
+    this.allowCrossDCRequests = allowCrossDCRequests;
+  }
+
+  public BalancingSimulation addServer(ServerModel serverModel) {
+    serverModels.add(serverModel);
+    return this;
+  }
+
+  public BalancingSimulation setTraffic(TrafficShape traffic) {
+    this.traffic = traffic;
+    return this;
+  }
+
+  /**
+   * time requests arrive for, requests in flight are completed after it
+   */
+  public BalancingSimulation setDurationMillis(long durationMillis) {
+    this.durationMillis = durationMillis;
+    return this;
+  }
+
+  public BalancingSimulation setSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  public BalancingSimulation setProfile(String profile) {
+    this.profile = profile;
+    return this;
+  }
+
+  /**
+   * method of simulated requests, {@link RetryPolicy} retries some errors of non idempotent POST requests only
+   */
+  public BalancingSimulation setMethod(String method) {
+    this.method = method;
+    return this;
+  }
+
+  /**
+   * overrides strategy set in profile config, like {@link RequestBalancerBuilder#makePeakEwma()} does
+   */
+  public BalancingSimulation setStrategyType(@Nullable BalancingStrategyType strategyType) {
+    this.strategyType = strategyType;
+    return this;
+  }
+
+  /**
+   * selects servers with {@link AdaptiveBalancingState}, like {@link RequestBalancerBuilder#makeAdaptive()} does
+   */
+  public BalancingSimulation setAdaptive(boolean adaptive) {
+    this.adaptive = adaptive;
+    return this;
+  }
+
+  public SimulationReport run() {
+    if (serverModels.isEmpty()) {
+      throw new IllegalStateException("No servers to simulate");
+    }
+    return new Run().execute();
+  }
+
+  private final class Run {
+    private final VirtualClock clock = new VirtualClock();
+    private final Random random = new Random(seed);
+    private final PriorityQueue<Event> events = new PriorityQueue<>(
+        Comparator.comparingLong(Event::getNanos).thenComparingLong(Event::getSequence)
+    );
+    private final ServerSlots serverSlots = new ServerSlots();
+    private final Map<String, ServerModel> serverModelByAddress = new HashMap<>();
+    private final SimulationReport report = new SimulationReport(serverModels);
+    private final long durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+    private Upstream upstream;
+    private long sequence;
+
+    SimulationReport execute() {
+      List<Server> servers = new ArrayList<>();
+      for (ServerModel serverModel : serverModels) {
+        serverModel.start(random.nextLong());
+        servers.add(serverModel.getServer());
+        serverModelByAddress.put(serverModel.getAddress(), serverModel);
+        for (ServerModel.Restart restart : serverModel.getRestarts()) {
+          if (restart.atMillis >= durationMillis) {
+            continue;
+          }
+          schedule(TimeUnit.MILLISECONDS.toNanos(restart.atMillis), () -> updateServers(List.of(), List.of(serverModel.stop())));
+          schedule(TimeUnit.MILLISECONDS.toNanos(restart.atMillis + restart.downMillis),
+              () -> updateServers(List.of(serverModel.restart()), List.of()));
+        }
+      }
+      serverSlots.update(servers, List.of());
+      Random strategyRandom = new Random(random.nextLong());
+      upstream = new Upstream(UPSTREAM_NAME, configs, serverSlots.getServers(), datacenter, allowCrossDCRequests, true, clock,
+          clock::nanoTime, () -> strategyRandom);
+      scheduleNextArrival();
+
+      Event event;
+      while ((event = events.poll()) != null) {
+        clock.advanceTo(event.nanos);
+        event.action.run();
+      }
+      return report;
+    }
+
+    private void updateServers(List<Server> aliveServers, List<Server> deadServers) {
+      serverSlots.update(aliveServers, deadServers);
+      upstream.updateConfig(configs, serverSlots.getServers());
+    }
+
+    private void scheduleNextArrival() {
+      long now = clock.nanoTime();
+      double requestsPerSec = traffic.getRequestsPerSec(TimeUnit.NANOSECONDS.toMillis(now));
+      long next = requestsPerSec > 0
+          ? now + (long) (-Math.log(1 - random.nextDouble()) / requestsPerSec * TimeUnit.SECONDS.toNanos(1))
+          : now + IDLE_STEP_NANOS;
+      if (next >= durationNanos) {
+        return;
+      }
+      schedule(next, () -> {
+        if (requestsPerSec > 0) {
+          new SimulatedRequest(clock.nanoTime()).executeTry();
+        }
+        scheduleNextArrival();
+      });
+    }
+
+    private void schedule(long nanos, Runnable action) {
+      events.add(new Event(nanos, sequence++, action));
+    }
+
+    private final class SimulatedRequest {
+      private final long startNanos;
+      private final BalancingState state;
+      private int tries;
+      private long requestTimeLeftMicros;
+
+      private SimulatedRequest(long startNanos) {
+        this.startNanos = startNanos;
+        this.state = adaptive ? new AdaptiveBalancingState(upstream, profile) : new BalancingState(upstream, profile, strategyType);
+        UpstreamConfig config = state.getUpstreamConfig();
+        this.requestTimeLeftMicros = TimeUnit.MILLISECONDS.toMicros((long) config.getRequestTimeoutMs() * config.getMaxTimeoutTries());
+      }
+
+      private void executeTry() {
+        ConcurrencyLimiter limiter = upstream.getConcurrencyLimiter();
+        boolean limited = limiter.isEnabled();
+        if (limited && !limiter.tryAcquire()) {
+          finish(true, true);
+          return;
+        }
+        state.acquireServer();
+        if (!state.isServerAvailable()) {
+          if (limited) {
+            limiter.release();
+          }
+          finish(true, true);
+          return;
+        }
+        tries++;
+        ServerModel serverModel = serverModelByAddress.get(state.getCurrentServer().getAddress());
+        long startMicros = TimeUnit.NANOSECONDS.toMicros(clock.nanoTime());
+        ServerModel.Reply reply = serverModel.startRequest(startMicros);
+        long timeoutMicros = TimeUnit.MILLISECONDS.toMicros(state.getUpstreamConfig().getRequestTimeoutMs());
+        boolean isTimeout = timeoutMicros > 0 && reply.responseTimeMicros >= timeoutMicros;
+        long responseTimeMicros = isTimeout ? timeoutMicros : reply.responseTimeMicros;
+        schedule(clock.nanoTime() + TimeUnit.MICROSECONDS.toNanos(responseTimeMicros), () -> {
+          serverModel.finishRequest();
+          Response response;
+          if (isTimeout) {
+            response = new SimulatedResponse(CONNECT_TIMEOUT_ERROR, REQUEST_TIMEOUT_MESSAGE);
+          } else if (reply.generation != serverModel.getGeneration()) {
+            // requests in flight to a restarted server are reset
+            response = new SimulatedResponse(CONNECT_TIMEOUT_ERROR, CONNECTION_RESET_MESSAGE);
+          } else {
+            response = new SimulatedResponse(reply.statusCode, null);
+          }
+          onResponse(serverModel, limited ? limiter : null, responseTimeMicros, response);
+        });
+      }
+
+      private void onResponse(ServerModel serverModel, @Nullable ConcurrencyLimiter limiter, long responseTimeMicros, Response response) {
+        RetryPolicy retryPolicy = state.getUpstreamConfig().getRetryPolicy();
+        boolean isError = retryPolicy.isServerError(response);
+        report.recordTry(serverModel.getAddress(), isError);
+        if (!isError) {
+          upstream.getRetryBudget().deposit();
+        }
+        if (limiter != null) {
+          limiter.release(responseTimeMicros, isError);
+        }
+        state.releaseServer(responseTimeMicros, isError);
+        requestTimeLeftMicros = Math.max(0, requestTimeLeftMicros - responseTimeMicros);
+        // same checks as RequestBalancer and UpstreamRequestBalancer do, in the same order
+        boolean doRetry = tries < state.getUpstreamConfig().getMaxTries() && requestTimeLeftMicros > 0
+            && retryPolicy.isRetriable(response, !HTTP_POST.equals(method)) && upstream.getRetryBudget().tryWithdraw();
+        if (doRetry) {
+          state.incrementTries();
+          executeTry();
+          return;
+        }
+        finish(isError, false);
+      }
+
+      private void finish(boolean isError, boolean rejected) {
+        report.recordRequest(TimeUnit.NANOSECONDS.toMicros(clock.nanoTime() - startNanos), isError, rejected && tries == 0);
+      }
+    }
+  }
+
+  private static final class SimulatedResponse extends Response {
+    private final int statusCode;
+    @Nullable
+    private final String statusText;
+
+    private SimulatedResponse(int statusCode, @Nullable String statusText) {
+      this.statusCode = statusCode;
+      this.statusText = statusText;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    @Override
+    public String getStatusText() {
+      return statusText;
+    }
+  }
+
+  private static final class Event {
+    private final long nanos;
+    private final long sequence;
+    private final Runnable action;
+
+    private Event(long nanos, long sequence, Runnable action) {
+      this.nanos = nanos;
+      this.sequence = sequence;
+      this.action = action;
+    }
+
+    private long getNanos() {
+      return nanos;
+    }
+
+    private long getSequence() {
+      return sequence;
+    }
+  }
+}
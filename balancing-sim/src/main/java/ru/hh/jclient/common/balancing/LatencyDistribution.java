@@ -0,0 +1,44 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response time of a {@link ServerModel} with no load and no faults
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+  long sampleMicros(Random random);
+
+  static LatencyDistribution constant(long millis) {
+    long micros = TimeUnit.MILLISECONDS.toMicros(millis);
+    return random -> micros;
+  }
+
+  static LatencyDistribution exponential(long meanMillis) {
+    long meanMicros = TimeUnit.MILLISECONDS.toMicros(meanMillis);
+    return random -> (long) (-Math.log(1 - random.nextDouble()) * meanMicros);
+  }
+
+  /**
+   * long tailed distribution typical for services: median is reached by half of responses,
+   * sigma of 0.5 gives p99 about 3 times the median, 1 - about 10 times
+   */
+  static LatencyDistribution logNormal(long medianMillis, double sigma) {
+    long medianMicros = TimeUnit.MILLISECONDS.toMicros(medianMillis);
+    return random -> (long) (medianMicros * Math.exp(sigma * random.nextGaussian()));
+  }
+
+  /**
+   * replays recorded response times in random order
+   */
+  static LatencyDistribution recorded(long... micros) {
+    if (micros.length == 0) {
+      throw new IllegalArgumentException("No response times recorded");
+    }
+    long[] samples = Arrays.copyOf(micros, micros.length);
+    return random -> samples[random.nextInt(samples.length)];
+  }
+}
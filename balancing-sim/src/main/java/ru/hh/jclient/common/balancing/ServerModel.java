@@ -0,0 +1,236 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import static ru.hh.jclient.common.HttpStatuses.OK;
+import static ru.hh.jclient.common.HttpStatuses.SERVICE_UNAVAILABLE;
+
+/**
+ * Synthetic server of a {@link BalancingSimulation}. Response time is sampled from latency distribution and grows with requests
+ * in flight over capacity, faults scheduled by simulation time add errors and slow responses, GC pauses stall all requests in flight,
+ * restarts remove the server from the upstream for a while and bring it back as a new one, which goes through slow start
+ */
+public final class ServerModel {
+  private final String address;
+  private final int weight;
+  private final String datacenter;
+  private final LatencyDistribution latency;
+  private double errorRate;
+  private int errorStatusCode = SERVICE_UNAVAILABLE;
+  private int capacity;
+  private long gcPeriodMicros;
+  private long gcPauseMicros;
+  private final List<Fault> faults = new ArrayList<>();
+  private final List<Restart> restarts = new ArrayList<>();
+
+  private Random random;
+  private long gcOffsetMicros;
+  private Server server;
+  /**
+   * incremented on restart, requests started before it fail
+   */
+  private int generation;
+  private int inFlight;
+
+  public ServerModel(String address, int weight, String datacenter, LatencyDistribution latency) {
+    this.address = address;
+    this.weight = weight;
+    this.datacenter = datacenter;
+    this.latency = latency;
+  }
+
+  /**
+   * share of requests failed with server error regardless of faults
+   */
+  public ServerModel setErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /**
+   * status of failed requests, {@link RetryPolicy} of the upstream decides if it is a server error
+   * and if it is retried
+   */
+  public ServerModel setErrorStatusCode(int errorStatusCode) {
+    this.errorStatusCode = errorStatusCode;
+    return this;
+  }
+
+  /**
+   * requests in flight the server handles without slowing down, every request over it adds a share of response time. 0 means no limit
+   */
+  public ServerModel setCapacity(int capacity) {
+    this.capacity = capacity;
+    return this;
+  }
+
+  /**
+   * stop-the-world pauses of pauseMillis every periodMillis, first pause is at a random moment of the first period
+   */
+  public ServerModel setGcPauses(long periodMillis, long pauseMillis) {
+    if (pauseMillis >= periodMillis) {
+      throw new IllegalArgumentException("GC pause " + pauseMillis + " ms should be shorter than its period " + periodMillis + " ms");
+    }
+    this.gcPeriodMicros = TimeUnit.MILLISECONDS.toMicros(periodMillis);
+    this.gcPauseMicros = TimeUnit.MILLISECONDS.toMicros(pauseMillis);
+    return this;
+  }
+
+  /**
+   * requests started within the window fail with errorRate and take latencyFactor times longer
+   */
+  public ServerModel addFault(long fromMillis, long toMillis, double errorRate, double latencyFactor) {
+    faults.add(new Fault(TimeUnit.MILLISECONDS.toMicros(fromMillis), TimeUnit.MILLISECONDS.toMicros(toMillis), errorRate, latencyFactor));
+    return this;
+  }
+
+  /**
+   * deploy of a new version: the server is removed from the upstream at atMillis and added back after downMillis
+   */
+  public ServerModel addRestart(long atMillis, long downMillis) {
+    restarts.add(new Restart(atMillis, downMillis));
+    return this;
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  public String getDatacenter() {
+    return datacenter;
+  }
+
+  List<Restart> getRestarts() {
+    return restarts;
+  }
+
+  /**
+   * resets runtime state before a simulation run
+   */
+  void start(long seed) {
+    random = new Random(seed);
+    gcOffsetMicros = gcPeriodMicros > 0 ? (long) (random.nextDouble() * gcPeriodMicros) : 0;
+    generation = 0;
+    inFlight = 0;
+    server = new Server(address, weight, datacenter);
+  }
+
+  Server getServer() {
+    return server;
+  }
+
+  /**
+   * @return the server object which was removed from the upstream
+   */
+  Server stop() {
+    generation++;
+    return server;
+  }
+
+  /**
+   * @return new server object to add to the upstream
+   */
+  Server restart() {
+    server = new Server(address, weight, datacenter);
+    return server;
+  }
+
+  int getGeneration() {
+    return generation;
+  }
+
+  Reply startRequest(long startMicros) {
+    inFlight++;
+    double errorRate = this.errorRate;
+    double latencyFactor = 1;
+    for (Fault fault : faults) {
+      if (startMicros >= fault.fromMicros && startMicros < fault.toMicros) {
+        errorRate = Math.max(errorRate, fault.errorRate);
+        latencyFactor *= fault.latencyFactor;
+      }
+    }
+    double latencyMicros = latency.sampleMicros(random) * latencyFactor;
+    if (capacity > 0 && inFlight > capacity) {
+      latencyMicros = latencyMicros * inFlight / capacity;
+    }
+    long responseTimeMicros = (long) latencyMicros;
+    responseTimeMicros += getGcStallMicros(startMicros, responseTimeMicros);
+    return new Reply(responseTimeMicros, random.nextDouble() < errorRate ? errorStatusCode : OK, generation);
+  }
+
+  void finishRequest() {
+    inFlight--;
+  }
+
+  private long getGcStallMicros(long startMicros, long responseTimeMicros) {
+    if (gcPeriodMicros == 0) {
+      return 0;
+    }
+    long endMicros = startMicros + responseTimeMicros;
+    long pauseStartMicros = gcOffsetMicros + Math.floorDiv(startMicros - gcOffsetMicros, gcPeriodMicros) * gcPeriodMicros;
+    while (pauseStartMicros < endMicros) {
+      long pauseEndMicros = pauseStartMicros + gcPauseMicros;
+      if (pauseEndMicros > startMicros) {
+        endMicros += pauseEndMicros - Math.max(pauseStartMicros, startMicros);
+      }
+      pauseStartMicros += gcPeriodMicros;
+    }
+    return endMicros - startMicros - responseTimeMicros;
+  }
+
+  @Override
+  public String toString() {
+    return "ServerModel{" +
+        "address='" + address + '\'' +
+        ", weight=" + weight +
+        ", datacenter='" + datacenter + '\'' +
+        ", errorRate=" + errorRate +
+        ", errorStatusCode=" + errorStatusCode +
+        ", capacity=" + capacity +
+        ", faults=" + faults.size() +
+        ", restarts=" + restarts.size() +
+        '}';
+  }
+
+  static final class Reply {
+    final long responseTimeMicros;
+    final int statusCode;
+    final int generation;
+
+    private Reply(long responseTimeMicros, int statusCode, int generation) {
+      this.responseTimeMicros = responseTimeMicros;
+      this.statusCode = statusCode;
+      this.generation = generation;
+    }
+  }
+
+  static final class Restart {
+    final long atMillis;
+    final long downMillis;
+
+    private Restart(long atMillis, long downMillis) {
+      this.atMillis = atMillis;
+      this.downMillis = downMillis;
+    }
+  }
+
+  private static final class Fault {
+    private final long fromMicros;
+    private final long toMicros;
+    private final double errorRate;
+    private final double latencyFactor;
+
+    private Fault(long fromMicros, long toMicros, double errorRate, double latencyFactor) {
+      this.fromMicros = fromMicros;
+      this.toMicros = toMicros;
+      this.errorRate = errorRate;
+      this.latencyFactor = latencyFactor;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Results of a {@link BalancingSimulation} run: latency and errors of requests as seen by clients (all tries included)
+ * and how tries were spread over servers
+ */
+public final class SimulationReport {
+  private long[] latenciesMicros = new long[1024];
+  private int requests;
+  private int failedRequests;
+  private int rejectedRequests;
+  private int tries;
+  private final Map<String, ServerStats> serverStats = new LinkedHashMap<>();
+  private boolean sorted;
+
+  SimulationReport(Iterable<ServerModel> serverModels) {
+    for (ServerModel serverModel : serverModels) {
+      serverStats.put(serverModel.getAddress(), new ServerStats(serverModel.getWeight()));
+    }
+  }
+
+  void recordTry(String address, boolean isError) {
+    tries++;
+    ServerStats stats = serverStats.get(address);
+    stats.tries++;
+    if (isError) {
+      stats.errors++;
+    }
+  }
+
+  /**
+   * @param rejected request got no server or was over concurrency limit
+   */
+  void recordRequest(long latencyMicros, boolean isError, boolean rejected) {
+    if (requests == latenciesMicros.length) {
+      latenciesMicros = Arrays.copyOf(latenciesMicros, requests * 2);
+    }
+    latenciesMicros[requests++] = latencyMicros;
+    if (isError) {
+      failedRequests++;
+    }
+    if (rejected) {
+      rejectedRequests++;
+    }
+  }
+
+  public int getRequests() {
+    return requests;
+  }
+
+  public int getFailedRequests() {
+    return failedRequests;
+  }
+
+  public int getRejectedRequests() {
+    return rejectedRequests;
+  }
+
+  public double getErrorRate() {
+    return requests == 0 ? 0 : (double) failedRequests / requests;
+  }
+
+  /**
+   * @return tries per request, 1 means there were no retries
+   */
+  public double getTriesPerRequest() {
+    return requests == 0 ? 0 : (double) tries / requests;
+  }
+
+  /**
+   * @param percentile from 0 to 1, e.g. 0.99
+   */
+  public long getLatencyMicros(double percentile) {
+    if (requests == 0) {
+      return 0;
+    }
+    if (!sorted) {
+      Arrays.sort(latenciesMicros, 0, requests);
+      sorted = true;
+    }
+    int index = (int) Math.ceil(percentile * requests) - 1;
+    return latenciesMicros[Math.max(0, Math.min(requests - 1, index))];
+  }
+
+  public int getTries(String address) {
+    return serverStats.get(address).tries;
+  }
+
+  public int getErrors(String address) {
+    return serverStats.get(address).errors;
+  }
+
+  /**
+   * @return max tries per unit of weight of a server relative to the mean of all servers, 1 means load matches weights exactly
+   */
+  public double getLoadSkew() {
+    double max = 0;
+    double sum = 0;
+    for (ServerStats stats : serverStats.values()) {
+      double load = stats.getLoad();
+      max = Math.max(max, load);
+      sum += load;
+    }
+    return sum == 0 ? 0 : max * serverStats.size() / sum;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("requests=%d, error_rate=%.4f, rejected=%d, tries_per_request=%.3f, load_skew=%.3f%n",
+        requests, getErrorRate(), rejectedRequests, getTriesPerRequest(), getLoadSkew()));
+    report.append(String.format("latency_ms: p50=%.1f, p90=%.1f, p99=%.1f, p999=%.1f, max=%.1f%n",
+        getLatencyMicros(0.5) / 1000.0, getLatencyMicros(0.9) / 1000.0, getLatencyMicros(0.99) / 1000.0,
+        getLatencyMicros(0.999) / 1000.0, getLatencyMicros(1) / 1000.0));
+    serverStats.forEach((address, stats) -> report.append(String.format("%s: weight=%d, tries=%d, errors=%d%n",
+        address, stats.weight, stats.tries, stats.errors)));
+    return report.toString();
+  }
+
+  private static final class ServerStats {
+    private final int weight;
+    private int tries;
+    private int errors;
+
+    private ServerStats(int weight) {
+      this.weight = weight;
+    }
+
+    private double getLoad() {
+      return weight == 0 ? 0 : (double) tries / weight;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package ru.hh.jclient.common.balancing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rate of requests to an upstream over simulation time, requests arrive as a Poisson process with that rate
+ */
+@FunctionalInterface
+public interface TrafficShape {
+
+  double getRequestsPerSec(long elapsedMillis);
+
+  static TrafficShape constant(double requestsPerSec) {
+    return elapsedMillis -> requestsPerSec;
+  }
+
+  /**
+   * @param stepMillis time every rate lasts for, the last rate lasts till the end of simulation
+   */
+  static TrafficShape recorded(long stepMillis, double... requestsPerSec) {
+    if (stepMillis <= 0 || requestsPerSec.length == 0) {
+      throw new IllegalArgumentException("Recorded traffic needs positive step and at least one rate");
+    }
+    double[] rates = Arrays.copyOf(requestsPerSec, requestsPerSec.length);
+    return elapsedMillis -> rates[(int) Math.min(elapsedMillis / stepMillis, rates.length - 1)];
+  }
+
+  /**
+   * reads traffic recorded as lines of {@code elapsed_millis,requests_per_sec}, e.g. exported from request rate graphs.
+   * Every rate lasts till the next line, lines not starting with a digit (headers, comments) are skipped
+   */
+  static TrafficShape fromCsv(Reader reader) throws IOException {
+    List<Long> times = new ArrayList<>();
+    List<Double> rates = new ArrayList<>();
+    BufferedReader lines = new BufferedReader(reader);
+    String line;
+    while ((line = lines.readLine()) != null) {
+      line = line.strip();
+      if (line.isEmpty() || !Character.isDigit(line.charAt(0))) {
+        continue;
+      }
+      String[] values = line.split(",");
+      if (values.length != 2) {
+        throw new IllegalArgumentException("Expected elapsed_millis,requests_per_sec, got: " + line);
+      }
+      long elapsedMillis = Long.parseLong(values[0].strip());
+      if (!times.isEmpty() && elapsedMillis <= times.get(times.size() - 1)) {
+        throw new IllegalArgumentException("Time should grow, got: " + line);
+      }
+      times.add(elapsedMillis);
+      rates.add(Double.parseDouble(values[1].strip()));
+    }
+    if (times.isEmpty()) {
+      throw new IllegalArgumentException("No traffic recorded");
+    }
+    long[] timesArray = times.stream().mapToLong(Long::longValue).toArray();
+    double[] ratesArray = rates.stream().mapToDouble(Double::doubleValue).toArray();
+    return elapsedMillis -> {
+      int index = Arrays.binarySearch(timesArray, elapsedMillis);
+      if (index < 0) {
+        index = -index - 2;
+      }
+      return index < 0 ? 0 : ratesArray[index];
+    };
+  }
+}
@@ -0,0 +1,68 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock of a {@link BalancingSimulation}: time moves only when the simulation advances it to the next event,
+ * so an hour of traffic is replayed as fast as balancing code runs. Not thread safe, simulation is single threaded
+ */
+public final class VirtualClock extends Clock {
+  /**
+   * time of simulation start, not zero as zero means unset time for some balancing state
+   */
+  static final long ORIGIN_MILLIS = 1_600_000_000_000L;
+
+  private final ZoneId zone = ZoneOffset.UTC;
+  private long nanos;
+
+  /**
+   * @return nanos since simulation start, used as {@link System#nanoTime()} of balancing code
+   */
+  public long nanoTime() {
+    return nanos;
+  }
+
+  /**
+   * @return millis since simulation start
+   */
+  public long elapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  void advanceTo(long nanos) {
+    if (nanos < this.nanos) {
+      throw new IllegalArgumentException("Time can not go back from " + this.nanos + " to " + nanos + " ns");
+    }
+    this.nanos = nanos;
+  }
+
+  @Override
+  public long millis() {
+    return ORIGIN_MILLIS + elapsedMillis();
+  }
+
+  @Override
+  public Instant instant() {
+    return Instant.ofEpochMilli(ORIGIN_MILLIS).plusNanos(nanos);
+  }
+
+  @Override
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * zones do not matter for balancing, a clock in another zone would not follow the simulation
+   */
+  @Override
+  public Clock withZone(ZoneId zone) {
+    if (this.zone.equals(zone)) {
+      return this;
+    }
+    throw new UnsupportedOperationException("Virtual clock does not support zone change to " + zone);
+  }
+}
@@ -0,0 +1,143 @@
+package ru.hh.jclient.common.balancing;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import ru.hh.jclient.common.HttpStatuses;
+import ru.hh.jclient.common.JClientBase;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+import ru.hh.jclient.common.balancing.config.ApplicationConfig;
+import ru.hh.jclient.common.balancing.config.Host;
+import ru.hh.jclient.common.balancing.config.Profile;
+
+public class BalancingSimulationTest {
+  private static final String DATACENTER = "DC1";
+  private static final long DURATION_MILLIS = 20_000;
+
+  @Test
+  public void slowServerShouldGetLessTrafficWithPeakEwma() {
+    SimulationReport report = createSimulation(createProfile(), 4)
+        .addServer(new ServerModel("slow", 1, DATACENTER, LatencyDistribution.logNormal(100, 0.3)))
+        .setStrategyType(BalancingStrategyType.PEAK_EWMA)
+        .run();
+
+    assertEquals(0, report.getErrorRate(), 0);
+    assertTrue(report.toString(), report.getTries("slow") * 4 < report.getTries("server0"));
+  }
+
+  @Test
+  public void failingServerShouldBeCutOffByCircuitBreaker() {
+    Profile profile = createProfile().setCircuitBreakerConsecutiveFails(5);
+    SimulationReport report = createSimulation(profile, 4)
+        .addServer(new ServerModel("failing", 1, DATACENTER, LatencyDistribution.constant(1)).addFault(5_000, 15_000, 1, 1))
+        .run();
+
+    assertTrue(report.toString(), report.getErrorRate() < 0.001);
+    assertTrue(report.toString(), report.getTriesPerRequest() < 1.05);
+    assertTrue(report.toString(), report.getErrors("failing") * 10 < report.getTries("server0"));
+  }
+
+  @Test
+  public void restartedServerShouldGetLessTrafficOnSlowStart() {
+    SimulationReport withoutSlowStart = createSimulation(createProfile(), 3)
+        .addServer(createServer("restarted").addRestart(5_000, 1_000))
+        .run();
+    SimulationReport withSlowStart = createSimulation(createProfile().setSlowStartIntervalSec(10), 3)
+        .addServer(createServer("restarted").addRestart(5_000, 1_000))
+        .run();
+
+    assertTrue(withSlowStart.toString(), withSlowStart.getTries("restarted") < withoutSlowStart.getTries("restarted") * 0.9);
+    assertTrue(withSlowStart.toString(), withSlowStart.getTries("restarted") > withoutSlowStart.getTries("restarted") * 0.5);
+  }
+
+  @Test
+  public void gcPausesShouldShowInTailLatency() {
+    SimulationReport report = createSimulation(createProfile(), 1)
+        .addServer(createServer("paused").setGcPauses(1_000, 200))
+        .run();
+
+    assertTrue(report.toString(), report.getLatencyMicros(0.5) < 20_000);
+    assertTrue(report.toString(), report.getLatencyMicros(0.999) > 100_000);
+  }
+
+  @Test
+  public void recordedTrafficShouldBeReplayed() throws IOException {
+    TrafficShape traffic = TrafficShape.fromCsv(new StringReader("elapsed_millis,requests_per_sec\n0,100\n10000,300\n"));
+    assertEquals(100, traffic.getRequestsPerSec(9_999), 0);
+    assertEquals(300, traffic.getRequestsPerSec(10_000), 0);
+
+    SimulationReport report = createSimulation(createProfile(), 2).setTraffic(traffic).run();
+    assertEquals(4_000, report.getRequests(), 200);
+  }
+
+  @Test
+  public void runsWithSameSeedShouldBeEqual() {
+    BalancingSimulation simulation = createSimulation(createProfile(), 3)
+        .addServer(createServer("failing").setErrorRate(0.1))
+        .setSeed(42);
+    SimulationReport first = simulation.run();
+    SimulationReport second = simulation.run();
+
+    assertEquals(first.getRequests(), second.getRequests());
+    assertEquals(first.getFailedRequests(), second.getFailedRequests());
+    assertEquals(first.getLatencyMicros(0.99), second.getLatencyMicros(0.99));
+  }
+
+  @Test
+  public void randomizedRunsWithSameSeedShouldBeEqual() {
+    BalancingSimulation simulation = createSimulation(createProfile(), 3)
+        .addServer(createServer("failing").setErrorRate(0.1))
+        .setStrategyType(BalancingStrategyType.POWER_OF_TWO_CHOICES)
+        .setSeed(42);
+    SimulationReport first = simulation.run();
+    SimulationReport second = simulation.run();
+
+    for (String address : new String[] {"server0", "server1", "server2", "failing"}) {
+      assertEquals(first.getTries(address), second.getTries(address));
+    }
+    assertEquals(first.getLatencyMicros(0.99), second.getLatencyMicros(0.99));
+  }
+
+  @Test
+  public void errorsShouldBeRetriedByRetryPolicy() {
+    SimulationReport get = createSimulation(createProfile(), 3)
+        .addServer(createServer("failing").setErrorRate(0.1))
+        .run();
+    SimulationReport post = createSimulation(createProfile(), 3)
+        .addServer(createServer("failing").setErrorRate(0.1))
+        .setMethod(JClientBase.HTTP_POST)
+        .run();
+    SimulationReport notServerError = createSimulation(createProfile(), 3)
+        .addServer(createServer("failing").setErrorRate(0.1).setErrorStatusCode(HttpStatuses.INTERNAL_SERVER_ERROR))
+        .run();
+
+    assertTrue(get.toString(), get.getTriesPerRequest() > 1);
+    assertEquals(post.toString(), 1, post.getTriesPerRequest(), 0);
+    assertEquals(notServerError.toString(), 1, notServerError.getTriesPerRequest(), 0);
+    assertEquals(notServerError.toString(), 0, notServerError.getErrors("failing"));
+  }
+
+  private static BalancingSimulation createSimulation(Profile profile, int servers) {
+    ApplicationConfig applicationConfig = new ApplicationConfig()
+        .setHosts(Map.of(DEFAULT, new Host().setProfiles(Map.of(DEFAULT, profile))));
+    UpstreamConfigs configs = ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT);
+    BalancingSimulation simulation = new BalancingSimulation(configs, DATACENTER, false)
+        .setTraffic(TrafficShape.constant(200))
+        .setDurationMillis(DURATION_MILLIS);
+    for (int i = 0; i < servers; i++) {
+      simulation.addServer(createServer("server" + i));
+    }
+    return simulation;
+  }
+
+  private static Profile createProfile() {
+    return new Profile().setMaxTries(3).setRequestTimeoutSec(2f).setMaxTimeoutTries(2);
+  }
+
+  private static ServerModel createServer(String address) {
+    return new ServerModel(address, 1, DATACENTER, LatencyDistribution.logNormal(10, 0.3));
+  }
+}
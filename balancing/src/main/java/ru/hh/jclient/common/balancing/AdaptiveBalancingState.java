@@ -33,7 +33,7 @@ public class AdaptiveBalancingState extends BalancingState {
   @Override
   public void releaseServer(long timeToLastByteMicros, boolean isServerError) {
     if (isServerAvailable()) {
-      upstream.releaseServer(getCurrentServer().getIndex(), !getTriedServers().isEmpty(), isServerError, timeToLastByteMicros, !adaptiveFailed);
+      upstream.releaseServer(getCurrentServer(), hasTriedServers(), isServerError, timeToLastByteMicros, !adaptiveFailed);
     }
   }
 
@@ -1,9 +1,8 @@
 package ru.hh.jclient.common.balancing;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.time.Clock;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static ru.hh.jclient.common.balancing.RequestBalancer.WARM_UP_DEFAULT_TIME_MICROS;
@@ -17,18 +16,31 @@ final class AdaptiveBalancingStrategy {
   private static final int lowestHealth = lowestHealthPercent * DOWNTIME_DETECTOR_WINDOW / 100;
 
   static List<Integer> getServers(List<Server> servers, int retriesCount) {
-    int n = servers.size();
-    int count = Math.min(n, retriesCount);
-    if (servers.isEmpty()) {
-      return Collections.emptyList();
+    Integer[] positions = new Integer[servers.size()];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = i;
     }
+    return AdaptiveSamplingTable.of(positions, getScores(servers, Clock.systemUTC()), 0).sample(retriesCount);
+  }
 
-    if (servers.size() == 1) {
-      return Collections.singletonList(0);
-    }
+  /**
+   * @return sampling table over entries of servers, entries and servers should match position by position
+   */
+  static AdaptiveSamplingTable<ServerEntry> buildSamplingTable(List<Server> servers, ServerEntry[] entries, Clock clock) {
+    return AdaptiveSamplingTable.of(entries, getScores(servers, clock), clock.millis());
+  }
 
+  /**
+   * score of a server on slow start is scaled by its share of weight
+   */
+  private static long[] getScores(List<Server> servers, Clock clock) {
+    int n = servers.size();
     long[] scores = new long[n];
-    int[] ids = new int[n];
+    if (n < 2) {
+      Arrays.fill(scores, 1);
+      return scores;
+    }
+
     int[] healths = new int[n];
 
     // gather statistics
@@ -60,49 +72,16 @@ final class AdaptiveBalancingStrategy {
     }
 
     // adjust scores based on downtime detector health and response time tracker score
-    long total = 0;
     for (int j = 0; j < n; j++) {
       long invertedTime = scores[j];
       int health = Math.max(healths[j], lowestHealth);
-      long score = invertedTime * health;
-      LOGGER.debug("balancer stats for {}, health:{}, inverted_time_score:{}, final_score:{}", servers.get(j), health, invertedTime, score);
-      total += score;
+      float weightFactor = servers.get(j).getSlowStartWeightFactor(clock);
+      long score = weightFactor < 1 ? Math.max(1, Math.round(invertedTime * health * (double) weightFactor)) : invertedTime * health;
+      LOGGER.debug("balancer stats for {}, health:{}, inverted_time_score:{}, weight_factor:{}, final_score:{}",
+          servers.get(j), health, invertedTime, weightFactor, score);
       scores[j] = score;
-      ids[j] = j;
-    }
-
-    // weighted-randomly pick count elements
-    List<Integer> shuffled = new ArrayList<>(count);
-    for (int j = n - 1, r = count - 1; j >= 0 && r >= 0; j--, r--) { // index to put new random element
-      long pick = ThreadLocalRandom.current().nextLong(total);
-      long sum = 0L;
-      for (int k = 0; k <= j; k++) { // random index of element to swap
-        sum += scores[k];
-        if (pick < sum) {
-          shuffled.add(ids[k]);
-          LOGGER.debug("balancer pick for {}, {}:{}", servers.get(ids[k]), n - 1 - j, ids[k]);
-          total -= scores[k];
-          swap(scores, ids, k, j);
-          break;
-        }
-      }
-    }
-
-    return shuffled;
-  }
-
-  private static void swap(long[] scores, int[] ids, int a, int b) {
-    if (a == b) {
-      return;
     }
-
-    long c = scores[a];
-    scores[a] = scores[b];
-    scores[b] = c;
-
-    int d = ids[a];
-    ids[a] = ids[b];
-    ids[b] = d;
+    return scores;
   }
 
   private AdaptiveBalancingStrategy() {
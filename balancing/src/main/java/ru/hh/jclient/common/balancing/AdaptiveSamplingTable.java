@@ -0,0 +1,174 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Alias table (Vose's method) over scores computed by {@link AdaptiveBalancingStrategy}.
+ * Built once per refresh interval, then every weighted draw takes O(1) regardless of servers count.
+ * Sampling without replacement redraws already picked items, which keeps probabilities of successive picks
+ * proportional to scores of remaining items, same as removing picked items from the distribution
+ */
+final class AdaptiveSamplingTable<T> {
+  private static final int MAX_REDRAWS = 16;
+
+  private final T[] items;
+  private final long[] scores;
+  private final double[] probabilities;
+  private final int[] aliases;
+  private final long createdAtMillis;
+  private final AtomicBoolean refreshClaimed = new AtomicBoolean();
+
+  private AdaptiveSamplingTable(T[] items, long[] scores, double[] probabilities, int[] aliases, long createdAtMillis) {
+    this.items = items;
+    this.scores = scores;
+    this.probabilities = probabilities;
+    this.aliases = aliases;
+    this.createdAtMillis = createdAtMillis;
+  }
+
+  static <T> AdaptiveSamplingTable<T> of(T[] items, long[] scores, long createdAtMillis) {
+    int n = items.length;
+    double[] probabilities = new double[n];
+    int[] aliases = new int[n];
+    long total = 0;
+    for (long score : scores) {
+      total += score;
+    }
+    if (total <= 0) {
+      // nothing to prefer, every item is its own alias with equal probability
+      for (int i = 0; i < n; i++) {
+        probabilities[i] = 1d;
+        aliases[i] = i;
+      }
+      return new AdaptiveSamplingTable<>(items, scores, probabilities, aliases, createdAtMillis);
+    }
+
+    double[] scaled = new double[n];
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int smallCount = 0;
+    int largeCount = 0;
+    for (int i = 0; i < n; i++) {
+      scaled[i] = (double) scores[i] * n / total;
+      if (scaled[i] < 1d) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+      probabilities[less] = scaled[less];
+      aliases[less] = more;
+      scaled[more] = scaled[more] + scaled[less] - 1d;
+      if (scaled[more] < 1d) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+    // leftovers are 1 up to rounding errors
+    while (largeCount > 0) {
+      int index = large[--largeCount];
+      probabilities[index] = 1d;
+      aliases[index] = index;
+    }
+    while (smallCount > 0) {
+      int index = small[--smallCount];
+      probabilities[index] = 1d;
+      aliases[index] = index;
+    }
+    return new AdaptiveSamplingTable<>(items, scores, probabilities, aliases, createdAtMillis);
+  }
+
+  /**
+   * @return up to count distinct items, weighted-randomly picked one after another
+   */
+  List<T> sample(int count) {
+    return sample(count, ThreadLocalRandom.current());
+  }
+
+  List<T> sample(int count, Random random) {
+    int n = items.length;
+    count = Math.min(count, n);
+    if (count <= 0) {
+      return Collections.emptyList();
+    }
+    if (n == 1) {
+      return Collections.singletonList(items[0]);
+    }
+
+    List<T> picked = new ArrayList<>(count);
+    while (picked.size() < count) {
+      picked.add(items[nextNotPicked(picked, random)]);
+    }
+    return picked;
+  }
+
+  long getCreatedAtMillis() {
+    return createdAtMillis;
+  }
+
+  /**
+   * @return true for the only caller which should rebuild this table, the rest keep using it meanwhile
+   */
+  boolean claimRefresh() {
+    return !refreshClaimed.get() && refreshClaimed.compareAndSet(false, true);
+  }
+
+  /**
+   * gives the claim back if the refresh failed
+   */
+  void releaseRefresh() {
+    refreshClaimed.set(false);
+  }
+
+  private int nextNotPicked(List<T> picked, Random random) {
+    for (int attempt = 0; attempt < MAX_REDRAWS; attempt++) {
+      int index = next(random);
+      if (!containsSame(picked, items[index])) {
+        return index;
+      }
+    }
+    // picked items hold almost all the weight, draw from the rest directly
+    long total = 0;
+    for (int i = 0; i < items.length; i++) {
+      if (!containsSame(picked, items[i])) {
+        total += scores[i];
+      }
+    }
+    long pick = (long) (random.nextDouble() * total);
+    int lastNotPicked = -1;
+    for (int i = 0; i < items.length; i++) {
+      if (containsSame(picked, items[i])) {
+        continue;
+      }
+      lastNotPicked = i;
+      pick -= scores[i];
+      if (pick < 0) {
+        return i;
+      }
+    }
+    return lastNotPicked;
+  }
+
+  private int next(Random random) {
+    int column = random.nextInt(items.length);
+    return random.nextDouble() < probabilities[column] ? column : aliases[column];
+  }
+
+  private static <T> boolean containsSame(List<T> picked, T item) {
+    for (int i = 0; i < picked.size(); i++) {
+      if (picked.get(i) == item) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -1,18 +1,41 @@
 package ru.hh.jclient.common.balancing;
 
-import java.util.HashSet;
+import java.util.BitSet;
 import java.util.Set;
+import static java.util.stream.Collectors.toUnmodifiableSet;
+import javax.annotation.Nullable;
 
 public class BalancingState {
   protected final Upstream upstream;
   protected final String profile;
-  private final Set<Integer> triedServers;
+  @Nullable
+  private final BalancingStrategyType strategyType;
+  @Nullable
+  private final String routingKey;
+  private final BitSet triedServers;
   private ServerEntry currentServer;
 
   public BalancingState(Upstream upstream, String profile) {
+    this(upstream, profile, null);
+  }
+
+  /**
+   * @param strategyType overrides strategy set in profile config if not null
+   */
+  public BalancingState(Upstream upstream, String profile, @Nullable BalancingStrategyType strategyType) {
+    this(upstream, profile, strategyType, null);
+  }
+
+  /**
+   * @param routingKey if not null, requests with the same key are sent to the same server while its load is bounded,
+   * see {@link ConsistentHashBalancingStrategy}
+   */
+  BalancingState(Upstream upstream, String profile, @Nullable BalancingStrategyType strategyType, @Nullable String routingKey) {
     this.upstream = upstream;
     this.profile = profile;
-    this.triedServers = new HashSet<>();
+    this.strategyType = strategyType;
+    this.routingKey = routingKey;
+    this.triedServers = new BitSet();
   }
 
   public UpstreamConfig getUpstreamConfig() {
@@ -37,22 +60,80 @@ public class BalancingState {
 
   public void incrementTries() {
     if (isServerAvailable()) {
-      triedServers.add(currentServer.getIndex());
+      triedServers.set(currentServer.getIndex());
       currentServer = null;
     }
   }
 
   public void acquireServer() {
-    setCurrentServer(upstream.acquireServer(getTriedServers()));
+    setCurrentServer(upstream.acquireServer(profile, strategyType, getTriedServerIndexes(), routingKey));
   }
 
   public void releaseServer(long timeToLastByteMicros, boolean isServerError) {
     if (isServerAvailable()) {
-      upstream.releaseServer(getCurrentServer().getIndex(), !getTriedServers().isEmpty(), isServerError, timeToLastByteMicros, false);
+      releaseServer(getCurrentServer(), timeToLastByteMicros, isServerError);
     }
   }
 
+  void releaseServer(ServerEntry server, long timeToLastByteMicros, boolean isServerError) {
+    if (getBalancingStrategyType() == BalancingStrategyType.PEAK_EWMA) {
+      upstream.observeResponseTime(server, timeToLastByteMicros, isServerError);
+    }
+    upstream.releaseServer(server, hasTriedServers(), isServerError, timeToLastByteMicros, false);
+  }
+
+  /**
+   * excludes server of a failed attempt from the following ones, without changing current server
+   */
+  void markTried(ServerEntry server) {
+    triedServers.set(server.getIndex());
+  }
+
+  /**
+   * releases server of an attempt which was cancelled, e.g. lost a hedging race: it has no result,
+   * so only request counters and probe slot of the server are released
+   */
+  void cancelServer(ServerEntry server) {
+    upstream.cancelServer(server);
+  }
+
+  /**
+   * @return server for a hedged attempt which is neither current nor tried one, or null if there is no such server.
+   * Current server is not changed
+   */
+  @Nullable
+  ServerEntry acquireHedgeServer() {
+    if (!isServerAvailable()) {
+      return null;
+    }
+    BitSet excludedServers = (BitSet) getTriedServerIndexes().clone();
+    excludedServers.set(currentServer.getIndex());
+    ServerEntry server = upstream.acquireServer(profile, strategyType, excludedServers, routingKey);
+    if (server != null && excludedServers.get(server.getIndex())) {
+      // strategies fall back to excluded servers when nothing else is left, hedging to one of them makes no sense
+      upstream.cancelServer(server);
+      return null;
+    }
+    return server;
+  }
+
+  protected BalancingStrategyType getBalancingStrategyType() {
+    return strategyType != null ? strategyType : getUpstreamConfig().getBalancingStrategyType();
+  }
+
+  /**
+   * @deprecated returns a copy of tried servers, use {@link #hasTriedServers()} to check if the request is a retry
+   */
+  @Deprecated
   protected Set<Integer> getTriedServers() {
+    return triedServers.stream().boxed().collect(toUnmodifiableSet());
+  }
+
+  protected boolean hasTriedServers() {
+    return !triedServers.isEmpty();
+  }
+
+  BitSet getTriedServerIndexes() {
     return triedServers;
   }
 
@@ -2,21 +2,31 @@ package ru.hh.jclient.common.balancing;
 
 import java.time.Clock;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
-import javax.annotation.Nonnull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 final class BalancingStrategy {
   private static final Logger LOGGER = LoggerFactory.getLogger(BalancingStrategy.class);
 
-  static int getLeastLoadedServer(List<Server> servers, Set<Integer> excludedServers, String datacenter, boolean allowCrossDCRequests,
+  static int getLeastLoadedServer(UpstreamSnapshot snapshot, BitSet excludedServers, String datacenter, boolean allowCrossDCRequests,
                                   Clock clock) {
+    return getLeastLoadedServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock, false);
+  }
+
+  /**
+   * @param ignoreCircuitBreakers if true, servers with open circuit breakers are selected too, see {@link Upstream#acquireServer}
+   */
+  static int getLeastLoadedServer(UpstreamSnapshot snapshot, BitSet excludedServers, String datacenter, boolean allowCrossDCRequests,
+                                  Clock clock, boolean ignoreCircuitBreakers) {
+    List<Server> servers = snapshot.getServers();
+    float maxStatLoad = snapshot.getMaxStatLoad();
     int minIndex = -1;
-    Weight minWeight = null;
+    boolean minExcluded = false;
+    boolean minDifferentDC = false;
+    float minLoad = 0;
     String[] serverStatLog = LOGGER.isTraceEnabled() ? new String[servers.size()] : null;
     for (int index = 0; index < servers.size(); index++) {
       Server server = servers.get(index);
@@ -31,27 +41,38 @@ final class BalancingStrategy {
         continue;
       }
 
-      float statLoad = server.getStatLoad(servers, clock);
-      Weight weight = new Weight(excludedServers.contains(index), isDifferentDC, statLoad);
-      if (LOGGER.isTraceEnabled()) {
+      if (ignoreCircuitBreakers ? server.getOutlierStats().isEjected(clock) : !server.isAvailable(clock)) {
+        if (serverStatLog != null) {
+          serverStatLog[index] = "{static balancer stats for " + server + ", unavailable}";
+        }
+        continue;
+      }
+
+      boolean excluded = excludedServers.get(index);
+      float statLoad = server.getStatLoad(maxStatLoad, clock);
+      if (serverStatLog != null) {
         serverStatLog[index] = "{static balancer stats for " + server
-            + ", excluded:" + weight.isExcluded()
-            + ", differentDC:" + weight.isDifferentDC()
-            + ", load:" + weight.getLoad() + '}';
+            + ", excluded:" + excluded
+            + ", differentDC:" + isDifferentDC
+            + ", load:" + statLoad + '}';
       }
 
-      if (minIndex < 0 || minWeight.compareTo(weight) > 0) {
+      if (minIndex < 0 || isLess(excluded, isDifferentDC, statLoad, minExcluded, minDifferentDC, minLoad)) {
         minIndex = index;
-        minWeight = weight;
+        minExcluded = excluded;
+        minDifferentDC = isDifferentDC;
+        minLoad = statLoad;
       }
     }
 
+    if (!LOGGER.isDebugEnabled()) {
+      return minIndex;
+    }
     if (minIndex != -1) {
       LOGGER.debug("static balancer pick excluded:{} differentDC:{}, load:{} for server idx={}:{}{}",
-          minWeight.isExcluded(), minWeight.isDifferentDC(), minWeight.getLoad(),
+          minExcluded, minDifferentDC, minLoad,
           minIndex, servers.get(minIndex),
-          !LOGGER.isTraceEnabled() ? ""
-              :(" of " + Arrays.toString(serverStatLog) + " with excluded idx=" + excludedServers)
+          serverStatLog == null ? "" : (" of " + Arrays.toString(serverStatLog) + " with excluded idx=" + excludedServers)
       );
     } else {
       LOGGER.debug("no server available");
@@ -59,37 +80,20 @@ final class BalancingStrategy {
     return minIndex;
   }
 
-  private BalancingStrategy() {
-  }
-
-  private static final class Weight implements Comparable<Weight> {
-    private static final Comparator<Weight> weightComparator = Comparator.comparing(Weight::isExcluded).thenComparing(Weight::isDifferentDC)
-        .thenComparingDouble(Weight::getLoad);
-    private final boolean excluded;
-    private final boolean differentDC;
-    private final float load;
-
-    Weight(boolean excluded, boolean differentDC, float load) {
-      this.excluded = excluded;
-      this.differentDC = differentDC;
-      this.load = load;
+  /**
+   * servers are ordered by exclusion, then by datacenter (current first), then by load
+   */
+  private static boolean isLess(boolean excluded, boolean differentDC, float load,
+                                boolean otherExcluded, boolean otherDifferentDC, float otherLoad) {
+    if (excluded != otherExcluded) {
+      return otherExcluded;
     }
-
-    public boolean isDifferentDC() {
-      return differentDC;
-    }
-
-    public float getLoad() {
-      return load;
-    }
-
-    public boolean isExcluded() {
-      return excluded;
+    if (differentDC != otherDifferentDC) {
+      return otherDifferentDC;
     }
+    return Float.compare(load, otherLoad) < 0;
+  }
 
-    @Override
-    public int compareTo(@Nonnull Weight other) {
-      return weightComparator.compare(this, other);
-    }
+  private BalancingStrategy() {
   }
 }
@@ -0,0 +1,38 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public enum BalancingStrategyType {
+  /**
+   * scans all servers and picks the one with the least stat load
+   */
+  LEAST_LOADED,
+  /**
+   * picks the least loaded of two randomly sampled servers, see {@link PowerOfTwoChoicesBalancingStrategy}
+   */
+  POWER_OF_TWO_CHOICES,
+  /**
+   * picks the better of two randomly sampled servers by peak EWMA response time and requests in flight,
+   * see {@link PeakEwmaBalancingStrategy}. Can also be enabled per request with {@link RequestBalancerBuilder#makePeakEwma()}
+   */
+  PEAK_EWMA;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BalancingStrategyType.class);
+
+  /**
+   * unknown value falls back to {@link #LEAST_LOADED}, so a strategy added later does not break config updates of older clients
+   */
+  static BalancingStrategyType fromConfigValue(String value) {
+    if (value == null) {
+      return LEAST_LOADED;
+    }
+    try {
+      return valueOf(value.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("Unknown balancing strategy {}, using {}", value, LEAST_LOADED);
+      return LEAST_LOADED;
+    }
+  }
+}
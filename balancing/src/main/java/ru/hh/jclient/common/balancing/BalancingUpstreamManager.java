@@ -3,6 +3,7 @@ package ru.hh.jclient.common.balancing;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import static java.util.Objects.requireNonNull;
 import java.util.Optional;
 import java.util.Set;
@@ -52,11 +53,12 @@ public BalancingUpstreamManager(ConfigStore configStore,
     Optional<Integer> minAllowedSize = serverStore.getInitialSize(upstreamName)
       .map(initialCapacity -> (int) Math.ceil(initialCapacity * (1 - validationSettings.allowedDegradationPart)));
     List<Server> servers = serverStore.getServers(upstreamName);
+    int aliveCount = (int) servers.stream().filter(Objects::nonNull).count();
 
-    if (minAllowedSize.isPresent() && servers.size() < minAllowedSize.get()) {
+    if (minAllowedSize.isPresent() && aliveCount < minAllowedSize.get()) {
       monitoring.forEach(m -> m.countUpdateIgnore(upstreamName, datacenter));
       LOGGER.warn("Ignoring update which contains {} servers, for upstream {} allowed minimum is {}",
-        LOGGER.isDebugEnabled() ? servers : servers.size(),
+        LOGGER.isDebugEnabled() ? servers : aliveCount,
         upstreamName,
         minAllowedSize
       );
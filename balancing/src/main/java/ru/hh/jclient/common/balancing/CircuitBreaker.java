@@ -0,0 +1,234 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of a {@link Server}. Closed breaker lets all requests through and opens after a number of consecutive fails
+ * or when error ratio of recent requests reaches a threshold. Open breaker rejects requests until open interval passes,
+ * then becomes half-open and lets through up to {@link #MAX_PROBES} concurrent probes: a failed probe opens it again,
+ * {@link #MAX_PROBES} successful probes close it. A probe is identified by the token returned by {@link #acquire},
+ * so only results of probes of the current half-open period drive its transitions,
+ * results of requests sent before the breaker was opened are ignored.
+ * Checks of closed breaker read a single volatile field, transitions and probes are rare and synchronized
+ */
+final class CircuitBreaker {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+  static final int MAX_PROBES = 3;
+  static final long REJECTED = -1;
+  static final long NOT_PROBE = 0;
+  /**
+   * error ratio is not checked until there are enough recent requests
+   */
+  static final int MIN_REQUESTS = 20;
+  /**
+   * recent requests counts are halved after that many requests, so old results fade out
+   */
+  private static final int WINDOW = 100;
+
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private volatile State state = State.CLOSED;
+  private volatile long openUntilMillis;
+  /**
+   * requests in high half, errors in low half
+   */
+  private final AtomicLong recentRequests = new AtomicLong();
+  /**
+   * written under lock, read without it by {@link #isAvailable}
+   */
+  private volatile int probesInFlight;
+  private int probeSuccesses;
+  /**
+   * number of the current half-open period, it is the token of its probes
+   */
+  private long halfOpenPeriod;
+
+  /**
+   * @return false if requests are going to be rejected, does not change state
+   */
+  boolean isAvailable(Clock clock) {
+    State state = this.state;
+    if (state == State.CLOSED) {
+      return true;
+    }
+    if (state == State.HALF_OPEN) {
+      return probesInFlight < MAX_PROBES;
+    }
+    return clock.millis() >= openUntilMillis;
+  }
+
+  /**
+   * @return {@link #REJECTED}, {@link #NOT_PROBE} if request is let through by closed breaker, or token of a probe of half-open breaker.
+   * The token should be passed to {@link #onResult} or {@link #onCancel}, a probe takes a slot until then
+   */
+  long acquire(Clock clock) {
+    State state = this.state;
+    if (state == State.CLOSED) {
+      return NOT_PROBE;
+    }
+    if (state == State.OPEN && clock.millis() < openUntilMillis) {
+      return REJECTED;
+    }
+    return acquireProbe(clock);
+  }
+
+  void onResult(boolean isError, long probe, int consecutiveFails, Settings settings, Clock clock) {
+    if (!settings.isEnabled()) {
+      return;
+    }
+    if (probe != NOT_PROBE) {
+      onProbeResult(isError, probe, settings, clock);
+      return;
+    }
+    if (state != State.CLOSED) {
+      // responses of requests sent before breaker was opened
+      return;
+    }
+
+    long recent = recentRequests.addAndGet(isError ? (1L << 32) + 1 : 1L << 32);
+    int requests = (int) (recent >>> 32);
+    int errors = (int) recent;
+    if (requests >= WINDOW) {
+      recentRequests.compareAndSet(recent, pack(requests >> 1, errors >> 1));
+    }
+    if (!isError) {
+      return;
+    }
+    if (settings.consecutiveFails > 0 && consecutiveFails >= settings.consecutiveFails) {
+      open(settings, clock, "consecutive fails: " + consecutiveFails);
+    } else if (settings.errorPercent > 0 && requests >= MIN_REQUESTS && errors * 100L >= (long) settings.errorPercent * requests) {
+      open(settings, clock, "errors: " + errors + " of " + requests);
+    }
+  }
+
+  /**
+   * frees probe slot of a request which has no result, e.g. it was cancelled
+   */
+  void onCancel(long probe) {
+    if (probe != NOT_PROBE) {
+      releaseProbe(probe);
+    }
+  }
+
+  /**
+   * closes breaker regardless of its state, e.g. when breakers get disabled by config
+   */
+  synchronized void reset() {
+    recentRequests.set(0);
+    probesInFlight = 0;
+    state = State.CLOSED;
+  }
+
+  State getState() {
+    return state;
+  }
+
+  private synchronized long acquireProbe(Clock clock) {
+    if (state == State.OPEN) {
+      if (clock.millis() < openUntilMillis) {
+        return REJECTED;
+      }
+      halfOpen();
+    }
+    if (state == State.CLOSED) {
+      // closed by concurrent probes
+      return NOT_PROBE;
+    }
+    if (probesInFlight >= MAX_PROBES) {
+      return REJECTED;
+    }
+    probesInFlight++;
+    return halfOpenPeriod;
+  }
+
+  private synchronized void onProbeResult(boolean isError, long probe, Settings settings, Clock clock) {
+    if (!releaseProbe(probe)) {
+      // probe of previous half-open period
+      return;
+    }
+    if (isError) {
+      open(settings, clock, "failed probe");
+    } else if (++probeSuccesses >= MAX_PROBES) {
+      close();
+    }
+  }
+
+  private synchronized boolean releaseProbe(long probe) {
+    if (state != State.HALF_OPEN || probe != halfOpenPeriod) {
+      return false;
+    }
+    probesInFlight--;
+    return true;
+  }
+
+  private synchronized void open(Settings settings, Clock clock, String reason) {
+    if (state == State.OPEN) {
+      return;
+    }
+    LOGGER.info("Opening circuit breaker for {} ms, {}", settings.openIntervalMillis, reason);
+    openUntilMillis = clock.millis() + settings.openIntervalMillis;
+    state = State.OPEN;
+  }
+
+  private synchronized void halfOpen() {
+    if (state != State.OPEN) {
+      return;
+    }
+    halfOpenPeriod++;
+    probesInFlight = 0;
+    probeSuccesses = 0;
+    state = State.HALF_OPEN;
+  }
+
+  private synchronized void close() {
+    if (state != State.HALF_OPEN) {
+      return;
+    }
+    LOGGER.info("Closing circuit breaker after {} successful probes", MAX_PROBES);
+    recentRequests.set(0);
+    probesInFlight = 0;
+    state = State.CLOSED;
+  }
+
+  private static long pack(int requests, int errors) {
+    return ((long) requests << 32) | errors;
+  }
+
+  @Override
+  public String toString() {
+    return state.toString();
+  }
+
+  static final class Settings {
+    static final Settings DISABLED = new Settings(0, 0, 0);
+
+    final int consecutiveFails;
+    final int errorPercent;
+    final long openIntervalMillis;
+
+    private Settings(int consecutiveFails, int errorPercent, long openIntervalMillis) {
+      this.consecutiveFails = consecutiveFails;
+      this.errorPercent = errorPercent;
+      this.openIntervalMillis = openIntervalMillis;
+    }
+
+    static Settings of(@Nullable UpstreamConfig config) {
+      if (config == null || (config.getCircuitBreakerConsecutiveFails() <= 0 && config.getCircuitBreakerErrorPercent() <= 0)) {
+        return DISABLED;
+      }
+      return new Settings(
+        config.getCircuitBreakerConsecutiveFails(), config.getCircuitBreakerErrorPercent(), config.getCircuitBreakerOpenIntervalMs()
+      );
+    }
+
+    boolean isEnabled() {
+      return this != DISABLED;
+    }
+  }
+}
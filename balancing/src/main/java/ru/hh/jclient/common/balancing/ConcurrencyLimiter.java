@@ -0,0 +1,137 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * AIMD limit of concurrent requests to an upstream, fed by observed response times.
+ * Every successful response below {@link #LATENCY_TOLERANCE} times the baseline grows the limit by 1 / limit
+ * while the limit is in use, so it grows by about one per limit responses. An error or a slow response shrinks
+ * the limit by {@link #BACKOFF_RATIO}, not more often than once per baseline response time,
+ * so a burst of slow responses to requests sent with the old limit counts once.
+ * Baseline is a slow moving average of response times, so a lasting latency change becomes the new norm.
+ * Disabled limiter does not count requests
+ */
+final class ConcurrencyLimiter {
+  static final int MIN_LIMIT = 4;
+  static final int INITIAL_LIMIT = 20;
+  static final double BACKOFF_RATIO = 0.9;
+  static final double LATENCY_TOLERANCE = 2;
+  private static final double BASELINE_WEIGHT = 0.001;
+
+  private final LongSupplier nanoTime;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong limitBits = new AtomicLong(Double.doubleToRawLongBits(INITIAL_LIMIT));
+  private final AtomicLong baselineMicrosBits = new AtomicLong(Double.doubleToRawLongBits(0));
+  private final AtomicLong lastBackoffNanos = new AtomicLong();
+  private final AtomicInteger reportedLimit = new AtomicInteger();
+  private volatile int maxLimit;
+
+  ConcurrencyLimiter(LongSupplier nanoTime) {
+    this.nanoTime = nanoTime;
+    this.lastBackoffNanos.set(nanoTime.getAsLong());
+  }
+
+  /**
+   * @param maxLimit upper bound of the limit, 0 disables limiter
+   */
+  void configure(int maxLimit) {
+    this.maxLimit = maxLimit > 0 ? Math.max(MIN_LIMIT, maxLimit) : 0;
+    if (maxLimit > 0 && Double.longBitsToDouble(limitBits.get()) > this.maxLimit) {
+      limitBits.set(Double.doubleToRawLongBits(this.maxLimit));
+    }
+  }
+
+  boolean isEnabled() {
+    return maxLimit > 0;
+  }
+
+  /**
+   * @return true if request fits into the limit, it should be released with {@link #release} then
+   */
+  boolean tryAcquire() {
+    int limit = getLimit();
+    int prev;
+    do {
+      prev = inFlight.get();
+      if (prev >= limit) {
+        return false;
+      }
+    } while (!inFlight.compareAndSet(prev, prev + 1));
+    return true;
+  }
+
+  /**
+   * releases request without a sample, e.g. if it was not sent
+   */
+  void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * @return limit after this sample
+   */
+  int release(long responseTimeMicros, boolean isError) {
+    int inFlightBefore = inFlight.getAndDecrement();
+    double baseline = updateBaseline(responseTimeMicros, isError);
+    boolean overloaded = isError || (baseline > 0 && responseTimeMicros > LATENCY_TOLERANCE * baseline);
+    if (overloaded && !claimBackoff(baseline)) {
+      return getLimit();
+    }
+    int maxLimit = Math.max(MIN_LIMIT, this.maxLimit);
+    long prevBits;
+    double next;
+    do {
+      prevBits = limitBits.get();
+      double prev = Double.longBitsToDouble(prevBits);
+      if (overloaded) {
+        next = Math.max(MIN_LIMIT, prev * BACKOFF_RATIO);
+      } else if (inFlightBefore * 2 >= prev) {
+        next = Math.min(maxLimit, prev + 1 / prev);
+      } else {
+        return getLimit();
+      }
+    } while (!limitBits.compareAndSet(prevBits, Double.doubleToRawLongBits(next)));
+    return getLimit();
+  }
+
+  int getLimit() {
+    return (int) Math.min(Double.longBitsToDouble(limitBits.get()), Math.max(MIN_LIMIT, maxLimit));
+  }
+
+  /**
+   * @return true for the only caller which should report the limit as it differs from the last reported one
+   */
+  boolean claimReport(int limit) {
+    int prev = reportedLimit.get();
+    return prev != limit && reportedLimit.compareAndSet(prev, limit);
+  }
+
+  int getInFlight() {
+    return inFlight.get();
+  }
+
+  private double updateBaseline(long responseTimeMicros, boolean isError) {
+    long prevBits = baselineMicrosBits.get();
+    double prev = Double.longBitsToDouble(prevBits);
+    if (isError) {
+      return prev;
+    }
+    double next = prev == 0 ? responseTimeMicros : prev + (responseTimeMicros - prev) * BASELINE_WEIGHT;
+    // a lost update only skips one sample of a slow average
+    baselineMicrosBits.compareAndSet(prevBits, Double.doubleToRawLongBits(next));
+    return prev;
+  }
+
+  private boolean claimBackoff(double baselineMicros) {
+    long now = nanoTime.getAsLong();
+    long last = lastBackoffNanos.get();
+    return now - last >= (long) (baselineMicros * 1_000) && lastBackoffNanos.compareAndSet(last, now);
+  }
+
+  @Override
+  public String toString() {
+    return isEnabled() ? "{limit=" + getLimit() + ", in_flight=" + getInFlight() + ", max_limit=" + maxLimit + '}' : "disabled";
+  }
+}
@@ -0,0 +1,81 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static ru.hh.jclient.common.balancing.BalancingStrategy.getLeastLoadedServer;
+
+/**
+ * Maps routing key to a server with {@link ConsistentHashRing}, so requests with the same key go to the same server.
+ * Load is bounded: a server is skipped while its requests in flight exceed {@link #LOAD_FACTOR} times its weighted share
+ * of requests in flight of the datacenter, so a hot key moves over to the next servers on the ring instead of overloading one.
+ * Share of a server on slow start is scaled by its share of weight.
+ * The walk along the ring stops once every server of the datacenter has been checked, not after all virtual nodes.
+ * Servers of current datacenter are preferred, falls back to {@link BalancingStrategy#getLeastLoadedServer}
+ * if no server is available on the ring
+ */
+final class ConsistentHashBalancingStrategy {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConsistentHashBalancingStrategy.class);
+  static final double LOAD_FACTOR = 1.25;
+
+  static int getServer(UpstreamSnapshot snapshot, String routingKey, BitSet excludedServers, String datacenter,
+                       boolean allowCrossDCRequests, Clock clock) {
+    List<Server> servers = snapshot.getServers();
+    ConsistentHashRing ring = snapshot.getHashRing();
+    if (ring.size() > 0) {
+      long keyHash = ConsistentHashRing.hash(routingKey);
+      int index = pickOnRing(servers, ring, keyHash, snapshot.getLocalServerIndexes(), true, excludedServers, datacenter, clock);
+      if (index < 0 && allowCrossDCRequests) {
+        index = pickOnRing(servers, ring, keyHash, snapshot.getRemoteServerIndexes(), false, excludedServers, datacenter, clock);
+      }
+      if (index >= 0) {
+        return index;
+      }
+    }
+    LOGGER.trace("no available servers on hash ring, falling back to least loaded");
+    return getLeastLoadedServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock);
+  }
+
+  private static int pickOnRing(List<Server> servers, ConsistentHashRing ring, long keyHash, int[] partition, boolean local,
+                                BitSet excludedServers, String datacenter, Clock clock) {
+    if (partition.length == 0) {
+      return -1;
+    }
+    long totalWeight = 0;
+    long totalRequests = 0;
+    for (int index : partition) {
+      Server server = servers.get(index);
+      totalWeight += Math.max(1, server.getWeight());
+      totalRequests += server.getRequests();
+    }
+    double requestsPerWeight = LOAD_FACTOR * (totalRequests + 1) / totalWeight;
+
+    BitSet checkedServers = new BitSet();
+    int serversLeft = partition.length;
+    int start = ring.getPosition(keyHash);
+    for (int i = 0; i < ring.size() && serversLeft > 0; i++) {
+      int position = start + i < ring.size() ? start + i : start + i - ring.size();
+      int index = ring.getServerIndex(position);
+      Server server = servers.get(index);
+      if (Objects.equals(datacenter, server.getDatacenter()) != local || checkedServers.get(index)) {
+        continue;
+      }
+      checkedServers.set(index);
+      serversLeft--;
+      if (excludedServers.get(index) || !server.isAvailable(clock)) {
+        continue;
+      }
+      long capacity = (long) Math.ceil(requestsPerWeight * Math.max(1, server.getWeight()) * server.getSlowStartWeightFactor(clock));
+      if (server.getRequests() + 1 <= capacity) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private ConsistentHashBalancingStrategy() {
+  }
+}
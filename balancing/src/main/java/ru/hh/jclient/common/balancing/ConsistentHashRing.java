@@ -0,0 +1,170 @@
+package ru.hh.jclient.common.balancing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consistent hash ring over upstream servers. Every server gets {@link #VIRTUAL_NODES_PER_WEIGHT} virtual nodes per unit of weight,
+ * up to {@link #MAX_VIRTUAL_NODES}, positioned by hash of its address, so a key is mapped to the same server while it is alive,
+ * and removal of a server moves only keys which were mapped to it.
+ * Positions depend on server address and weight only, so {@link #update(List)} keeps positions of unchanged servers
+ * and hashes only added or reweighted ones
+ */
+final class ConsistentHashRing {
+  static final int VIRTUAL_NODES_PER_WEIGHT = 32;
+  static final int MAX_VIRTUAL_NODES = 640;
+
+  /**
+   * positions of virtual nodes in ascending order
+   */
+  private final long[] hashes;
+  /**
+   * server of the virtual node at the same position
+   */
+  private final Server[] servers;
+  /**
+   * index of the server in the list the ring is built for
+   */
+  private final int[] serverIndexes;
+  private final Map<Server, Integer> virtualNodesByServer;
+
+  private ConsistentHashRing(long[] hashes, Server[] servers, int[] serverIndexes, Map<Server, Integer> virtualNodesByServer) {
+    this.hashes = hashes;
+    this.servers = servers;
+    this.serverIndexes = serverIndexes;
+    this.virtualNodesByServer = virtualNodesByServer;
+  }
+
+  static ConsistentHashRing of(List<Server> servers) {
+    return new ConsistentHashRing(new long[0], new Server[0], new int[0], Map.of()).update(servers);
+  }
+
+  /**
+   * @return ring for the new servers list, reusing virtual nodes of servers present in this ring with the same weight
+   */
+  ConsistentHashRing update(List<Server> newServers) {
+    Map<Server, Integer> newIndexes = new HashMap<>();
+    Map<Server, Integer> newVirtualNodes = new HashMap<>();
+    int addedCount = 0;
+    for (int i = 0; i < newServers.size(); i++) {
+      Server server = newServers.get(i);
+      if (server == null) {
+        continue;
+      }
+      int virtualNodes = getVirtualNodes(server);
+      newIndexes.put(server, i);
+      newVirtualNodes.put(server, virtualNodes);
+      if (!Integer.valueOf(virtualNodes).equals(virtualNodesByServer.get(server))) {
+        addedCount += virtualNodes;
+      }
+    }
+
+    // unchanged servers keep their nodes, already sorted
+    int keptCount = 0;
+    long[] keptHashes = new long[hashes.length];
+    int[] keptIndexes = new int[hashes.length];
+    for (int i = 0; i < hashes.length; i++) {
+      Integer index = newIndexes.get(servers[i]);
+      if (index != null && newVirtualNodes.get(servers[i]).equals(virtualNodesByServer.get(servers[i]))) {
+        keptHashes[keptCount] = hashes[i];
+        keptIndexes[keptCount++] = index;
+      }
+    }
+
+    // added and reweighted servers get new nodes
+    long[] added = new long[addedCount];
+    int[] addedIndexes = new int[addedCount];
+    int addedPosition = 0;
+    for (Map.Entry<Server, Integer> entry : newVirtualNodes.entrySet()) {
+      Server server = entry.getKey();
+      if (entry.getValue().equals(virtualNodesByServer.get(server))) {
+        continue;
+      }
+      for (int node = 0; node < entry.getValue(); node++) {
+        added[addedPosition] = hash(server.getAddress() + '#' + node);
+        addedIndexes[addedPosition++] = newIndexes.get(server);
+      }
+    }
+    sortByHash(added, addedIndexes);
+
+    int size = keptCount + addedCount;
+    long[] mergedHashes = new long[size];
+    Server[] mergedServers = new Server[size];
+    int[] mergedIndexes = new int[size];
+    int kept = 0;
+    int add = 0;
+    for (int i = 0; i < size; i++) {
+      if (add == addedCount || (kept < keptCount && keptHashes[kept] <= added[add])) {
+        mergedHashes[i] = keptHashes[kept];
+        mergedIndexes[i] = keptIndexes[kept++];
+      } else {
+        mergedHashes[i] = added[add];
+        mergedIndexes[i] = addedIndexes[add++];
+      }
+      mergedServers[i] = newServers.get(mergedIndexes[i]);
+    }
+    return new ConsistentHashRing(mergedHashes, mergedServers, mergedIndexes, newVirtualNodes);
+  }
+
+  int size() {
+    return hashes.length;
+  }
+
+  /**
+   * @return position of the first virtual node at or after the key hash, wrapping around the ring
+   */
+  int getPosition(long keyHash) {
+    int position = Arrays.binarySearch(hashes, keyHash);
+    if (position < 0) {
+      position = -position - 1;
+    }
+    return position == hashes.length ? 0 : position;
+  }
+
+  /**
+   * @return index of the server at the position in servers list the ring is built for
+   */
+  int getServerIndex(int position) {
+    return serverIndexes[position];
+  }
+
+  static int getVirtualNodes(Server server) {
+    return (int) Math.min(MAX_VIRTUAL_NODES, Math.max(1L, server.getWeight()) * VIRTUAL_NODES_PER_WEIGHT);
+  }
+
+  /**
+   * 64-bit FNV-1a of UTF-8 bytes with murmur3 finalizer, so close keys and addresses are spread over the whole ring
+   */
+  static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  private static void sortByHash(long[] hashes, int[] indexes) {
+    Integer[] order = new Integer[hashes.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (first, second) -> Long.compare(hashes[first], hashes[second]));
+    long[] sortedHashes = new long[hashes.length];
+    int[] sortedIndexes = new int[indexes.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedHashes[i] = hashes[order[i]];
+      sortedIndexes[i] = indexes[order[i]];
+    }
+    System.arraycopy(sortedHashes, 0, hashes, 0, hashes.length);
+    System.arraycopy(sortedIndexes, 0, indexes, 0, indexes.length);
+  }
+}
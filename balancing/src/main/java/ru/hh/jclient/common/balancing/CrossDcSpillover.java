@@ -0,0 +1,104 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Share of requests sent to other datacenters while current datacenter is alive but has lost part of its capacity.
+ * Capacity is the weight of local servers which are available and have no fails, scaled for servers on slow start.
+ * Once available capacity drops below threshold, spill grows linearly: from 0 at threshold to all requests at no capacity left.
+ * The share is recomputed not more often than {@link #REFRESH_INTERVAL_MILLIS}, so selection reads it in O(1)
+ */
+final class CrossDcSpillover {
+  static final long REFRESH_INTERVAL_MILLIS = 100;
+  private static final long NOT_COMPUTED = Long.MIN_VALUE;
+
+  private final AtomicLong computedAtMillis = new AtomicLong(NOT_COMPUTED);
+  private final AtomicInteger reportedPercent = new AtomicInteger();
+  private volatile double fraction;
+  private volatile int thresholdPercent;
+
+  /**
+   * @param thresholdPercent percent of available local capacity below which requests spill, 0 disables spillover
+   */
+  void configure(int thresholdPercent) {
+    this.thresholdPercent = Math.max(0, Math.min(100, thresholdPercent));
+    computedAtMillis.set(NOT_COMPUTED);
+    if (this.thresholdPercent == 0) {
+      fraction = 0;
+    }
+  }
+
+  boolean isEnabled() {
+    return thresholdPercent > 0;
+  }
+
+  /**
+   * @return true if the request should go to other datacenter
+   */
+  boolean shouldSpill(UpstreamSnapshot snapshot, Clock clock, Random random) {
+    if (!isEnabled()) {
+      return false;
+    }
+    double fraction = getFraction(snapshot, clock);
+    return fraction > 0 && (fraction >= 1 || random.nextDouble() < fraction);
+  }
+
+  double getFraction(UpstreamSnapshot snapshot, Clock clock) {
+    long now = clock.millis();
+    long computedAt = computedAtMillis.get();
+    boolean stale = computedAt == NOT_COMPUTED || now - computedAt >= REFRESH_INTERVAL_MILLIS;
+    if (stale && computedAtMillis.compareAndSet(computedAt, now)) {
+      fraction = computeFraction(snapshot, thresholdPercent, clock);
+    }
+    return fraction;
+  }
+
+  static double computeFraction(UpstreamSnapshot snapshot, int thresholdPercent, Clock clock) {
+    if (thresholdPercent <= 0 || snapshot.getRemoteServerIndexes().length == 0) {
+      return 0;
+    }
+    List<Server> servers = snapshot.getServers();
+    long totalWeight = 0;
+    double availableWeight = 0;
+    for (int index : snapshot.getLocalServerIndexes()) {
+      Server server = servers.get(index);
+      int weight = Math.max(0, server.getWeight());
+      totalWeight += weight;
+      if (server.isAvailable(clock) && server.getFails() == 0) {
+        availableWeight += weight * server.getSlowStartWeightFactor(clock);
+      }
+    }
+    if (totalWeight == 0) {
+      return 0;
+    }
+    double availablePercent = availableWeight * 100d / totalWeight;
+    if (availablePercent >= thresholdPercent) {
+      return 0;
+    }
+    return 1 - availablePercent / thresholdPercent;
+  }
+
+  /**
+   * @return true for the only caller which should report spill percent, if it changed since the last report
+   */
+  boolean claimReport(int percent) {
+    int prev = reportedPercent.get();
+    return prev != percent && reportedPercent.compareAndSet(prev, percent);
+  }
+
+  int getPercent() {
+    return (int) Math.round(fraction * 100);
+  }
+
+  @Override
+  public String toString() {
+    return "CrossDcSpillover{" +
+        "thresholdPercent=" + thresholdPercent +
+        ", fraction=" + fraction +
+        '}';
+  }
+}
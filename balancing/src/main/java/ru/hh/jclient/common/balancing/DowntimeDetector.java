@@ -1,32 +1,42 @@
 package ru.hh.jclient.common.balancing;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sliding window of last n results. Lock-free: every result claims its own slot and swaps it atomically,
+ * {@link #errorsCount} is corrected by the difference with the swapped out value, so it always converges to errors in the window
+ */
 final class DowntimeDetector {
-  private final int[] errors;
+  private final AtomicIntegerArray errors;
   private final int n;
 
-  private volatile int errorsCount;
-  private int current;
+  private final AtomicInteger errorsCount = new AtomicInteger();
+  private final AtomicLong current = new AtomicLong();
 
   DowntimeDetector(int n) {
     this.n = n;
-    errors = new int[n];
-    current = 0;
-    errorsCount = 0;
+    errors = new AtomicIntegerArray(n);
+  }
+
+  public void failed() {
+    put(1);
   }
 
-  public synchronized void failed() {
-    errorsCount = errorsCount + 1 - errors[current];
-    errors[current] = 1;
-    current = (current + 1) % n;
+  public void success() {
+    put(0);
   }
 
-  public synchronized void success() {
-    errorsCount -= errors[current];
-    errors[current] = 0;
-    current = (current + 1) % n;
+  private void put(int error) {
+    int slot = (int) (current.getAndIncrement() % n);
+    int delta = error - errors.getAndSet(slot, error);
+    if (delta != 0) {
+      errorsCount.addAndGet(delta);
+    }
   }
 
   public int successCount() {
-    return n - errorsCount;
+    return n - errorsCount.get();
   }
 }
@@ -0,0 +1,52 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds hedged attempts of an upstream by a share of its requests: every hedgeable request deposits a fraction of a token,
+ * every hedge withdraws a whole one. Balance is capped, so a quiet period does not accumulate a burst of hedges
+ */
+final class HedgeBudget {
+  static final double DEFAULT_RATIO = 0.1;
+  private static final long TOKEN = 1_000;
+  private static final long MAX_BALANCE = 10 * TOKEN;
+
+  private final long deposit;
+  private final AtomicLong balance = new AtomicLong();
+
+  HedgeBudget(double ratio) {
+    this.deposit = Math.max(1, Math.round(ratio * TOKEN));
+  }
+
+  void deposit() {
+    add(deposit);
+  }
+
+  boolean tryAcquire() {
+    long prev;
+    do {
+      prev = balance.get();
+      if (prev < TOKEN) {
+        return false;
+      }
+    } while (!balance.compareAndSet(prev, prev - TOKEN));
+    return true;
+  }
+
+  /**
+   * returns token of a hedge which was not fired
+   */
+  void refund() {
+    add(TOKEN);
+  }
+
+  private void add(long tokens) {
+    long prev;
+    do {
+      prev = balance.get();
+      if (prev >= MAX_BALANCE) {
+        return;
+      }
+    } while (!balance.compareAndSet(prev, Math.min(MAX_BALANCE, prev + tokens)));
+  }
+}
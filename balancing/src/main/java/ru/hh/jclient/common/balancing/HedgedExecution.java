@@ -0,0 +1,204 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.hh.jclient.common.ResponseWrapper;
+import static ru.hh.jclient.common.balancing.RequestBalancer.WARM_UP_DEFAULT_TIME_MICROS;
+
+/**
+ * Races an attempt with a hedged attempt to another server, fired if the first one does not complete within a delay.
+ * The first completed attempt wins and becomes current server of {@link BalancingState}, so it is released by the usual flow.
+ * The other attempt is cancelled and its server is released here without a result, so it does not count as a success or a failure.
+ * An attempt failed with exception does not win while the other one is still in flight, its server is marked as tried.
+ * A dedicated timer thread only measures the delay, hedges are fired on the callback executor of the client.
+ * Hedges take a permit of upstream {@link ConcurrencyLimiter} if it is enabled,
+ * the permit of the losing attempt is released here, the winner's one is released by the usual flow.
+ * If the hedge wins, time of the cancelled primary is recorded to the histogram as a lower bound of its response time,
+ * the response time of the hedge alone would bias the percentile low
+ */
+final class HedgedExecution {
+  private static final Logger LOGGER = LoggerFactory.getLogger(HedgedExecution.class);
+  private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+  private final BalancingState state;
+  private final HedgeBudget budget;
+  private final ConcurrencyLimiter limiter;
+  private final Executor executor;
+  @Nullable
+  private final LatencyHistogram histogram;
+  private final Function<ServerEntry, CompletableFuture<ResponseWrapper>> hedgeExecutor;
+  private final CompletableFuture<ResponseWrapper> result = new CompletableFuture<>();
+
+  private final ServerEntry primaryServer;
+  private CompletableFuture<ResponseWrapper> primary;
+  private long primaryStartNanos;
+  private boolean primaryDone;
+  private boolean primaryCancelled;
+
+  private ScheduledFuture<?> scheduledHedge;
+  private boolean hedgePermitAcquired;
+  private ServerEntry hedgeServer;
+  private CompletableFuture<ResponseWrapper> hedge;
+  private boolean hedgeDone;
+
+  private boolean decided;
+
+  HedgedExecution(BalancingState state, HedgeBudget budget, Executor executor, @Nullable LatencyHistogram histogram,
+                  Function<ServerEntry, CompletableFuture<ResponseWrapper>> hedgeExecutor) {
+    this.state = state;
+    this.budget = budget;
+    this.limiter = state.upstream.getConcurrencyLimiter();
+    this.executor = executor;
+    this.histogram = histogram;
+    this.hedgeExecutor = hedgeExecutor;
+    this.primaryServer = state.getCurrentServer();
+  }
+
+  CompletableFuture<ResponseWrapper> start(CompletableFuture<ResponseWrapper> primary, long delayMs) {
+    synchronized (this) {
+      this.primary = primary;
+      this.primaryStartNanos = System.nanoTime();
+      // scheduled before primary can complete, so the completion sees it and cancels it
+      this.scheduledHedge = SCHEDULER.schedule(this::submitHedge, delayMs, TimeUnit.MILLISECONDS);
+    }
+    primary.whenComplete((wrapper, throwable) -> onComplete(true, wrapper, throwable));
+    return result;
+  }
+
+  /**
+   * @return true if the hedge has won while the primary was still in flight, so the primary has been recorded to the histogram
+   */
+  synchronized boolean isPrimaryCancelled() {
+    return primaryCancelled;
+  }
+
+  private void submitHedge() {
+    try {
+      executor.execute(this::fireHedge);
+    } catch (RejectedExecutionException e) {
+      LOGGER.warn("callback executor rejected hedged request of upstream {}", state.getUpstreamName(), e);
+    }
+  }
+
+  private void fireHedge() {
+    ServerEntry server;
+    synchronized (this) {
+      if (decided || primaryDone) {
+        return;
+      }
+      if (limiter.isEnabled()) {
+        if (!limiter.tryAcquire()) {
+          LOGGER.debug("concurrency limit {} of upstream {} does not allow hedging", limiter, state.getUpstreamName());
+          return;
+        }
+        hedgePermitAcquired = true;
+      }
+      if (!budget.tryAcquire()) {
+        LOGGER.debug("hedge budget is exhausted for upstream {}", state.getUpstreamName());
+        releaseHedgePermit();
+        return;
+      }
+      server = state.acquireHedgeServer();
+      if (server == null) {
+        budget.refund();
+        releaseHedgePermit();
+        return;
+      }
+      hedgeServer = server;
+    }
+
+    CompletableFuture<ResponseWrapper> hedge;
+    try {
+      hedge = hedgeExecutor.apply(server);
+    } catch (RuntimeException e) {
+      LOGGER.warn("failed to fire hedged request to {}", server.getAddress(), e);
+      hedge = CompletableFuture.failedFuture(e);
+    }
+    boolean cancel;
+    synchronized (this) {
+      this.hedge = hedge;
+      // primary has already won, hedge server and permit are released by it
+      cancel = decided;
+    }
+    if (cancel) {
+      hedge.cancel(true);
+      return;
+    }
+    hedge.whenComplete((wrapper, throwable) -> onComplete(false, wrapper, throwable));
+  }
+
+  private void onComplete(boolean isPrimary, ResponseWrapper wrapper, Throwable throwable) {
+    CompletableFuture<ResponseWrapper> loser = null;
+    synchronized (this) {
+      if (isPrimary) {
+        primaryDone = true;
+      } else {
+        hedgeDone = true;
+      }
+      if (decided) {
+        return;
+      }
+      boolean otherInFlight = isPrimary ? hedgeServer != null && !hedgeDone : !primaryDone;
+      if (throwable != null && otherInFlight) {
+        ServerEntry failedServer = isPrimary ? primaryServer : hedgeServer;
+        state.releaseServer(failedServer, WARM_UP_DEFAULT_TIME_MICROS, true);
+        state.markTried(failedServer);
+        releaseHedgePermit();
+        return;
+      }
+      decided = true;
+      if (!isPrimary) {
+        state.setCurrentServer(hedgeServer);
+        if (otherInFlight) {
+          primaryCancelled = true;
+          if (histogram != null) {
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - primaryStartNanos));
+          }
+        }
+      }
+      if (otherInFlight) {
+        state.cancelServer(isPrimary ? hedgeServer : primaryServer);
+        loser = isPrimary ? hedge : primary;
+      }
+      // permits are interchangeable: one is left for the winner, the other one is released here
+      releaseHedgePermit();
+      if (isPrimary && hedgeServer == null) {
+        scheduledHedge.cancel(false);
+      }
+    }
+    if (loser != null) {
+      loser.cancel(true);
+    }
+    if (throwable != null) {
+      result.completeExceptionally(throwable);
+    } else {
+      result.complete(wrapper);
+    }
+  }
+
+  private void releaseHedgePermit() {
+    if (hedgePermitAcquired) {
+      hedgePermitAcquired = false;
+      limiter.release();
+    }
+  }
+
+  private static ScheduledThreadPoolExecutor createScheduler() {
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "jclient-hedging");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // hedges of completed requests do not wait in the queue until their delay passes
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+}
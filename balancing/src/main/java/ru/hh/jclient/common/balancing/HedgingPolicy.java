@@ -0,0 +1,48 @@
+package ru.hh.jclient.common.balancing;
+
+/**
+ * Delay after which a hedged attempt is fired: either fixed or a percentile of upstream response times
+ */
+final class HedgingPolicy {
+  private final int delayMs;
+  private final double percentile;
+
+  private HedgingPolicy(int delayMs, double percentile) {
+    this.delayMs = delayMs;
+    this.percentile = percentile;
+  }
+
+  static HedgingPolicy withDelay(int delayMs) {
+    if (delayMs <= 0) {
+      throw new IllegalArgumentException("hedge delay should be positive, got " + delayMs);
+    }
+    return new HedgingPolicy(delayMs, Double.NaN);
+  }
+
+  static HedgingPolicy atPercentile(double percentile) {
+    if (!(percentile > 0 && percentile < 1)) {
+      throw new IllegalArgumentException("hedge percentile should be in (0, 1), got " + percentile);
+    }
+    return new HedgingPolicy(-1, percentile);
+  }
+
+  boolean usesPercentile() {
+    return delayMs < 0;
+  }
+
+  /**
+   * @return delay in ms, or -1 if percentile is not known yet
+   */
+  long getDelayMs(LatencyHistogram latencyHistogram) {
+    if (!usesPercentile()) {
+      return delayMs;
+    }
+    long micros = latencyHistogram.getPercentileMicros(percentile);
+    return micros < 0 ? -1 : Math.max(1, (micros + 999) / 1_000);
+  }
+
+  @Override
+  public String toString() {
+    return usesPercentile() ? "p" + percentile : delayMs + "ms";
+  }
+}
@@ -0,0 +1,89 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of response times with log-linear buckets: 4 buckets per power of two, so a percentile
+ * is estimated with at most 25% error. Counts are halved once total exceeds a limit, so old samples fade out
+ */
+final class LatencyHistogram {
+  static final int MIN_SAMPLES = 100;
+  private static final int SUB_BUCKETS_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS;
+  private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - SUB_BUCKETS_BITS) * SUB_BUCKETS;
+  private static final long DECAY_LIMIT = 10_000;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicBoolean decaying = new AtomicBoolean();
+
+  void record(long micros) {
+    counts.incrementAndGet(bucketIndex(Math.max(0, micros)));
+    if (total.incrementAndGet() >= DECAY_LIMIT) {
+      decay();
+    }
+  }
+
+  /**
+   * @return upper bound of bucket holding the percentile in micros, or -1 if there are not enough samples yet
+   */
+  long getPercentileMicros(double percentile) {
+    long count = total.get();
+    if (count < MIN_SAMPLES) {
+      return -1;
+    }
+    long rank = (long) Math.ceil(percentile * count);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return bucketUpperBound(i);
+      }
+    }
+    return bucketUpperBound(BUCKETS - 1);
+  }
+
+  private void decay() {
+    if (!decaying.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long remaining = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        long prev;
+        long next;
+        do {
+          prev = counts.get(i);
+          next = prev >> 1;
+        } while (!counts.compareAndSet(i, prev, next));
+        remaining += next;
+      }
+      // samples recorded concurrently are counted in buckets, but may be lost in total, that only makes next decay a bit later
+      total.set(remaining);
+    } finally {
+      decaying.set(false);
+    }
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKETS_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exponent - SUB_BUCKETS_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKETS_BITS;
+    int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+    long lowerBound = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKETS_BITS);
+    long width = 1L << (exponent - SUB_BUCKETS_BITS);
+    return lowerBound + width - 1;
+  }
+}
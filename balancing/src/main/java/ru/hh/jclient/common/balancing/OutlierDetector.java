@@ -0,0 +1,185 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ejects servers which behave worse than their peers in the same datacenter. Once per interval results of every server
+ * since the previous evaluation are compared with results of its peers: a server is an outlier if its success rate is below mean
+ * of peers by more than {@link #SUCCESS_RATE_STDEV_FACTOR} standard deviations, its errors reach {@link #FAILURE_PERCENT}
+ * or its mean response time exceeds median of peers {@link #LATENCY_FACTOR} times.
+ * So a server answering fast with errors is ejected, though its low number of requests in flight makes it look the least loaded.
+ * An outlier is ejected for ejection time doubled with every ejection in a row, up to 2^{@link #MAX_EJECTION_SHIFT} times,
+ * not more than max ejection percent of servers are ejected at once.
+ * Evaluation is run on release of the first request after the interval, selection only checks ejection of a server in O(1)
+ */
+final class OutlierDetector {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OutlierDetector.class);
+  /**
+   * servers with fewer requests in the interval are neither compared nor ejected
+   */
+  static final int MIN_REQUESTS = 20;
+  /**
+   * servers are compared only if a datacenter has that many servers with enough requests
+   */
+  static final int MIN_PEERS = 3;
+  static final double SUCCESS_RATE_STDEV_FACTOR = 1.9;
+  static final int FAILURE_PERCENT = 85;
+  static final double LATENCY_FACTOR = 3;
+  static final int MAX_EJECTION_SHIFT = 4;
+  private static final long NOT_EVALUATED = Long.MIN_VALUE;
+
+  private final AtomicLong evaluatedAtMillis = new AtomicLong(NOT_EVALUATED);
+  private volatile long intervalMillis;
+  private volatile long ejectionMillis;
+  private volatile int maxEjectionPercent;
+
+  void configure(UpstreamConfig config) {
+    intervalMillis = Math.max(0, config.getOutlierDetectionIntervalMs());
+    ejectionMillis = Math.max(0, config.getOutlierEjectionMs());
+    maxEjectionPercent = Math.max(0, Math.min(100, config.getOutlierMaxEjectionPercent()));
+  }
+
+  boolean isEnabled() {
+    return intervalMillis > 0 && ejectionMillis > 0 && maxEjectionPercent > 0;
+  }
+
+  /**
+   * evaluates servers if the interval has passed since the previous evaluation, only one of concurrent callers does it
+   */
+  void evaluateIfNeeded(List<Server> servers, Clock clock) {
+    if (!isEnabled()) {
+      return;
+    }
+    long now = clock.millis();
+    long evaluatedAt = evaluatedAtMillis.get();
+    if (evaluatedAt == NOT_EVALUATED) {
+      // results collected before detection was enabled are stale
+      if (evaluatedAtMillis.compareAndSet(evaluatedAt, now)) {
+        servers.stream().filter(Objects::nonNull).forEach(OutlierDetector::drain);
+      }
+      return;
+    }
+    if (now - evaluatedAt >= intervalMillis && evaluatedAtMillis.compareAndSet(evaluatedAt, now)) {
+      evaluate(servers, now);
+    }
+  }
+
+  void evaluate(List<Server> servers, long nowMillis) {
+    Map<String, List<Result>> resultsByDatacenter = new HashMap<>();
+    int total = 0;
+    int ejected = 0;
+    for (Server server : servers) {
+      if (server == null) {
+        continue;
+      }
+      total++;
+      Result result = drain(server);
+      if (server.getOutlierStats().isEjected(nowMillis)) {
+        ejected++;
+      } else if (result.requests >= MIN_REQUESTS) {
+        resultsByDatacenter.computeIfAbsent(server.getDatacenter(), datacenter -> new ArrayList<>()).add(result);
+      }
+    }
+    int maxEjected = total < MIN_PEERS ? 0 : Math.max(1, total * maxEjectionPercent / 100);
+
+    for (List<Result> results : resultsByDatacenter.values()) {
+      if (results.size() < MIN_PEERS) {
+        continue;
+      }
+      double meanSuccessRate = 0;
+      for (Result result : results) {
+        meanSuccessRate += result.successRate();
+      }
+      meanSuccessRate /= results.size();
+      double variance = 0;
+      for (Result result : results) {
+        variance += Math.pow(result.successRate() - meanSuccessRate, 2);
+      }
+      double minSuccessRate = meanSuccessRate - SUCCESS_RATE_STDEV_FACTOR * Math.sqrt(variance / results.size());
+      double maxMeanTimeMicros = LATENCY_FACTOR * medianTimeMicros(results);
+
+      for (Result result : results) {
+        String reason = getOutlierReason(result, minSuccessRate, maxMeanTimeMicros);
+        OutlierStats stats = result.server.getOutlierStats();
+        if (reason == null) {
+          stats.onHealthy();
+        } else if (ejected < maxEjected) {
+          long ejectionTime = ejectionMillis << Math.min(stats.getEjections(), MAX_EJECTION_SHIFT);
+          LOGGER.info("Ejecting server {} for {} ms, {}", result.server, ejectionTime, reason);
+          stats.eject(nowMillis + ejectionTime);
+          ejected++;
+        } else {
+          LOGGER.warn("Server {} is an outlier, but {} of {} servers are already ejected, {}", result.server, ejected, total, reason);
+        }
+      }
+    }
+  }
+
+  private static String getOutlierReason(Result result, double minSuccessRate, double maxMeanTimeMicros) {
+    if (result.errors * 100L >= (long) FAILURE_PERCENT * result.requests) {
+      return "errors: " + result.errors + " of " + result.requests;
+    }
+    if (result.successRate() < minSuccessRate) {
+      return "success rate: " + result.successRate() + " below " + minSuccessRate;
+    }
+    if (maxMeanTimeMicros > 0 && result.meanTimeMicros() > maxMeanTimeMicros) {
+      return "mean response time: " + result.meanTimeMicros() + " us above " + maxMeanTimeMicros;
+    }
+    return null;
+  }
+
+  private static double medianTimeMicros(List<Result> results) {
+    double[] times = results.stream().filter(result -> result.errors < result.requests).mapToDouble(Result::meanTimeMicros).toArray();
+    if (times.length == 0) {
+      return 0;
+    }
+    Arrays.sort(times);
+    return times.length % 2 == 1 ? times[times.length / 2] : (times[times.length / 2 - 1] + times[times.length / 2]) / 2;
+  }
+
+  private static Result drain(Server server) {
+    OutlierStats stats = server.getOutlierStats();
+    long results = stats.drainResults();
+    return new Result(server, OutlierStats.requests(results), OutlierStats.errors(results), stats.drainSuccessTimeMicros());
+  }
+
+  @Override
+  public String toString() {
+    return "OutlierDetector{" +
+        "intervalMillis=" + intervalMillis +
+        ", ejectionMillis=" + ejectionMillis +
+        ", maxEjectionPercent=" + maxEjectionPercent +
+        '}';
+  }
+
+  private static final class Result {
+    private final Server server;
+    private final int requests;
+    private final int errors;
+    private final long successTimeMicros;
+
+    private Result(Server server, int requests, int errors, long successTimeMicros) {
+      this.server = server;
+      this.requests = requests;
+      this.errors = errors;
+      this.successTimeMicros = successTimeMicros;
+    }
+
+    private double successRate() {
+      return (double) (requests - errors) / requests;
+    }
+
+    private double meanTimeMicros() {
+      return requests > errors ? (double) successTimeMicros / (requests - errors) : 0;
+    }
+  }
+}
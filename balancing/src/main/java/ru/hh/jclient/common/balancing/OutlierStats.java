@@ -0,0 +1,92 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of a {@link Server} since the last evaluation of {@link OutlierDetector} and its ejection state.
+ * Counters are written on release without locking and drained by the detector, ejection check of a server which is not ejected
+ * reads a single volatile field: deadline of an ejection is cleared by the first check after it has passed
+ */
+final class OutlierStats {
+  private static final long NOT_EJECTED = 0;
+
+  /**
+   * requests in high half, errors in low half
+   */
+  private final AtomicLong results = new AtomicLong();
+  private final AtomicLong successTimeMicros = new AtomicLong();
+  private final AtomicLong ejectedUntilMillis = new AtomicLong(NOT_EJECTED);
+  /**
+   * ejections in a row, written by the detector only
+   */
+  private volatile int ejections;
+
+  void record(boolean isError, long responseTimeMicros) {
+    if (isError) {
+      results.addAndGet((1L << 32) + 1);
+    } else {
+      results.addAndGet(1L << 32);
+      successTimeMicros.addAndGet(responseTimeMicros);
+    }
+  }
+
+  boolean isEjected(Clock clock) {
+    long ejectedUntil = ejectedUntilMillis.get();
+    if (ejectedUntil == NOT_EJECTED) {
+      return false;
+    }
+    if (clock.millis() < ejectedUntil) {
+      return true;
+    }
+    // fails if the detector has ejected the server again meanwhile
+    ejectedUntilMillis.compareAndSet(ejectedUntil, NOT_EJECTED);
+    return false;
+  }
+
+  boolean isEjected(long nowMillis) {
+    return nowMillis < ejectedUntilMillis.get();
+  }
+
+  /**
+   * @return requests and errors since the previous call packed the same way as they are counted, resets counters
+   */
+  long drainResults() {
+    return results.getAndSet(0);
+  }
+
+  long drainSuccessTimeMicros() {
+    return successTimeMicros.getAndSet(0);
+  }
+
+  void eject(long untilMillis) {
+    ejectedUntilMillis.set(untilMillis);
+    ejections++;
+  }
+
+  /**
+   * healthy interval of a server which is not ejected shortens its next ejection
+   */
+  void onHealthy() {
+    if (ejections > 0) {
+      ejections--;
+    }
+  }
+
+  int getEjections() {
+    return ejections;
+  }
+
+  static int requests(long results) {
+    return (int) (results >>> 32);
+  }
+
+  static int errors(long results) {
+    return (int) results;
+  }
+
+  @Override
+  public String toString() {
+    return "{ejectedUntilMillis=" + ejectedUntilMillis + ", ejections=" + ejections + '}';
+  }
+}
@@ -0,0 +1,129 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static ru.hh.jclient.common.balancing.BalancingStrategy.getLeastLoadedServer;
+import static ru.hh.jclient.common.balancing.PowerOfTwoChoicesBalancingStrategy.isExhausted;
+import static ru.hh.jclient.common.balancing.PowerOfTwoChoicesBalancingStrategy.sampleNotExcluded;
+
+/**
+ * Scores servers by peak EWMA response time multiplied by requests in flight, see {@link PeakEwmaTracker},
+ * score of a server on slow start is divided by its share of weight. Requests in flight to a server without known response time
+ * are scored with {@link #UNKNOWN_COST_MICROS}, so a fresh or long idle server does not win every comparison until it responds.
+ * Picks the better of two random servers from the most preferred datacenter partition, so fresh estimates
+ * do not send all requests to one server. If sampling fails, scans the partition for the best server,
+ * and falls back to {@link BalancingStrategy#getLeastLoadedServer} only if the partition has no available servers
+ */
+final class PeakEwmaBalancingStrategy {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PeakEwmaBalancingStrategy.class);
+  static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+  /**
+   * errors are often fast, they should not make a failing server look like the fastest one
+   */
+  static final long ERROR_PENALTY_MICROS = RequestBalancer.WARM_UP_DEFAULT_TIME_MICROS;
+  /**
+   * cost of a server with requests in flight but without response time: a fresh one has no samples yet,
+   * and an idle one has its cost decayed towards zero
+   */
+  static final long UNKNOWN_COST_MICROS = RequestBalancer.WARM_UP_DEFAULT_TIME_MICROS;
+  /**
+   * response time of any real server is above it, lower cost means there are no samples or they have decayed
+   */
+  private static final double MIN_KNOWN_COST_MICROS = 1;
+
+  static int getServer(UpstreamSnapshot snapshot, BitSet excludedServers, String datacenter, boolean allowCrossDCRequests,
+                       Clock clock, long nowNanos, Random random) {
+    List<Server> servers = snapshot.getServers();
+    int[] partition = snapshot.getLocalServerIndexes();
+    if (allowCrossDCRequests && isExhausted(partition, excludedServers)) {
+      partition = snapshot.getRemoteServerIndexes();
+    }
+    int index = pickBetterOfTwo(servers, partition, excludedServers, clock, nowNanos, random);
+    if (index < 0) {
+      LOGGER.trace("peak ewma sampling failed, scanning partition");
+      index = pickBest(servers, partition, excludedServers, clock, nowNanos);
+    }
+    if (index < 0) {
+      LOGGER.trace("no available servers in partition, falling back to least loaded");
+      return getLeastLoadedServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock);
+    }
+    return index;
+  }
+
+  static void observe(Server server, long responseTimeMicros, boolean isError, long nowNanos) {
+    server.getPeakEwmaTracker().observe(isError ? Math.max(responseTimeMicros, ERROR_PENALTY_MICROS) : responseTimeMicros, nowNanos);
+  }
+
+  static double getLoad(Server server, long nowNanos) {
+    int requests = server.getRequests();
+    double cost = server.getPeakEwmaTracker().getCost(nowNanos);
+    if (requests > 0 && cost < MIN_KNOWN_COST_MICROS) {
+      cost = UNKNOWN_COST_MICROS;
+    }
+    return cost * (requests + 1);
+  }
+
+  private static double getLoad(Server server, Clock clock, long nowNanos) {
+    return getLoad(server, nowNanos) / server.getSlowStartWeightFactor(clock);
+  }
+
+  private static int pickBetterOfTwo(List<Server> servers, int[] indexes, BitSet excludedServers, Clock clock, long nowNanos,
+                                     Random random) {
+    if (indexes.length - excludedServers.cardinality() < 2) {
+      return -1;
+    }
+    int first = sampleNotExcluded(indexes, excludedServers, -1, random);
+    if (first < 0) {
+      return -1;
+    }
+    int second = sampleNotExcluded(indexes, excludedServers, first, random);
+    if (second < 0) {
+      return -1;
+    }
+
+    boolean firstUnavailable = isUnavailable(servers.get(first), clock);
+    boolean secondUnavailable = isUnavailable(servers.get(second), clock);
+    if (firstUnavailable && secondUnavailable) {
+      return -1;
+    }
+    if (firstUnavailable || secondUnavailable) {
+      return firstUnavailable ? second : first;
+    }
+    double firstLoad = getLoad(servers.get(first), clock, nowNanos);
+    double secondLoad = getLoad(servers.get(second), clock, nowNanos);
+    int index = firstLoad <= secondLoad ? first : second;
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("peak ewma balancer pick of idx={} load:{} and idx={} load:{} for server idx={}:{}",
+          first, firstLoad, second, secondLoad, index, servers.get(index));
+    }
+    return index;
+  }
+
+  private static int pickBest(List<Server> servers, int[] indexes, BitSet excludedServers, Clock clock, long nowNanos) {
+    int bestIndex = -1;
+    double bestLoad = Double.POSITIVE_INFINITY;
+    for (int index : indexes) {
+      if (excludedServers.get(index) || isUnavailable(servers.get(index), clock)) {
+        continue;
+      }
+      double load = getLoad(servers.get(index), clock, nowNanos);
+      if (bestIndex < 0 || load < bestLoad) {
+        bestIndex = index;
+        bestLoad = load;
+      }
+    }
+    return bestIndex;
+  }
+
+  private static boolean isUnavailable(Server server, Clock clock) {
+    return !server.isAvailable(clock);
+  }
+
+  private PeakEwmaBalancingStrategy() {
+  }
+}
@@ -0,0 +1,51 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Peak-sensitive moving average of response time, decaying on elapsed time rather than on samples count.
+ * A sample above the average replaces it at once, so a degraded server is penalized with its first slow response.
+ * Lower samples pull the average down with weight 1 - exp(-elapsed / decay time),
+ * and without samples the average decays towards zero, so an idle server gets probed again
+ */
+final class PeakEwmaTracker {
+  private final double decayNanos;
+  private final AtomicLong costBits = new AtomicLong(Double.doubleToRawLongBits(0d));
+  /**
+   * written after cost, racing writers may decay a concurrent sample a bit differently, that's acceptable for an estimate
+   */
+  private volatile long lastUpdateNanos;
+
+  PeakEwmaTracker(long decayNanos) {
+    this.decayNanos = decayNanos;
+  }
+
+  void observe(long responseTimeMicros, long nowNanos) {
+    double sample = responseTimeMicros;
+    long prevBits;
+    double next;
+    do {
+      prevBits = costBits.get();
+      double prev = Double.longBitsToDouble(prevBits);
+      if (sample >= prev) {
+        next = sample;
+      } else {
+        double weight = decayWeight(nowNanos);
+        next = prev * weight + sample * (1d - weight);
+      }
+    } while (!costBits.compareAndSet(prevBits, Double.doubleToRawLongBits(next)));
+    lastUpdateNanos = nowNanos;
+  }
+
+  /**
+   * @return average response time in micros decayed to the moment
+   */
+  double getCost(long nowNanos) {
+    return Double.longBitsToDouble(costBits.get()) * decayWeight(nowNanos);
+  }
+
+  private double decayWeight(long nowNanos) {
+    long elapsed = nowNanos - lastUpdateNanos;
+    return elapsed > 0 ? Math.exp(-elapsed / decayNanos) : 1d;
+  }
+}
@@ -0,0 +1,91 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static ru.hh.jclient.common.balancing.BalancingStrategy.getLeastLoadedServer;
+
+/**
+ * Samples two servers from the most preferred datacenter partition and picks the less loaded one.
+ * Falls back to {@link BalancingStrategy#getLeastLoadedServer} when the partition is too small to sample from
+ * or both sampled servers are unavailable (excluded, on slow start, with open circuit breaker or ejected as an outlier),
+ * so the result respects the same preferences
+ */
+final class PowerOfTwoChoicesBalancingStrategy {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PowerOfTwoChoicesBalancingStrategy.class);
+  private static final int MAX_SAMPLING_ATTEMPTS = 8;
+
+  static int getServer(UpstreamSnapshot snapshot, BitSet excludedServers, String datacenter, boolean allowCrossDCRequests,
+                       Clock clock, Random random) {
+    List<Server> servers = snapshot.getServers();
+    int[] partition = snapshot.getLocalServerIndexes();
+    if (allowCrossDCRequests && isExhausted(partition, excludedServers)) {
+      partition = snapshot.getRemoteServerIndexes();
+    }
+    int index = pickLessLoadedOfTwo(servers, partition, excludedServers, snapshot.getMaxStatLoad(), clock, random);
+    if (index < 0) {
+      LOGGER.trace("power of two choices sampling failed, falling back to full scan");
+      return getLeastLoadedServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock);
+    }
+    return index;
+  }
+
+  private static int pickLessLoadedOfTwo(List<Server> servers, int[] indexes, BitSet excludedServers, float maxStatLoad, Clock clock,
+                                         Random random) {
+    if (indexes.length - excludedServers.cardinality() < 2) {
+      return -1;
+    }
+    int first = sampleNotExcluded(indexes, excludedServers, -1, random);
+    if (first < 0) {
+      return -1;
+    }
+    int second = sampleNotExcluded(indexes, excludedServers, first, random);
+    if (second < 0) {
+      return -1;
+    }
+
+    float firstLoad = getLoad(servers.get(first), maxStatLoad, clock);
+    float secondLoad = getLoad(servers.get(second), maxStatLoad, clock);
+    if (firstLoad == Float.POSITIVE_INFINITY && secondLoad == Float.POSITIVE_INFINITY) {
+      return -1;
+    }
+    int index = firstLoad <= secondLoad ? first : second;
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("p2c balancer pick of idx={} load:{} and idx={} load:{} for server idx={}:{}",
+          first, firstLoad, second, secondLoad, index, servers.get(index));
+    }
+    return index;
+  }
+
+  private static float getLoad(Server server, float maxStatLoad, Clock clock) {
+    return server.isAvailable(clock) ? server.getStatLoad(maxStatLoad, clock) : Float.POSITIVE_INFINITY;
+  }
+
+  static boolean isExhausted(int[] indexes, BitSet excludedServers) {
+    if (excludedServers.cardinality() < indexes.length) {
+      return false;
+    }
+    for (int index : indexes) {
+      if (!excludedServers.get(index)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static int sampleNotExcluded(int[] indexes, BitSet excludedServers, int alreadySampled, Random random) {
+    for (int attempt = 0; attempt < MAX_SAMPLING_ATTEMPTS; attempt++) {
+      int index = indexes[random.nextInt(indexes.length)];
+      if (index != alreadySampled && !excludedServers.get(index)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private PowerOfTwoChoicesBalancingStrategy() {
+  }
+}
@@ -5,21 +5,33 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import static java.util.concurrent.CompletableFuture.completedFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.hh.jclient.common.HttpClientFactoryBuilder;
+import static ru.hh.jclient.common.HttpStatuses.GATEWAY_TIMEOUT;
 import static ru.hh.jclient.common.JClientBase.HTTP_POST;
+import ru.hh.jclient.common.MappedTransportErrorResponse;
 import ru.hh.jclient.common.Request;
+import ru.hh.jclient.common.RequestBuilder;
+import ru.hh.jclient.common.RequestContext;
 import ru.hh.jclient.common.RequestEngine;
 import ru.hh.jclient.common.RequestStrategy;
 import ru.hh.jclient.common.Response;
+import ru.hh.jclient.common.ResponseConverterUtils;
 import ru.hh.jclient.common.ResponseWrapper;
 
 public abstract class RequestBalancer implements RequestEngine {
   private static final Logger LOGGER = LoggerFactory.getLogger(RequestBalancer.class);
   static final int WARM_UP_DEFAULT_TIME_MICROS = 100_000;
+  static final long NO_DEADLINE = Long.MAX_VALUE;
+  /**
+   * retries are not fired if less time is left before deadline, it is hardly enough to get a response
+   */
+  static final int MIN_TRY_TIMEOUT_MS = 50;
 
   protected final Request request;
   private final RequestStrategy.RequestExecutor requestExecutor;
@@ -31,6 +43,10 @@ public abstract class RequestBalancer implements RequestEngine {
   private int requestTimeLeftMs;
   private final double timeoutMultiplier;
   protected int requestTimeoutMs;
+  /**
+   * {@link System#nanoTime()} after which no tries are fired, see {@link RequestBalancerBuilder#enforceOuterTimeout()}
+   */
+  private long deadlineNanos = NO_DEADLINE;
 
   RequestBalancer(Request request,
                   RequestStrategy.RequestExecutor requestExecutor,
@@ -57,13 +73,18 @@ public abstract class RequestBalancer implements RequestEngine {
 
   @Override
   public CompletableFuture<Response> execute() {
+    if (getTimeLeftBeforeDeadlineMs() <= 0) {
+      LOGGER.warn("Outer timeout is exceeded, not executing {} {}, trace: {}", request.getMethod(), request.getUri(), getTrace());
+      return requestExecutor.handleFailFastResponse(request, getFailFastRequestContext(), getDeadlineExceededResponse(request))
+          .thenApply(ResponseWrapper::getResponse);
+    }
     var resultOrContext = getResultOrContext(request);
     if (resultOrContext.getResult() != null) {
       return requestExecutor.handleFailFastResponse(request, resultOrContext.getRequestContext(), resultOrContext.getResult())
           .thenApply(ResponseWrapper::getResponse);
     }
-    return requestExecutor.executeRequest(
-      resultOrContext.getBalancedRequest(this.timeoutMultiplier),
+    return executeRequest(
+      fitIntoDeadline(resultOrContext.getBalancedRequest(this.timeoutMultiplier)),
       maxTries - triesLeft,
       resultOrContext.getRequestContext()
     )
@@ -73,6 +94,49 @@ public abstract class RequestBalancer implements RequestEngine {
 
   protected abstract ImmediateResultOrPreparedRequest getResultOrContext(Request request);
 
+  protected RequestContext getFailFastRequestContext() {
+    return RequestContext.EMPTY_CONTEXT;
+  }
+
+  void setDeadlineNanos(long deadlineNanos) {
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * @return ms left before deadline, {@link Integer#MAX_VALUE} if there is no deadline
+   */
+  int getTimeLeftBeforeDeadlineMs() {
+    if (deadlineNanos == NO_DEADLINE) {
+      return Integer.MAX_VALUE;
+    }
+    long leftMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, leftMs));
+  }
+
+  private Request fitIntoDeadline(Request balancedRequest) {
+    int timeLeftMs = getTimeLeftBeforeDeadlineMs();
+    if (timeLeftMs == Integer.MAX_VALUE || balancedRequest.getRequestTimeout() > 0 && balancedRequest.getRequestTimeout() <= timeLeftMs) {
+      return balancedRequest;
+    }
+    RequestBuilder requestBuilder = new RequestBuilder(balancedRequest);
+    requestBuilder.setRequestTimeout(Math.max(1, timeLeftMs));
+    return requestBuilder.build();
+  }
+
+  private static Response getDeadlineExceededResponse(Request request) {
+    return ResponseConverterUtils.convert(
+      new MappedTransportErrorResponse(GATEWAY_TIMEOUT, "Outer timeout is exceeded", request.getUri())
+    );
+  }
+
+  protected CompletableFuture<ResponseWrapper> executeRequest(Request balancedRequest, int retryCount, RequestContext context) {
+    return requestExecutor.executeRequest(balancedRequest, retryCount, context);
+  }
+
+  Executor getCallbackExecutor() {
+    return requestExecutor.getCallbackExecutor();
+  }
+
   private void finishRequest(ResponseWrapper wrapper) {
     long timeToLastByteMicros = WARM_UP_DEFAULT_TIME_MICROS;
     if (wrapper != null) {
@@ -114,8 +178,17 @@ public abstract class RequestBalancer implements RequestEngine {
     if (triesLeft == 0 || requestTimeLeftMs == 0) {
       return false;
     }
-    boolean isIdempotent = forceIdempotence || !HTTP_POST.equals(request.getMethod());
-    return checkRetry(response, isIdempotent);
+    int timeLeftBeforeDeadlineMs = getTimeLeftBeforeDeadlineMs();
+    if (timeLeftBeforeDeadlineMs < MIN_TRY_TIMEOUT_MS) {
+      LOGGER.debug("Not retrying {} {}, only {} ms left before outer timeout",
+        request.getMethod(), request.getUri(), timeLeftBeforeDeadlineMs);
+      return false;
+    }
+    return checkRetry(response, isIdempotent());
+  }
+
+  protected boolean isIdempotent() {
+    return forceIdempotence || !HTTP_POST.equals(request.getMethod());
   }
 
   protected abstract boolean checkRetry(Response response, boolean isIdempotent);
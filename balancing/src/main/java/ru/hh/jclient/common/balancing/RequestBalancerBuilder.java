@@ -1,10 +1,16 @@
 package ru.hh.jclient.common.balancing;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.hh.jclient.common.HttpClient;
+import ru.hh.jclient.common.HttpClientContext;
+import ru.hh.jclient.common.HttpHeaderNames;
 import ru.hh.jclient.common.Monitoring;
 import ru.hh.jclient.common.Request;
 import ru.hh.jclient.common.RequestEngineBuilder;
@@ -25,6 +31,10 @@ public class RequestBalancerBuilder implements RequestEngineBuilder<RequestBalan
   private Integer maxTimeoutTries;
   private boolean forceIdempotence;
   private boolean adaptive;
+  private boolean peakEwma;
+  private boolean enforceOuterTimeout;
+  private HedgingPolicy hedgingPolicy;
+  private String routingKey;
   private String profile;
 
   @Override
@@ -35,9 +45,20 @@ public class RequestBalancerBuilder implements RequestEngineBuilder<RequestBalan
 
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace("builderParams::: request: {}, profile: {}, upstream: {}, timeoutMultiplier: {}, " +
-              "maxTimeoutTries: {}, forceIdempotence: {}, adaptive: {}",
-          request, profile, upstream, timeoutMultiplier, maxTimeoutTries, forceIdempotence, adaptive);
+              "maxTimeoutTries: {}, forceIdempotence: {}, adaptive: {}, peakEwma: {}, hedging: {}, enforceOuterTimeout: {}, " +
+              "routingKey: {}",
+          request, profile, upstream, timeoutMultiplier, maxTimeoutTries, forceIdempotence, adaptive, peakEwma, hedgingPolicy,
+          enforceOuterTimeout, routingKey);
     }
+    RequestBalancer requestBalancer = createRequestBalancer(request, requestExecutor, upstream, monitoring);
+    if (enforceOuterTimeout) {
+      requestBalancer.setDeadlineNanos(getDeadlineNanos(httpClient.getContext(), LocalDateTime.now(), System.nanoTime()));
+    }
+    return requestBalancer;
+  }
+
+  private RequestBalancer createRequestBalancer(Request request, RequestStrategy.RequestExecutor requestExecutor,
+                                                Upstream upstream, Set<Monitoring> monitoring) {
     if (upstream == null || !upstream.isEnabled()) {
       int maxTimeoutTries = Optional.ofNullable(this.maxTimeoutTries).orElseGet(UpstreamConfig.DEFAULT_CONFIG::getMaxTimeoutTries);
       return new ExternalUrlRequestor(upstream, request, requestExecutor,
@@ -50,14 +71,38 @@ public class RequestBalancerBuilder implements RequestEngineBuilder<RequestBalan
       if (adaptive) {
         state = new AdaptiveBalancingState(upstream, profile);
       } else {
-        state = new BalancingState(upstream, profile);
+        state = new BalancingState(upstream, profile, peakEwma ? BalancingStrategyType.PEAK_EWMA : null, routingKey);
       }
       return new UpstreamRequestBalancer(state, request, requestExecutor,
-        maxTimeoutTries, forceIdempotence, timeoutMultiplier, monitoring
+        maxTimeoutTries, forceIdempotence, timeoutMultiplier, monitoring, adaptive ? null : hedgingPolicy
       );
     }
   }
 
+  /**
+   * @return {@link System#nanoTime()} when outer timeout of the incoming request expires,
+   * {@link RequestBalancer#NO_DEADLINE} if there is no valid {@link HttpHeaderNames#X_OUTER_TIMEOUT_MS} header
+   */
+  static long getDeadlineNanos(HttpClientContext context, LocalDateTime now, long nowNanos) {
+    List<String> values = context.getHeaders().get(HttpHeaderNames.X_OUTER_TIMEOUT_MS);
+    if (values == null || values.isEmpty()) {
+      return RequestBalancer.NO_DEADLINE;
+    }
+    long outerTimeoutMs;
+    try {
+      outerTimeoutMs = Long.parseLong(values.get(0).trim());
+    } catch (NumberFormatException e) {
+      LOGGER.debug("Ignoring malformed {} header: {}", HttpHeaderNames.X_OUTER_TIMEOUT_MS, values.get(0));
+      return RequestBalancer.NO_DEADLINE;
+    }
+    if (outerTimeoutMs <= 0) {
+      // timeout is not set by the caller
+      return RequestBalancer.NO_DEADLINE;
+    }
+    long alreadySpentMs = Duration.between(context.getRequestStart(), now).toMillis();
+    return nowNanos + TimeUnit.MILLISECONDS.toNanos(outerTimeoutMs - alreadySpentMs);
+  }
+
   @Override
   public RequestBalancerBuilder withTimeoutMultiplier(Double timeoutMultiplier) {
     this.timeoutMultiplier = timeoutMultiplier;
@@ -84,6 +129,55 @@ public class RequestBalancerBuilder implements RequestEngineBuilder<RequestBalan
     return this;
   }
 
+  /**
+   * selects servers by peak EWMA response time and requests in flight, see {@link BalancingStrategyType#PEAK_EWMA}.
+   * Ignored if {@link #makeAdaptive()} is set
+   */
+  public RequestBalancerBuilder makePeakEwma() {
+    this.peakEwma = true;
+    return this;
+  }
+
+  /**
+   * fires a hedged attempt to another server if idempotent request gets no response within delay,
+   * the first response wins and the other attempt is cancelled. Hedges are bounded by upstream hedge budget.
+   * Ignored if {@link #makeAdaptive()} is set
+   */
+  public RequestBalancerBuilder withHedgeDelay(int delayMs) {
+    this.hedgingPolicy = HedgingPolicy.withDelay(delayMs);
+    return this;
+  }
+
+  /**
+   * same as {@link #withHedgeDelay(int)}, with delay equal to the percentile of upstream response times, e.g. 0.95.
+   * No hedges are fired until enough responses are seen
+   */
+  public RequestBalancerBuilder withHedgeDelayPercentile(double percentile) {
+    this.hedgingPolicy = HedgingPolicy.atPercentile(percentile);
+    return this;
+  }
+
+  /**
+   * sends requests with the same key to the same server of upstream, e.g. to make use of per key caches on the server,
+   * see {@link ConsistentHashBalancingStrategy}. Overrides strategy of the profile and {@link #makePeakEwma()}.
+   * Ignored if {@link #makeAdaptive()} is set
+   */
+  public RequestBalancerBuilder withRoutingKey(String routingKey) {
+    this.routingKey = routingKey;
+    return this;
+  }
+
+  /**
+   * limits time of all tries by {@link HttpHeaderNames#X_OUTER_TIMEOUT_MS} of the incoming request,
+   * counted from {@link HttpClientContext#getRequestStart()}. Every try timeout is shrunk to time left,
+   * retries are not fired if there is not enough time left,
+   * and the request fails fast with 504 status once the outer timeout is exceeded
+   */
+  public RequestBalancerBuilder enforceOuterTimeout() {
+    this.enforceOuterTimeout = true;
+    return this;
+  }
+
   public RequestBalancerBuilder withProfile(String profile) {
     this.profile = profile;
     return this;
@@ -1,29 +1,39 @@
 package ru.hh.jclient.common.balancing;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding window of last n response times. Lock-free the same way as {@link DowntimeDetector}:
+ * every time claims its own slot, {@link #total} is corrected by the difference with the swapped out value
+ */
 public class ResponseTimeTracker {
-  private final long[] times;
+  private final AtomicLongArray times;
   private final int n;
 
-  private volatile long total;
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong current = new AtomicLong();
   private volatile boolean isWarmUp = true;
-  private int current;
 
   ResponseTimeTracker(int n) {
     this.n = n;
-    times = new long[n];
+    times = new AtomicLongArray(n);
   }
 
-  public synchronized void time(long time) {
-    total += time - times[current];
-    times[current] = time;
-    if (current == n - 1) {
+  public void time(long time) {
+    long position = current.getAndIncrement();
+    int slot = (int) (position % n);
+    long delta = time - times.getAndSet(slot, time);
+    if (delta != 0) {
+      total.addAndGet(delta);
+    }
+    if (position == n - 1) {
       isWarmUp = false;
     }
-    current = (current + 1) % n;
   }
 
   public long mean() {
-    return total / n;
+    return total.get() / n;
   }
 
   public boolean isWarmUp() {
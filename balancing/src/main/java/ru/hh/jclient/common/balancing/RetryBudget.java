@@ -0,0 +1,123 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket bounding retries of an upstream: every successful request deposits a share of a token,
+ * every retry withdraws a whole one, and tokens are also refilled at a minimal rate, so a few retries are allowed
+ * when there are no successful requests at all. Balance is capped by {@link #CAPACITY_SECONDS} of minimal rate
+ * but not less than {@link #MIN_CAPACITY} tokens, so a quiet period does not accumulate a retry storm.
+ * Disabled budget allows every retry
+ */
+final class RetryBudget {
+  static final int DEFAULT_MIN_RETRIES_PER_SEC = 10;
+  static final int MIN_CAPACITY = 10;
+  static final int CAPACITY_SECONDS = 10;
+  private static final long TOKEN = 1_000;
+
+  private final LongSupplier nanoTime;
+  private final AtomicLong balance = new AtomicLong();
+  private final AtomicLong lastRefillNanos;
+  private volatile Settings settings = Settings.DISABLED;
+
+  RetryBudget(LongSupplier nanoTime) {
+    this.nanoTime = nanoTime;
+    this.lastRefillNanos = new AtomicLong(nanoTime.getAsLong());
+  }
+
+  /**
+   * @param ratio share of successful requests allowed to be retried, 0 disables budget
+   */
+  void configure(double ratio, int minRetriesPerSec) {
+    Settings current = settings;
+    if (current.ratio == ratio && current.minRetriesPerSec == minRetriesPerSec) {
+      return;
+    }
+    Settings newSettings = ratio > 0 ? new Settings(ratio, minRetriesPerSec) : Settings.DISABLED;
+    if (current == Settings.DISABLED) {
+      // start full, so retries are allowed right after start or config update
+      balance.set(newSettings.capacity);
+      lastRefillNanos.set(nanoTime.getAsLong());
+    }
+    settings = newSettings;
+  }
+
+  boolean isEnabled() {
+    return settings != Settings.DISABLED;
+  }
+
+  void deposit() {
+    Settings settings = this.settings;
+    if (settings != Settings.DISABLED) {
+      add(settings.deposit, settings.capacity);
+    }
+  }
+
+  boolean tryWithdraw() {
+    Settings settings = this.settings;
+    if (settings == Settings.DISABLED) {
+      return true;
+    }
+    refill(settings);
+    long prev;
+    do {
+      prev = balance.get();
+      if (prev < TOKEN) {
+        return false;
+      }
+    } while (!balance.compareAndSet(prev, prev - TOKEN));
+    return true;
+  }
+
+  private void refill(Settings settings) {
+    if (settings.minRetriesPerSec <= 0) {
+      return;
+    }
+    long now = nanoTime.getAsLong();
+    long last = lastRefillNanos.get();
+    long elapsedNanos = Math.min(now - last, TimeUnit.SECONDS.toNanos(CAPACITY_SECONDS));
+    long tokens = elapsedNanos * settings.minRetriesPerSec * TOKEN / TimeUnit.SECONDS.toNanos(1);
+    // until a thousandth of token is accumulated the time is not consumed
+    if (tokens > 0 && lastRefillNanos.compareAndSet(last, now)) {
+      add(tokens, settings.capacity);
+    }
+  }
+
+  private void add(long tokens, long capacity) {
+    long prev;
+    do {
+      prev = balance.get();
+      if (prev >= capacity) {
+        return;
+      }
+    } while (!balance.compareAndSet(prev, Math.min(capacity, prev + tokens)));
+  }
+
+  @Override
+  public String toString() {
+    return settings.toString();
+  }
+
+  private static final class Settings {
+    static final Settings DISABLED = new Settings(0, 0);
+
+    final double ratio;
+    final int minRetriesPerSec;
+    final long deposit;
+    final long capacity;
+
+    Settings(double ratio, int minRetriesPerSec) {
+      this.ratio = ratio;
+      this.minRetriesPerSec = minRetriesPerSec;
+      this.deposit = Math.max(1, Math.round(ratio * TOKEN));
+      this.capacity = Math.max(MIN_CAPACITY, (long) minRetriesPerSec * CAPACITY_SECONDS) * TOKEN;
+    }
+
+    @Override
+    public String toString() {
+      return ratio > 0 ? "{ratio=" + ratio + ", min_retries_per_sec=" + minRetriesPerSec + '}' : "disabled";
+    }
+  }
+}
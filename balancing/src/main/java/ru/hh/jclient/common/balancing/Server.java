@@ -7,9 +7,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import static java.util.Objects.requireNonNull;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.StampedLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static ru.hh.jclient.common.balancing.AdaptiveBalancingStrategy.DOWNTIME_DETECTOR_WINDOW;
@@ -19,15 +20,22 @@ import static ru.hh.jclient.common.balancing.AdaptiveBalancingStrategy.RESPONSE_
 public class Server {
   private static final Logger LOGGER = LoggerFactory.getLogger(Server.class);
   private static final String DELIMITER = ":";
+  /**
+   * share of weight a server gets at the beginning of slow start
+   */
+  static final float MIN_SLOW_START_WEIGHT_FACTOR = 0.1f;
 
   private final String address;
   private final String datacenter;
 
-  private final AtomicLong requests;
+  private final StripedRequestCounter requests;
   private final AtomicInteger fails;
 
   private final DowntimeDetector downtimeDetector;
   private final ResponseTimeTracker responseTimeTracker;
+  private final PeakEwmaTracker peakEwmaTracker;
+  private final CircuitBreaker circuitBreaker;
+  private final OutlierStats outlierStats;
 
   private volatile int weight;
   private volatile Map<String, String> meta;
@@ -37,14 +45,21 @@ public class Server {
    * not volatile for optimization. Should protect writes with {@link Server#slowStartEndMillis}
    */
   private boolean slowStartModeEnabled;
+  /**
+   * not volatile for optimization. Should protect writes with {@link Server#slowStartEndMillis}
+   */
+  private long slowStartBeginMillis;
+  /**
+   * not volatile for optimization. Should protect writes with {@link Server#slowStartEndMillis}
+   */
+  private double slowStartAggression = 1;
   private volatile long slowStartEndMillis = 0;
 
   /**
-   * not volatile for optimization. Should protect writes with {@link Server#slowStartEndMillis}
+   * set once by the reader which fills initial stat, so concurrent first readers do not add it twice
    */
-  private boolean statisticsFilledWithInitialValues;
+  private final AtomicBoolean statisticsFilledWithInitialValues = new AtomicBoolean();
 
-  private volatile StampedLock lock;
   private volatile int statLimit;
 
   public Server(String address, int weight, String datacenter) {
@@ -54,8 +69,11 @@ public class Server {
 
     this.downtimeDetector = new DowntimeDetector(DOWNTIME_DETECTOR_WINDOW);
     this.responseTimeTracker = new ResponseTimeTracker(RESPONSE_TIME_TRACKER_WINDOW);
+    this.peakEwmaTracker = new PeakEwmaTracker(PeakEwmaBalancingStrategy.DECAY_NANOS);
+    this.circuitBreaker = new CircuitBreaker();
+    this.outlierStats = new OutlierStats();
 
-    this.requests = new AtomicLong();
+    this.requests = new StripedRequestCounter();
     this.fails = new AtomicInteger();
   }
 
@@ -64,28 +82,66 @@ public class Server {
   }
 
   void acquire() {
-    executeWithLockIfAvailable(()-> requests.addAndGet(packRequests(1, 1)));
+    requests.add(1, 1);
+  }
+
+  /**
+   * on slow start a request counts in stat as 1 / {@link #getSlowStartWeightFactor(Clock)} requests, so the server gets its share of
+   * weight, and its stat is on par with other servers when slow start ends, not below them
+   * @return stat requests added, the same amount is taken back by {@link #release(boolean, boolean, int)} and {@link #cancel(int)}
+   */
+  int acquire(Clock clock) {
+    return acquire(clock, ThreadLocalRandom.current());
+  }
+
+  int acquire(Clock clock, Random random) {
+    float weightFactor = getSlowStartWeightFactor(clock);
+    if (weightFactor >= 1) {
+      acquire();
+      return 1;
+    }
+    float statRequests = 1 / weightFactor;
+    int wholeStatRequests = (int) statRequests;
+    if (random.nextFloat() < statRequests - wholeStatRequests) {
+      wholeStatRequests++;
+    }
+    requests.add(wholeStatRequests, 1);
+    return wholeStatRequests;
   }
 
   void release(boolean isRetry, boolean isError) {
-    executeWithLockIfAvailable(()-> {
-      requests.updateAndGet(i -> {
-        int stat = unpackStatRequests(i);
-        if (isRetry) {
-          stat = stat > 0 ? stat - 1 : 0;
-        }
-        int current = unpackCurrentRequests(i);
-        current = current > 0 ? current - 1 : 0;
-        return packRequests(stat, current);
-      });
-      fails.updateAndGet(i -> {
-        if (isError) {
-          return i < Integer.MAX_VALUE ? i + 1 : Integer.MAX_VALUE;
-        } else {
-          return 0;
-        }
-      });
-    });
+    release(isRetry, isError, 1);
+  }
+
+  /**
+   * @param statRequests stat requests added by the acquisition, see {@link #acquire(Clock, Random)}
+   */
+  void release(boolean isRetry, boolean isError, int statRequests) {
+    // the counter clamps values at zero itself, so a release of an unknown request does not make them negative
+    requests.add(isRetry ? -statRequests : 0, -1);
+
+    if (!isError) {
+      // plain read first: most responses are successful and fails are already zero, no need to write the shared line
+      if (fails.get() != 0) {
+        fails.set(0);
+      }
+      return;
+    }
+    int prevFails;
+    do {
+      prevFails = fails.get();
+    } while (prevFails < Integer.MAX_VALUE && !fails.compareAndSet(prevFails, prevFails + 1));
+  }
+
+  /**
+   * releases request which has no result, its stat request is taken back too
+   */
+  void cancel() {
+    cancel(1);
+  }
+
+  void cancel(int statRequests) {
+    requests.add(-statRequests, -1);
   }
 
   void releaseAdaptive(boolean isError, long responseTimeMicros) {
@@ -98,17 +154,13 @@ public class Server {
   }
 
   /**
-   * protected by {@link Upstream#rescale(java.util.List)}
+   * protected by {@link StatRescaleGroup#rescale(List)}
    */
   void rescaleStatsRequests() {
-    requests.updateAndGet(reqs -> {
-      int statRequests = unpackStatRequests(reqs);
-      if (statRequests < statLimit) {
-        return reqs;
-      }
-      int currentRequests = unpackCurrentRequests(reqs);
-      return packRequests(statRequests >> 1, currentRequests);
-    });
+    int statRequests = getStatsRequests();
+    if (statRequests >= statLimit) {
+      requests.add((statRequests >> 1) - statRequests, 0);
+    }
   }
 
   public String getAddress() {
@@ -135,6 +187,25 @@ public class Server {
     return responseTimeTracker;
   }
 
+  PeakEwmaTracker getPeakEwmaTracker() {
+    return peakEwmaTracker;
+  }
+
+  CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  OutlierStats getOutlierStats() {
+    return outlierStats;
+  }
+
+  /**
+   * @return false if circuit breaker rejects requests or the server is ejected by {@link OutlierDetector}
+   */
+  boolean isAvailable(Clock clock) {
+    return circuitBreaker.isAvailable(clock) && !outlierStats.isEjected(clock);
+  }
+
   public Map<String, String> getMeta() {
     return meta;
   }
@@ -160,39 +231,63 @@ public class Server {
   }
 
   public float getStatLoad(Collection<Server> currentServers, Clock clock) {
+    return getStatLoad(statisticsFilledWithInitialValues.get() ? 0 : calculateMaxRealStatLoad(currentServers), clock);
+  }
+
+  /**
+   * @param maxStatLoad max load of servers of the upstream, used as initial stat of the server on the first call
+   */
+  float getStatLoad(double maxStatLoad, Clock clock) {
+    if (!statisticsFilledWithInitialValues.get() && statisticsFilledWithInitialValues.compareAndSet(false, true)) {
+      if (!isOnSlowStart(clock)) {
+        slowStartEndMillis = -1;
+      }
+      int initialStat = (int) Math.floor(maxStatLoad * weight);
+      LOGGER.trace("Server {} statistics has no init value. Calculated initial statRequests={}", this, initialStat);
+      requests.add(initialStat - getStatsRequests(), 0);
+    }
+    return calculateLoad();
+  }
+
+  /**
+   * @return share of weight the server gets, on slow start it grows from {@link #MIN_SLOW_START_WEIGHT_FACTOR} to 1
+   * as (elapsed / interval) ^ (1 / aggression), so the server warms up under gradually growing traffic
+   */
+  float getSlowStartWeightFactor(Clock clock) {
+    if (!isOnSlowStart(clock)) {
+      return 1;
+    }
+    long beginMillis = slowStartBeginMillis;
+    long endMillis = slowStartEndMillis;
+    double timeFactor = (double) (getCurrentTimeMillis(clock) - beginMillis) / Math.max(1, endMillis - beginMillis);
+    double weightFactor = Math.pow(Math.max(0, Math.min(1, timeFactor)), 1 / slowStartAggression);
+    return (float) Math.max(MIN_SLOW_START_WEIGHT_FACTOR, weightFactor);
+  }
+
+  boolean isOnSlowStart(Clock clock) {
     if (slowStartModeEnabled) {
       long currentTimeMillis = getCurrentTimeMillis(clock);
       if (slowStartEndMillis > 0 && currentTimeMillis <= slowStartEndMillis) {
-        LOGGER.trace(
-          "Server {} is on slowStart, returning infinite load. Current epoch millis: {}, slow start end epoch millis: {}",
-          this, currentTimeMillis, slowStartEndMillis
-        );
-        return Float.POSITIVE_INFINITY;
+        if (LOGGER.isTraceEnabled()) {
+          LOGGER.trace(
+            "Server {} is on slowStart, scaling its weight. Current epoch millis: {}, slow start end epoch millis: {}",
+            this, currentTimeMillis, slowStartEndMillis
+          );
+        }
+        return true;
       }
       LOGGER.trace("Slow start for server {} ended", this);
       slowStartModeEnabled = false;
     }
-    if (!statisticsFilledWithInitialValues) {
-      statisticsFilledWithInitialValues = true;
-      slowStartEndMillis = -1;
-      requests.updateAndGet(value -> {
-        if (!slowStartModeEnabled) {
-          int initialStat = (int) Math.floor(calculateMaxRealStatLoad(currentServers) * weight);
-          LOGGER.trace("Server {} statistics has no init value. Calculated initial statRequests={}", this, initialStat);
-          return packRequests(initialStat, unpackCurrentRequests(value));
-        }
-        return value;
-      });
-    }
-    return calculateLoad();
+    return false;
   }
 
   public int getRequests() {
-    return unpackCurrentRequests(requests.get());
+    return StripedRequestCounter.currentRequests(requests.get());
   }
 
   public int getStatsRequests() {
-    return unpackStatRequests(requests.get());
+    return StripedRequestCounter.statRequests(requests.get());
   }
 
   boolean needToRescale() {
@@ -203,71 +298,40 @@ public class Server {
     return servers.stream().mapToDouble(Server::calculateLoad).max().orElse(0d);
   }
 
-  private float calculateLoad() {
+  float calculateLoad() {
     long requests = this.requests.get();
-    return (float) (unpackStatRequests(requests) + unpackCurrentRequests(requests)) / this.weight;
+    return (float) ((long) StripedRequestCounter.statRequests(requests) + StripedRequestCounter.currentRequests(requests)) / this.weight;
   }
 
   protected long getCurrentTimeMillis(Clock clock) {
     return clock.millis();
   }
 
-  public void setSharedLock(StampedLock lock) {
-    this.lock = lock;
-  }
-
   public void setStatLimit(int statLimit) {
     this.statLimit = statLimit;
   }
 
   public void setSlowStartEndTimeIfNeeded(int slowStartSeconds, Clock clock) {
+    setSlowStartEndTimeIfNeeded(slowStartSeconds, 1, clock);
+  }
+
+  /**
+   * slow start ends at the same time in every client: unlike the former step from zero to full weight, the ramp has no moment
+   * when all clients switch the server to full traffic at once, so the end is not randomly staggered
+   * @param aggression exponent of weight ramp, see {@link #getSlowStartWeightFactor(Clock)}
+   */
+  public void setSlowStartEndTimeIfNeeded(int slowStartSeconds, double aggression, Clock clock) {
     if (slowStartSeconds > 0) {
       if (slowStartEndMillis == 0) {
         slowStartModeEnabled = true;
-        this.slowStartEndMillis = (long) (getCurrentTimeMillis(clock) + (Math.random() * Duration.ofSeconds(slowStartSeconds).toMillis()));
+        slowStartAggression = aggression > 0 ? aggression : 1;
+        slowStartBeginMillis = getCurrentTimeMillis(clock);
+        this.slowStartEndMillis = slowStartBeginMillis + Duration.ofSeconds(slowStartSeconds).toMillis();
         LOGGER.trace("Set slow start for server {}. Slow start is going to end at {} epoch millis", this, slowStartEndMillis);
       }
     }
   }
 
-  /**
-   * pack two metrics in one int to be consistent on read
-   * Attention: each value is effectively constraint by {@link java.lang.Short} with max value ~32k
-   * so be careful with rescaling
-   * @param statRequests stat requests
-   * @param currentRequests current requests
-   * @return int value containing two metrics
-   */
-  private static long packRequests(int statRequests, int currentRequests) {
-    long packedValue = (((long) statRequests) << 32) + currentRequests;
-    if (packedValue < 0) {
-      LOGGER.warn("Packed stats value overflow: stat={}, current={}. Setting MAX value", statRequests, currentRequests);
-      packedValue = Long.MAX_VALUE;
-    }
-    return packedValue;
-  }
-
-  private static int unpackStatRequests(long requestsValue) {
-    return (int) (requestsValue >> 32);
-  }
-
-  private static int unpackCurrentRequests(long requestsValue) {
-    return (int) requestsValue;
-  }
-
-  private void executeWithLockIfAvailable(Runnable action) {
-    if (lock == null) {
-      action.run();
-      return;
-    }
-
-    long stamp = lock.writeLock();
-    try {
-      action.run();
-    } finally {
-      lock.unlockWrite(stamp);
-    }
-  }
 
   @Override
   public String toString() {
@@ -278,9 +342,11 @@ public class Server {
        ", datacenter='" + datacenter + '\'' +
        ", meta=" + meta +
        ", tags=" + tags +
-       ", requests=" + unpackCurrentRequests(requestsValue) +
+       ", requests=" + StripedRequestCounter.currentRequests(requestsValue) +
        ", fails=" + fails +
-       ", statsRequests=" + unpackStatRequests(requestsValue) +
+       ", statsRequests=" + StripedRequestCounter.statRequests(requestsValue) +
+       ", circuitBreaker=" + circuitBreaker +
+       ", outlierStats=" + outlierStats +
        '}';
   }
 
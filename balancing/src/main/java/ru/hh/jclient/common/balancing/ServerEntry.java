@@ -4,11 +4,29 @@ final class ServerEntry {
   private final int index;
   private final String address;
   private final String datacenter;
+  private final Server server;
+  private final long probe;
+  private final int statRequests;
 
-  ServerEntry(int index, String address, String datacenter) {
+  ServerEntry(int index, Server server) {
+    this(index, server, CircuitBreaker.NOT_PROBE, 1);
+  }
+
+  private ServerEntry(int index, Server server, long probe, int statRequests) {
     this.index = index;
-    this.address = address;
-    this.datacenter = datacenter;
+    this.address = server.getAddress();
+    this.datacenter = server.getDatacenter();
+    this.server = server;
+    this.probe = probe;
+    this.statRequests = statRequests;
+  }
+
+  /**
+   * @param probe token of circuit breaker probe the server was acquired with, see {@link CircuitBreaker#acquire}
+   * @param statRequests stat requests added by the acquisition, see {@link Server#acquire(java.time.Clock, java.util.Random)}
+   */
+  ServerEntry acquired(long probe, int statRequests) {
+    return probe == this.probe && statRequests == this.statRequests ? this : new ServerEntry(index, server, probe, statRequests);
   }
 
   public int getIndex() {
@@ -22,4 +40,19 @@ final class ServerEntry {
   public String getDatacenter() {
     return datacenter;
   }
+
+  /**
+   * @return server the entry was acquired for, it stays the same even if the server is removed from upstream
+   */
+  Server getServer() {
+    return server;
+  }
+
+  long getProbe() {
+    return probe;
+  }
+
+  int getStatRequests() {
+    return statRequests;
+  }
 }
@@ -0,0 +1,108 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Servers of a service at stable indexes. A server keeps its index and its {@link Server} object with stats while it is alive.
+ * Removed server leaves a tombstone (null) at its index, so the index is not given to another server while requests to the removed one
+ * are in flight. A tombstone is compacted once the removed server has no requests in flight: its index is reused by a new server
+ * or trimmed, if it is at the tail.
+ * Servers list is published as an immutable view, so readers get it without copying. It is replaced only when a slot changes:
+ * an update which only refreshes weight, meta or tags of known servers publishes nothing
+ */
+final class ServerSlots {
+  private final List<Server> slots = new ArrayList<>();
+  private final Map<Server, Integer> indexByServer = new HashMap<>();
+  /**
+   * removed servers which may still have requests in flight, by server
+   */
+  private final Map<Server, Integer> tombstones = new HashMap<>();
+  /**
+   * indexes of tombstones which can be reused
+   */
+  private final TreeSet<Integer> freeIndexes = new TreeSet<>();
+  private volatile List<Server> servers = List.of();
+
+  /**
+   * @return servers at their indexes, with null in place of removed servers
+   */
+  List<Server> getServers() {
+    return servers;
+  }
+
+  /**
+   * should not be called concurrently
+   */
+  void update(Collection<Server> aliveServers, Collection<Server> deadServers) {
+    boolean slotsChanged = false;
+    for (Server server : deadServers) {
+      Integer index = indexByServer.remove(server);
+      if (index != null) {
+        tombstones.put(slots.get(index), index);
+        slots.set(index, null);
+        slotsChanged = true;
+      }
+    }
+
+    List<Server> addedServers = new ArrayList<>();
+    for (Server server : aliveServers) {
+      Integer index = indexByServer.get(server);
+      if (index != null) {
+        Server current = slots.get(index);
+        if (current != server) {
+          current.setWeight(server.getWeight());
+          current.setMeta(server.getMeta());
+          current.setTags(server.getTags());
+        }
+        continue;
+      }
+      index = tombstones.remove(server);
+      if (index != null) {
+        putServer(index, server);
+        slotsChanged = true;
+      } else {
+        addedServers.add(server);
+      }
+    }
+
+    Iterator<Map.Entry<Server, Integer>> iterator = tombstones.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Server, Integer> tombstone = iterator.next();
+      if (tombstone.getKey().getRequests() == 0) {
+        freeIndexes.add(tombstone.getValue());
+        iterator.remove();
+      }
+    }
+
+    for (Server server : addedServers) {
+      Integer index = freeIndexes.pollFirst();
+      if (index == null) {
+        index = slots.size();
+        slots.add(null);
+      }
+      putServer(index, server);
+      slotsChanged = true;
+    }
+
+    while (!freeIndexes.isEmpty() && freeIndexes.last() == slots.size() - 1) {
+      slots.remove((int) freeIndexes.pollLast());
+      slotsChanged = true;
+    }
+    if (slotsChanged) {
+      // published list is held by upstream snapshots, so it is copied instead of being changed in place
+      servers = Collections.unmodifiableList(new ArrayList<>(slots));
+    }
+  }
+
+  private void putServer(int index, Server server) {
+    slots.set(index, server);
+    indexByServer.put(server, index);
+  }
+}
@@ -5,6 +5,9 @@ import java.util.List;
 import java.util.Optional;
 
 public interface ServerStore {
+    /**
+     * @return servers at their indexes, may contain null in place of a removed server, so indexes of other servers are not shifted
+     */
     List<Server> getServers(String serviceName);
     Optional<Integer> getInitialSize(String serviceName);
     void updateServers(String serviceName, Collection<Server> aliveServers, Collection<Server> deadServers);
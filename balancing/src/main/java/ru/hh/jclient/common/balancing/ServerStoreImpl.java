@@ -5,21 +5,23 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Keeps servers of a service at stable indexes, see {@link ServerSlots}
+ */
 public class ServerStoreImpl implements ServerStore {
-  private final ConcurrentMap<String, Set<Server>> serverList = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, ServerSlots> serverList = new ConcurrentHashMap<>();
   private final Map<String, Integer> initialCapacities = new HashMap<>();
 
   @Override
   public List<Server> getServers(String serviceName) {
-    Set<Server> servers = serverList.get(serviceName);
+    ServerSlots servers = serverList.get(serviceName);
     if (servers == null) {
       return List.of();
     }
-    return List.copyOf(servers);
+    return servers.getServers();
   }
 
   @Override
@@ -29,17 +31,13 @@ public class ServerStoreImpl implements ServerStore {
 
   @Override
   public void updateServers(String serviceName, Collection<Server> aliveServers, Collection<Server> deadServers) {
-    serverList.compute(serviceName, (upstream, serverSet) -> {
-      if (serverSet != null) {
-        serverSet.addAll(aliveServers);
-        serverSet.removeAll(deadServers);
-        return serverSet;
+    serverList.compute(serviceName, (upstream, servers) -> {
+      if (servers == null) {
+        servers = new ServerSlots();
+        initialCapacities.put(serviceName, aliveServers.size());
       }
-      serverSet = ConcurrentHashMap.newKeySet();
-
-      serverSet.addAll(aliveServers);
-      initialCapacities.put(serviceName, aliveServers.size());
-      return serverSet;
+      servers.update(aliveServers, deadServers);
+      return servers;
     });
   }
 }
@@ -0,0 +1,44 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.List;
+
+/**
+ * Servers whose stat requests are rescaled together, once all of them reach stat limit.
+ * Remembers position of the last server seen below the limit: it usually stays there until the next rescale,
+ * so the check on every release reads one server, and all servers are scanned at most about once per rescale
+ */
+final class StatRescaleGroup {
+  private final int[] indexes;
+  /**
+   * racy on purpose: a stale position only makes the next check start scanning from another server
+   */
+  private int belowLimitPosition;
+
+  StatRescaleGroup(int[] indexes) {
+    this.indexes = indexes;
+  }
+
+  boolean needToRescale(List<Server> servers) {
+    int length = indexes.length;
+    int start = belowLimitPosition;
+    for (int i = 0; i < length; i++) {
+      int position = start + i < length ? start + i : start + i - length;
+      if (!servers.get(indexes[position]).needToRescale()) {
+        if (position != start) {
+          belowLimitPosition = position;
+        }
+        return false;
+      }
+    }
+    return length > 0;
+  }
+
+  /**
+   * should be called under {@link Upstream} write lock, so selection does not mix loads from before and after rescale
+   */
+  void rescale(List<Server> servers) {
+    for (int index : indexes) {
+      servers.get(index).rescaleStatsRequests();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Contention-free counter of stat and current requests of a {@link Server}.
+ * Both values are packed into one long, so every cell holds a consistent pair of deltas updated by a single atomic add.
+ * Updates go to the base cell until it gets contended, then each thread adds to its own padded cell,
+ * so concurrent acquire/release of a hot server do not retry on one atomic.
+ * While there are no cells, values are clamped at zero by the same atomic update, so a decrement without matching increment is lost.
+ * Cells hold signed deltas which can not be clamped on their own: a decrement which leaves the sum of all cells negative
+ * folds all cells into base and clamps it there, so the decrement is lost the same way and later increments are not absorbed by debt.
+ * {@link #get()} clamps both values to [0, {@link Integer#MAX_VALUE}] too, as it may see cells in the middle of such fold
+ */
+final class StripedRequestCounter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StripedRequestCounter.class);
+  private static final AtomicReferenceFieldUpdater<StripedRequestCounter, AtomicLongArray> CELLS_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(StripedRequestCounter.class, AtomicLongArray.class, "cells");
+
+  /**
+   * selection reads counters of all servers on every pick and sums all cells of each one,
+   * so cells are bounded by a few cache lines: enough to take contention off one atomic, cheap to sum
+   */
+  private static final int MAX_CELLS = 8;
+  /**
+   * cells are spread over the array, so each one takes a separate cache line
+   */
+  private static final int CELL_STRIDE = 8;
+  /**
+   * cell is folded into base long before any of its halves can overflow int
+   */
+  private static final int FOLD_THRESHOLD = 1 << 30;
+
+  private final AtomicLong base = new AtomicLong();
+  private volatile AtomicLongArray cells;
+
+  void add(int statDelta, int currentDelta) {
+    AtomicLongArray cells = this.cells;
+    if (cells == null) {
+      long prev = base.get();
+      if (base.compareAndSet(prev, addClamped(prev, statDelta, currentDelta))) {
+        return;
+      }
+      cells = inflate();
+    }
+    int cellIndex = cellIndex(cells);
+    long value = cells.addAndGet(cellIndex, pack(statDelta, currentDelta));
+    if (needsFold(value)) {
+      // readers may see the cell missing until it gets to base, that's acceptable for such a rare event
+      value = cells.getAndSet(cellIndex, 0);
+      addToBase(unpackStat(value), unpackCurrent(value));
+    } else if ((statDelta < 0 || currentDelta < 0) && hasDebt(cells)) {
+      foldClamped(cells);
+    }
+  }
+
+  /**
+   * @return stat and current requests packed into one non-negative long,
+   * use {@link #statRequests(long)} and {@link #currentRequests(long)} to read them
+   */
+  long get() {
+    long value = base.get();
+    long stat = unpackStat(value);
+    long current = unpackCurrent(value);
+    AtomicLongArray cells = this.cells;
+    if (cells != null) {
+      for (int i = 0; i < cells.length(); i += CELL_STRIDE) {
+        value = cells.get(i);
+        stat += unpackStat(value);
+        current += unpackCurrent(value);
+      }
+    }
+    return pack(clamp(stat), clamp(current));
+  }
+
+  static int statRequests(long value) {
+    return unpackStat(value);
+  }
+
+  static int currentRequests(long value) {
+    return unpackCurrent(value);
+  }
+
+  private boolean hasDebt(AtomicLongArray cells) {
+    long value = base.get();
+    long stat = unpackStat(value);
+    long current = unpackCurrent(value);
+    for (int i = 0; i < cells.length(); i += CELL_STRIDE) {
+      value = cells.get(i);
+      stat += unpackStat(value);
+      current += unpackCurrent(value);
+    }
+    return stat < 0 || current < 0;
+  }
+
+  /**
+   * moves every cell to base atomically, so no concurrent update is lost or counted twice, and clamps the sum at zero
+   */
+  private synchronized void foldClamped(AtomicLongArray cells) {
+    long stat = 0;
+    long current = 0;
+    for (int i = 0; i < cells.length(); i += CELL_STRIDE) {
+      long value = cells.getAndSet(i, 0);
+      stat += unpackStat(value);
+      current += unpackCurrent(value);
+    }
+    long prev;
+    do {
+      prev = base.get();
+    } while (!base.compareAndSet(prev, addClamped(prev, stat, current)));
+  }
+
+  /**
+   * called on contention of base, or by tests to check striped mode
+   */
+  AtomicLongArray inflate() {
+    int cellsCount = Math.min(MAX_CELLS, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+    CELLS_UPDATER.compareAndSet(this, null, new AtomicLongArray(cellsCount * CELL_STRIDE));
+    return cells;
+  }
+
+  private static int cellIndex(AtomicLongArray cells) {
+    long threadId = Thread.currentThread().getId();
+    int hash = (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32);
+    return (hash & (cells.length() / CELL_STRIDE - 1)) * CELL_STRIDE;
+  }
+
+  private void addToBase(int statDelta, int currentDelta) {
+    long prev;
+    do {
+      prev = base.get();
+    } while (!base.compareAndSet(prev, addSaturated(prev, statDelta, currentDelta)));
+  }
+
+  private static long addSaturated(long value, long statDelta, long currentDelta) {
+    long stat = (long) unpackStat(value) + statDelta;
+    long current = (long) unpackCurrent(value) + currentDelta;
+    if (stat != (int) stat || current != (int) current) {
+      LOGGER.warn("Requests counter overflow: stat={}, current={}. Setting MAX value", stat, current);
+      stat = saturate(stat);
+      current = saturate(current);
+    }
+    return pack((int) stat, (int) current);
+  }
+
+  private static long addClamped(long value, long statDelta, long currentDelta) {
+    long sum = addSaturated(value, statDelta, currentDelta);
+    return pack(Math.max(0, unpackStat(sum)), Math.max(0, unpackCurrent(sum)));
+  }
+
+  private static boolean needsFold(long value) {
+    int stat = unpackStat(value);
+    int current = unpackCurrent(value);
+    return stat >= FOLD_THRESHOLD || stat <= -FOLD_THRESHOLD || current >= FOLD_THRESHOLD || current <= -FOLD_THRESHOLD;
+  }
+
+  private static long saturate(long value) {
+    return Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+  }
+
+  private static int clamp(long value) {
+    return (int) Math.max(0, Math.min(Integer.MAX_VALUE, value));
+  }
+
+  /**
+   * halves are signed, packed value is their exact sum stat * 2^32 + current, so packed values can be added directly
+   */
+  private static long pack(int stat, int current) {
+    return ((long) stat << 32) + current;
+  }
+
+  private static int unpackCurrent(long value) {
+    return (int) value;
+  }
+
+  private static int unpackStat(long value) {
+    return (int) ((value - unpackCurrent(value)) >> 32);
+  }
+}
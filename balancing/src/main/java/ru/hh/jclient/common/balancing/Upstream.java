@@ -1,16 +1,16 @@
 package ru.hh.jclient.common.balancing;
 
 import java.time.Clock;
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.StampedLock;
-import java.util.function.Consumer;
-import static java.util.stream.Collectors.toList;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static ru.hh.jclient.common.balancing.BalancingStrategy.getLeastLoadedServer;
@@ -19,22 +19,43 @@ public class Upstream {
   private static final Logger LOGGER = LoggerFactory.getLogger(Upstream.class);
   static final String DEFAULT_PROFILE = "default";
   static final int DEFAULT_STAT_LIMIT = 10_000_000;
+  private static final BitSet NO_EXCLUDED_SERVERS = new BitSet(0);
+  static final long ADAPTIVE_SAMPLING_TABLE_REFRESH_INTERVAL_MILLIS = 100;
+  /**
+   * selections retried when picked half-open server has no probe slots left
+   */
+  private static final int MAX_CIRCUIT_BREAKER_RESELECTIONS = 3;
 
   private final String upstreamName;
   private final String datacenter;
   private int statLimit = DEFAULT_STAT_LIMIT;
   private final boolean allowCrossDCRequests;
   private final boolean enabled;
+  private final Clock clock;
+  /**
+   * time source for decaying estimates, follows clock if it is set explicitly
+   */
+  private final LongSupplier nanoTime;
+  /**
+   * source of random picks of strategies, seeded one makes selection reproducible
+   */
+  private final Supplier<Random> random;
 
-  private volatile List<Server> servers;
-  private volatile UpstreamConfigs upstreamConfigs;
+  private volatile UpstreamSnapshot snapshot;
   private boolean failedSelection = false;
+  private boolean ignoringCircuitBreakers = false;
 
-  private final ReadWriteLock configReadWriteLock = new ReentrantReadWriteLock();
-  private final Lock configWriteLock = configReadWriteLock.writeLock();
-  private final Lock configReadLock = configReadWriteLock.readLock();
-
+  /**
+   * guards rescaling only: acquire and release update server counters without locking,
+   * selection validates its optimistic read so it does not mix loads from before and after rescale
+   */
   private final StampedLock lock = new StampedLock();
+  private final HedgeBudget hedgeBudget = new HedgeBudget(HedgeBudget.DEFAULT_RATIO);
+  private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+  private final RetryBudget retryBudget;
+  private final ConcurrencyLimiter concurrencyLimiter;
+  private final CrossDcSpillover crossDcSpillover = new CrossDcSpillover();
+  private final OutlierDetector outlierDetector = new OutlierDetector();
 
   Upstream(String upstreamName,
            UpstreamConfigs upstreamConfigs,
@@ -42,78 +63,194 @@ public class Upstream {
            String datacenter,
            boolean allowCrossDCRequests,
            boolean enabled) {
+    this(upstreamName, upstreamConfigs, servers, datacenter, allowCrossDCRequests, enabled, Clock.systemUTC(), System::nanoTime);
+  }
+
+  Upstream(String upstreamName,
+           UpstreamConfigs upstreamConfigs,
+           List<Server> servers,
+           String datacenter,
+           boolean allowCrossDCRequests,
+           boolean enabled,
+           Clock clock) {
+    this(upstreamName, upstreamConfigs, servers, datacenter, allowCrossDCRequests, enabled, clock,
+        () -> TimeUnit.MILLISECONDS.toNanos(clock.millis()));
+  }
+
+  Upstream(String upstreamName,
+           UpstreamConfigs upstreamConfigs,
+           List<Server> servers,
+           String datacenter,
+           boolean allowCrossDCRequests,
+           boolean enabled,
+           Clock clock,
+           LongSupplier nanoTime) {
+    this(upstreamName, upstreamConfigs, servers, datacenter, allowCrossDCRequests, enabled, clock, nanoTime, ThreadLocalRandom::current);
+  }
+
+  Upstream(String upstreamName,
+           UpstreamConfigs upstreamConfigs,
+           List<Server> servers,
+           String datacenter,
+           boolean allowCrossDCRequests,
+           boolean enabled,
+           Clock clock,
+           LongSupplier nanoTime,
+           Supplier<Random> random) {
     this.upstreamName = upstreamName;
     this.datacenter = datacenter;
     this.allowCrossDCRequests = allowCrossDCRequests;
     this.enabled = enabled;
+    this.clock = clock;
+    this.nanoTime = nanoTime;
+    this.random = random;
+    this.retryBudget = new RetryBudget(nanoTime);
+    this.concurrencyLimiter = new ConcurrencyLimiter(nanoTime);
     this.updateConfig(upstreamConfigs, servers);
   }
 
   List<Server> getServers() {
-    return servers;
-  }
-
-  ServerEntry acquireServer(Set<Integer> excludedServers) {
-    configReadLock.lock();
-    try {
-      int index;
-      List<Server> servers = this.servers;
-      long readStamp = lock.tryOptimisticRead();
-      index = getLeastLoadedServer(servers, excludedServers, datacenter, allowCrossDCRequests, Clock.systemDefaultZone());
-      if (!lock.validate(readStamp)) {
-        //fallback to lock
-        readStamp = lock.readLock();
-        try {
-          index = getLeastLoadedServer(servers, excludedServers, datacenter, allowCrossDCRequests, Clock.systemDefaultZone());
-        } finally {
-          lock.unlockRead(readStamp);
-        }
+    return snapshot.getServers();
+  }
+
+  ServerEntry acquireServer(BitSet excludedServers) {
+    return acquireServer(DEFAULT_PROFILE, excludedServers);
+  }
+
+  ServerEntry acquireServer(String profile, BitSet excludedServers) {
+    return acquireServer(profile, null, excludedServers);
+  }
+
+  ServerEntry acquireServer(String profile, @Nullable BalancingStrategyType strategyType, BitSet excludedServers) {
+    return acquireServer(profile, strategyType, excludedServers, null);
+  }
+
+  /**
+   * @param strategyType overrides strategy set in profile config if not null
+   * @param routingKey if not null, server is selected by {@link ConsistentHashBalancingStrategy} regardless of strategy
+   */
+  ServerEntry acquireServer(String profile, @Nullable BalancingStrategyType strategyType, BitSet excludedServers,
+                            @Nullable String routingKey) {
+    int index;
+    UpstreamSnapshot snapshot = this.snapshot;
+    List<Server> servers = snapshot.getServers();
+    if (strategyType == null) {
+      strategyType = getConfig(snapshot, profile).getBalancingStrategyType();
+    }
+    if (allowCrossDCRequests && crossDcSpillover.shouldSpill(snapshot, clock, random.get())) {
+      // local servers stay as a fallback if no remote server is available
+      excludedServers = excludeServers(excludedServers, snapshot.getLocalServerIndexes());
+    }
+    index = selectServerValidated(snapshot, strategyType, routingKey, excludedServers);
+    long probe = CircuitBreaker.NOT_PROBE;
+    for (int attempt = 0; index >= 0; attempt++) {
+      probe = servers.get(index).getCircuitBreaker().acquire(clock);
+      if (probe != CircuitBreaker.REJECTED) {
+        break;
+      }
+      if (attempt == MAX_CIRCUIT_BREAKER_RESELECTIONS) {
+        index = -1;
+        break;
       }
+      LOGGER.debug("Circuit breaker of server {} rejected request, selecting another one", servers.get(index));
+      excludedServers = (BitSet) excludedServers.clone();
+      excludedServers.set(index);
+      index = selectServerValidated(snapshot, strategyType, routingKey, excludedServers);
+    }
+    if (index < 0) {
+      index = selectIgnoringCircuitBreakers(snapshot, excludedServers);
+      probe = CircuitBreaker.NOT_PROBE;
+    } else if (ignoringCircuitBreakers) {
+      ignoringCircuitBreakers = false;
+    }
 
-      if (index >= 0) {
-        Server server = servers.get(index);
-        server.acquire();
+    if (index >= 0) {
+      Server server = servers.get(index);
+      int statRequests = server.acquire(clock, random.get());
+      snapshot.updateMaxStatLoad(server.calculateLoad());
+      if (failedSelection) {
         failedSelection = false;
-        return new ServerEntry(index, server.getAddress(), server.getDatacenter());
       }
-      if (!failedSelection) {
-        failedSelection = true;
-        LOGGER.warn("Next server for upstream {} with excluded server indexes {} not found. Returning null", this, excludedServers);
+      return snapshot.getServerEntry(index).acquired(probe, statRequests);
+    }
+    if (!failedSelection) {
+      failedSelection = true;
+      LOGGER.warn("Next server for upstream {} with excluded server indexes {} not found. Returning null", this, excludedServers);
+    }
+    return null;
+  }
+
+  /**
+   * panic mode: if circuit breakers reject all servers, e.g. after a short network blip, they are ignored,
+   * so the upstream degrades to its servers' actual errors instead of rejecting every request for the whole open interval.
+   * Outlier ejection needs no such fallback, it caps share of ejected servers itself
+   */
+  private int selectIgnoringCircuitBreakers(UpstreamSnapshot snapshot, BitSet excludedServers) {
+    long readStamp = lock.tryOptimisticRead();
+    int index = getLeastLoadedServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock, true);
+    if (!lock.validate(readStamp)) {
+      readStamp = lock.readLock();
+      try {
+        index = getLeastLoadedServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock, true);
+      } finally {
+        lock.unlockRead(readStamp);
       }
-      return null;
-    } finally {
-      configReadLock.unlock();
     }
+    if (index >= 0 && !ignoringCircuitBreakers) {
+      ignoringCircuitBreakers = true;
+      LOGGER.warn("Circuit breakers of all servers of upstream {} reject requests, ignoring them", this);
+    }
+    return index;
   }
 
-  List<ServerEntry> acquireAdaptiveServers(String profile) {
-    configReadLock.lock();
-    try {
-      List<Server> allowedServers = new ArrayList<>();
-      List<Integer> allowedIds = new ArrayList<>();
-      for (int i = 0; i < servers.size(); i++) {
-        Server server = servers.get(i);
-        if (server != null && (allowCrossDCRequests || Objects.equals(datacenter, server.getDatacenter()))) {
-          allowedIds.add(i);
-          allowedServers.add(server);
-        }
+  private static BitSet excludeServers(BitSet excludedServers, int[] indexes) {
+    BitSet result = (BitSet) excludedServers.clone();
+    for (int index : indexes) {
+      result.set(index);
+    }
+    return result;
+  }
+
+  private int selectServerValidated(UpstreamSnapshot snapshot, BalancingStrategyType strategyType, @Nullable String routingKey,
+                                    BitSet excludedServers) {
+    long readStamp = lock.tryOptimisticRead();
+    int index = selectServer(snapshot, strategyType, routingKey, excludedServers);
+    if (!lock.validate(readStamp)) {
+      //fallback to lock
+      readStamp = lock.readLock();
+      try {
+        index = selectServer(snapshot, strategyType, routingKey, excludedServers);
+      } finally {
+        lock.unlockRead(readStamp);
       }
+    }
+    return index;
+  }
 
-      return AdaptiveBalancingStrategy
-          .getServers(allowedServers, getConfig(profile).getMaxTries())
-          .stream()
-          .map(id -> {
-            Server server = allowedServers.get(id);
-            return new ServerEntry(allowedIds.get(id), server.getAddress(), server.getDatacenter());
-          })
-          .collect(toList());
-    } finally {
-      configReadLock.unlock();
+  private int selectServer(UpstreamSnapshot snapshot, BalancingStrategyType strategyType, @Nullable String routingKey,
+                           BitSet excludedServers) {
+    if (routingKey != null) {
+      return ConsistentHashBalancingStrategy.getServer(snapshot, routingKey, excludedServers, datacenter, allowCrossDCRequests, clock);
     }
+    if (strategyType == BalancingStrategyType.POWER_OF_TWO_CHOICES) {
+      return PowerOfTwoChoicesBalancingStrategy.getServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock, random.get());
+    }
+    if (strategyType == BalancingStrategyType.PEAK_EWMA) {
+      return PeakEwmaBalancingStrategy.getServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock, nanoTime.getAsLong(),
+          random.get());
+    }
+    return getLeastLoadedServer(snapshot, excludedServers, datacenter, allowCrossDCRequests, clock);
+  }
+
+  List<ServerEntry> acquireAdaptiveServers(String profile) {
+    UpstreamSnapshot snapshot = this.snapshot;
+    return snapshot
+        .getAdaptiveSamplingTable(clock, ADAPTIVE_SAMPLING_TABLE_REFRESH_INTERVAL_MILLIS)
+        .sample(getConfig(snapshot, profile).getMaxTries(), random.get());
   }
 
   ServerEntry acquireServer() {
-    return acquireServer(Set.of());
+    return acquireServer(NO_EXCLUDED_SERVERS);
   }
 
   void releaseServer(int serverIndex, boolean isRetry, boolean isError, long responseTimeMicros) {
@@ -121,51 +258,91 @@ public class Upstream {
   }
 
   void releaseServer(int serverIndex, boolean isRetry, boolean isError, long responseTimeMicros, boolean adaptive) {
-    configReadLock.lock();
-    try {
-      if (serverIndex < 0 || serverIndex >= servers.size()) {
-        return;
-      }
-      Server server = servers.get(serverIndex);
-      if (server != null) {
-        if (adaptive) {
-          server.releaseAdaptive(isError, responseTimeMicros);
-        } else {
-          server.release(isRetry, isError);
+    List<Server> servers = snapshot.getServers();
+    if (serverIndex < 0 || serverIndex >= servers.size()) {
+      return;
+    }
+    releaseServer(servers.get(serverIndex), CircuitBreaker.NOT_PROBE, 1, isRetry, isError, responseTimeMicros, adaptive);
+  }
+
+  /**
+   * releases the server the entry was acquired for, even if it was removed or its index was reused since then
+   */
+  void releaseServer(ServerEntry serverEntry, boolean isRetry, boolean isError, long responseTimeMicros, boolean adaptive) {
+    releaseServer(serverEntry.getServer(), serverEntry.getProbe(), serverEntry.getStatRequests(), isRetry, isError, responseTimeMicros,
+        adaptive);
+  }
+
+  private void releaseServer(@Nullable Server server, long probe, int statRequests, boolean isRetry, boolean isError,
+                             long responseTimeMicros, boolean adaptive) {
+    UpstreamSnapshot snapshot = this.snapshot;
+    if (server != null) {
+      if (adaptive) {
+        server.releaseAdaptive(isError, responseTimeMicros);
+      } else {
+        server.release(isRetry, isError, statRequests);
+        if (outlierDetector.isEnabled()) {
+          // evaluated before the result is recorded, so the first call does not drop it as a stale one
+          outlierDetector.evaluateIfNeeded(snapshot.getServers(), clock);
+          server.getOutlierStats().record(isError, responseTimeMicros);
         }
+        server.getCircuitBreaker().onResult(isError, probe, server.getFails(), snapshot.getCircuitBreakerSettings(), clock);
       }
+    }
 
-      if (!adaptive) {
-        rescale(servers);
-      }
-    } finally {
-      configReadLock.unlock();
+    if (!adaptive) {
+      rescale(snapshot);
+    }
+  }
+
+  /**
+   * releases server of a request which has no result: fails, circuit breaker, outlier and response time stats are not changed
+   */
+  void cancelServer(ServerEntry serverEntry) {
+    Server server = serverEntry.getServer();
+    if (server != null) {
+      server.cancel(serverEntry.getStatRequests());
+      server.getCircuitBreaker().onCancel(serverEntry.getProbe());
+    }
+  }
+
+  void observeResponseTime(int serverIndex, long responseTimeMicros, boolean isError) {
+    List<Server> servers = snapshot.getServers();
+    if (serverIndex < 0 || serverIndex >= servers.size()) {
+      return;
+    }
+    Server server = servers.get(serverIndex);
+    if (server != null) {
+      PeakEwmaBalancingStrategy.observe(server, responseTimeMicros, isError, nanoTime.getAsLong());
     }
   }
 
-  private void rescale(List<Server> servers) {
-    boolean[] rescale = {true, allowCrossDCRequests};
-    iterateServers(servers, server -> {
-      int localOrRemote = Objects.equals(server.getDatacenter(), datacenter) ? 0 : 1;
-      rescale[localOrRemote] &= server.needToRescale();
-    });
+  void observeResponseTime(ServerEntry serverEntry, long responseTimeMicros, boolean isError) {
+    PeakEwmaBalancingStrategy.observe(serverEntry.getServer(), responseTimeMicros, isError, nanoTime.getAsLong());
+  }
+
+  private void rescale(UpstreamSnapshot snapshot) {
+    List<Server> servers = snapshot.getServers();
+    StatRescaleGroup localGroup = snapshot.getLocalRescaleGroup();
+    StatRescaleGroup remoteGroup = snapshot.getRemoteRescaleGroup();
+    boolean rescaleLocal = localGroup.needToRescale(servers);
+    boolean rescaleRemote = allowCrossDCRequests && remoteGroup.needToRescale(servers);
 
-    if (rescale[0] || rescale[1]) {
+    if (rescaleLocal || rescaleRemote) {
       LOGGER.trace("Need to rescale servers. Double checking with lock");
       long writeStamp = lock.writeLock();
       try {
-        iterateServers(servers, server -> {
-          int localOrRemote = Objects.equals(server.getDatacenter(), datacenter) ? 0 : 1;
-          rescale[localOrRemote] &= server.needToRescale();
-        });
-        if (rescale[0] || rescale[1]) {
+        rescaleLocal = rescaleLocal && localGroup.needToRescale(servers);
+        rescaleRemote = rescaleRemote && remoteGroup.needToRescale(servers);
+        if (rescaleLocal || rescaleRemote) {
           LOGGER.debug("Rescaling servers {}", servers);
-          iterateServers(servers, server -> {
-            int localOrRemote = Objects.equals(server.getDatacenter(), datacenter) ? 0 : 1;
-            if (rescale[localOrRemote]) {
-              server.rescaleStatsRequests();
-            }
-          });
+          if (rescaleLocal) {
+            localGroup.rescale(servers);
+          }
+          if (rescaleRemote) {
+            remoteGroup.rescale(servers);
+          }
+          snapshot.resetMaxStatLoad();
         }
       } finally {
         lock.unlockWrite(writeStamp);
@@ -174,28 +351,60 @@ public class Upstream {
   }
 
   void updateConfig(UpstreamConfigs newConfigs, List<Server> servers) {
-    configWriteLock.lock();
-    try {
-      this.upstreamConfigs = newConfigs;
-      this.servers = servers;
-      this.servers.forEach(server -> {
-        server.setStatLimit(statLimit);
-        server.setSharedLock(lock);
-      });
-      UpstreamConfig upstreamConfig = getUpstreamConfigOrThrow(DEFAULT_PROFILE);
-      initSlowStart(upstreamConfig, Clock.systemDefaultZone());
-      this.failedSelection = false;
-    } finally {
-      configWriteLock.unlock();
+    UpstreamSnapshot newSnapshot = UpstreamSnapshot.of(servers, newConfigs, datacenter, allowCrossDCRequests);
+    if (snapshot != null) {
+      newSnapshot.inheritHashRing(snapshot);
+    }
+    UpstreamConfig upstreamConfig = getUpstreamConfigOrThrow(newSnapshot, DEFAULT_PROFILE);
+    boolean resetCircuitBreakers = !newSnapshot.getCircuitBreakerSettings().isEnabled();
+    for (Server server : servers) {
+      if (server == null) {
+        continue;
+      }
+      server.setStatLimit(statLimit);
+      server.setSlowStartEndTimeIfNeeded(upstreamConfig.getSlowStartIntervalSec(), upstreamConfig.getSlowStartAggression(), clock);
+      if (resetCircuitBreakers) {
+        server.getCircuitBreaker().reset();
+      }
+    }
+    retryBudget.configure(upstreamConfig.getRetryBudgetRatio(), upstreamConfig.getMinRetriesPerSec());
+    concurrencyLimiter.configure(upstreamConfig.getMaxConcurrentRequests());
+    crossDcSpillover.configure(allowCrossDCRequests ? upstreamConfig.getCrossDcSpilloverPercent() : 0);
+    outlierDetector.configure(upstreamConfig);
+    this.snapshot = newSnapshot;
+    this.failedSelection = false;
+  }
+
+  private static UpstreamConfig getUpstreamConfigOrThrow(UpstreamSnapshot snapshot, String profile) {
+    UpstreamConfig upstreamConfig = snapshot.getConfigs().getOrNull(profile);
+    if (upstreamConfig == null) {
+      throw new IllegalStateException("Profile " + profile + " should be present");
     }
+    return upstreamConfig;
+  }
+
+  HedgeBudget getHedgeBudget() {
+    return hedgeBudget;
+  }
+
+  LatencyHistogram getLatencyHistogram() {
+    return latencyHistogram;
   }
 
-  private UpstreamConfig getUpstreamConfigOrThrow(String profile) {
-    return upstreamConfigs.get(profile).orElseThrow(() -> new IllegalStateException("Profile " + profile + " should be present"));
+  RetryBudget getRetryBudget() {
+    return retryBudget;
   }
 
-  private void initSlowStart(UpstreamConfig upstreamConfig, Clock clock) {
-    servers.forEach(server -> server.setSlowStartEndTimeIfNeeded(upstreamConfig.getSlowStartIntervalSec(), clock));
+  ConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  CrossDcSpillover getCrossDcSpillover() {
+    return crossDcSpillover;
+  }
+
+  OutlierDetector getOutlierDetector() {
+    return outlierDetector;
   }
 
   String getName() {
@@ -211,40 +420,30 @@ public class Upstream {
   }
 
   UpstreamConfig getConfig(String profile) {
+    return getConfig(snapshot, profile);
+  }
+
+  private static UpstreamConfig getConfig(UpstreamSnapshot snapshot, String profile) {
     profile = profile == null || profile.isEmpty() ? DEFAULT_PROFILE : profile;
-    configReadLock.lock();
-    try {
-      return getUpstreamConfigOrThrow(profile);
-    } finally {
-      configReadLock.unlock();
-    }
+    return getUpstreamConfigOrThrow(snapshot, profile);
   }
 
   //visible for testing
   void setStatLimit(int statLimit) {
     this.statLimit = statLimit;
-    servers.forEach(server -> server.setStatLimit(statLimit));
-  }
-
-  private static void iterateServers(List<Server> servers, Consumer<Server> function) {
-    servers.forEach(server -> {
-      if (server == null) {
-        return;
-      }
-
-      function.accept(server);
-    });
+    snapshot.getServers().stream().filter(Objects::nonNull).forEach(server -> server.setStatLimit(statLimit));
   }
 
   @Override
   public String toString() {
+    UpstreamSnapshot snapshot = this.snapshot;
     return "Upstream{" +
       "upstreamName=" + upstreamName +
-      ", upstreamConfig=" + upstreamConfigs +
+      ", upstreamConfig=" + snapshot.getConfigs() +
       ", datacenter='" + datacenter + '\'' +
       ", allowCrossDCRequests=" + allowCrossDCRequests +
       ", enabled=" + enabled +
-      ", servers=" + servers +
+      ", servers=" + snapshot.getServers() +
       '}';
   }
 }
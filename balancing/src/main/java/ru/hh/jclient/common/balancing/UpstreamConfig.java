@@ -7,6 +7,9 @@ public final class UpstreamConfig {
   static final int DEFAULT_MAX_TRIES = 2;
   static final int DEFAULT_MAX_TIMEOUT_TRIES = 1;
   static final int DEFAULT_CONNECT_TIMEOUT_MS = 200;
+  static final int DEFAULT_CIRCUIT_BREAKER_OPEN_INTERVAL_MS = 10_000;
+  static final int DEFAULT_OUTLIER_EJECTION_MS = 30_000;
+  static final int DEFAULT_OUTLIER_MAX_EJECTION_PERCENT = 10;
 
   public static final UpstreamConfig DEFAULT_CONFIG = new UpstreamConfig(
     DEFAULT_MAX_TRIES, DEFAULT_MAX_TIMEOUT_TRIES,
@@ -20,6 +23,18 @@ public final class UpstreamConfig {
   private final RetryPolicy retryPolicy = new RetryPolicy();
 
   private int slowStartIntervalSec;
+  private double slowStartAggression = 1;
+  private BalancingStrategyType balancingStrategyType = BalancingStrategyType.LEAST_LOADED;
+  private double retryBudgetRatio;
+  private int minRetriesPerSec = RetryBudget.DEFAULT_MIN_RETRIES_PER_SEC;
+  private int circuitBreakerConsecutiveFails;
+  private int circuitBreakerErrorPercent;
+  private int circuitBreakerOpenIntervalMs = DEFAULT_CIRCUIT_BREAKER_OPEN_INTERVAL_MS;
+  private int maxConcurrentRequests;
+  private int crossDcSpilloverPercent;
+  private int outlierDetectionIntervalMs;
+  private int outlierEjectionMs = DEFAULT_OUTLIER_EJECTION_MS;
+  private int outlierMaxEjectionPercent = DEFAULT_OUTLIER_MAX_EJECTION_PERCENT;
 
   UpstreamConfig(int maxTries, int maxTimeoutTries, int connectTimeoutMs, int requestTimeoutMs) {
     this.maxTries = maxTries;
@@ -48,6 +63,79 @@ public final class UpstreamConfig {
     return slowStartIntervalSec;
   }
 
+  /**
+   * @return exponent of weight ramp on slow start: 1 is linear, greater values give more traffic at the beginning of the interval
+   */
+  public double getSlowStartAggression() {
+    return slowStartAggression;
+  }
+
+  public BalancingStrategyType getBalancingStrategyType() {
+    return balancingStrategyType;
+  }
+
+  /**
+   * @return share of successful requests allowed to be retried, 0 if retries are not limited by budget
+   */
+  public double getRetryBudgetRatio() {
+    return retryBudgetRatio;
+  }
+
+  public int getMinRetriesPerSec() {
+    return minRetriesPerSec;
+  }
+
+  /**
+   * @return consecutive fails opening circuit breaker of a server, 0 if not limited
+   */
+  public int getCircuitBreakerConsecutiveFails() {
+    return circuitBreakerConsecutiveFails;
+  }
+
+  /**
+   * @return percent of errors among recent requests opening circuit breaker of a server, 0 if not limited
+   */
+  public int getCircuitBreakerErrorPercent() {
+    return circuitBreakerErrorPercent;
+  }
+
+  public int getCircuitBreakerOpenIntervalMs() {
+    return circuitBreakerOpenIntervalMs;
+  }
+
+  /**
+   * @return upper bound of adaptive concurrency limit of upstream, 0 if concurrency is not limited
+   */
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  /**
+   * @return percent of available capacity of current datacenter below which requests partially go to other datacenters,
+   * 0 if they go there only when no server of current datacenter is left
+   */
+  public int getCrossDcSpilloverPercent() {
+    return crossDcSpilloverPercent;
+  }
+
+  /**
+   * @return interval of comparing servers with their peers to eject outliers, 0 if outlier detection is disabled
+   */
+  public int getOutlierDetectionIntervalMs() {
+    return outlierDetectionIntervalMs;
+  }
+
+  /**
+   * @return time of the first ejection of a server, every next ejection in a row lasts twice longer
+   */
+  public int getOutlierEjectionMs() {
+    return outlierEjectionMs;
+  }
+
+  public int getOutlierMaxEjectionPercent() {
+    return outlierMaxEjectionPercent;
+  }
+
   public RetryPolicy getRetryPolicy() {
     return retryPolicy;
   }
@@ -57,6 +145,66 @@ public final class UpstreamConfig {
     return this;
   }
 
+  UpstreamConfig setSlowStartAggression(double slowStartAggression) {
+    this.slowStartAggression = slowStartAggression;
+    return this;
+  }
+
+  UpstreamConfig setBalancingStrategyType(BalancingStrategyType balancingStrategyType) {
+    this.balancingStrategyType = balancingStrategyType;
+    return this;
+  }
+
+  UpstreamConfig setRetryBudgetRatio(double retryBudgetRatio) {
+    this.retryBudgetRatio = retryBudgetRatio;
+    return this;
+  }
+
+  UpstreamConfig setMinRetriesPerSec(int minRetriesPerSec) {
+    this.minRetriesPerSec = minRetriesPerSec;
+    return this;
+  }
+
+  UpstreamConfig setCircuitBreakerConsecutiveFails(int circuitBreakerConsecutiveFails) {
+    this.circuitBreakerConsecutiveFails = circuitBreakerConsecutiveFails;
+    return this;
+  }
+
+  UpstreamConfig setCircuitBreakerErrorPercent(int circuitBreakerErrorPercent) {
+    this.circuitBreakerErrorPercent = circuitBreakerErrorPercent;
+    return this;
+  }
+
+  UpstreamConfig setCircuitBreakerOpenIntervalMs(int circuitBreakerOpenIntervalMs) {
+    this.circuitBreakerOpenIntervalMs = circuitBreakerOpenIntervalMs;
+    return this;
+  }
+
+  UpstreamConfig setMaxConcurrentRequests(int maxConcurrentRequests) {
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    return this;
+  }
+
+  UpstreamConfig setCrossDcSpilloverPercent(int crossDcSpilloverPercent) {
+    this.crossDcSpilloverPercent = crossDcSpilloverPercent;
+    return this;
+  }
+
+  UpstreamConfig setOutlierDetectionIntervalMs(int outlierDetectionIntervalMs) {
+    this.outlierDetectionIntervalMs = outlierDetectionIntervalMs;
+    return this;
+  }
+
+  UpstreamConfig setOutlierEjectionMs(int outlierEjectionMs) {
+    this.outlierEjectionMs = outlierEjectionMs;
+    return this;
+  }
+
+  UpstreamConfig setOutlierMaxEjectionPercent(int outlierMaxEjectionPercent) {
+    this.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+    return this;
+  }
+
   @Override
   public String toString() {
     return "{max_tries=" + maxTries
@@ -64,6 +212,18 @@ public final class UpstreamConfig {
       + ", connect_timeout_ms=" + connectTimeoutMs
       + ", request_timeout_ms=" + requestTimeoutMs
       + ", slow_start_interval_sec=" + slowStartIntervalSec
+      + ", slow_start_aggression=" + slowStartAggression
+      + ", balancing_strategy=" + balancingStrategyType
+      + ", retry_budget_ratio=" + retryBudgetRatio
+      + ", min_retries_per_sec=" + minRetriesPerSec
+      + ", circuit_breaker_consecutive_fails=" + circuitBreakerConsecutiveFails
+      + ", circuit_breaker_error_percent=" + circuitBreakerErrorPercent
+      + ", circuit_breaker_open_interval_ms=" + circuitBreakerOpenIntervalMs
+      + ", max_concurrent_requests=" + maxConcurrentRequests
+      + ", cross_dc_spillover_percent=" + crossDcSpilloverPercent
+      + ", outlier_detection_interval_ms=" + outlierDetectionIntervalMs
+      + ", outlier_ejection_ms=" + outlierEjectionMs
+      + ", outlier_max_ejection_percent=" + outlierMaxEjectionPercent
       + '}';
   }
 }
@@ -4,12 +4,19 @@ import java.util.Map;
 import static java.util.Objects.requireNonNullElse;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import static java.util.stream.Collectors.toMap;
+import javax.annotation.Nullable;
+import static ru.hh.jclient.common.balancing.RetryBudget.DEFAULT_MIN_RETRIES_PER_SEC;
 import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT_CIRCUIT_BREAKER_OPEN_INTERVAL_MS;
 import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT_CONFIG;
 import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT_CONNECT_TIMEOUT_MS;
 import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT_MAX_TIMEOUT_TRIES;
 import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT_MAX_TRIES;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT_OUTLIER_EJECTION_MS;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT_OUTLIER_MAX_EJECTION_PERCENT;
 import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT_REQUEST_TIMEOUT_MS;
+import ru.hh.jclient.common.balancing.config.Profile;
 
 public final class UpstreamConfigs {
   private static final UpstreamConfigs DEFAULT_CONFIGS = new UpstreamConfigs(Map.of(DEFAULT, DEFAULT_CONFIG));
@@ -28,6 +35,11 @@ public final class UpstreamConfigs {
     return Optional.ofNullable(configByProfile.get(profile));
   }
 
+  @Nullable
+  UpstreamConfig getOrNull(String profile) {
+    return configByProfile.get(profile);
+  }
+
   public static UpstreamConfigs getDefaultConfig() {
     return DEFAULT_CONFIGS;
   }
@@ -36,15 +48,50 @@ public final class UpstreamConfigs {
                                                                 Float connectTimeoutSec, Float requestTimeoutSec,
                                                                 Integer slowStartIntervalSec,
                                                                 Map<Integer, Boolean> retryPolicyConfig) {
+    Profile profile = new Profile()
+      .setMaxTries(maxTries)
+      .setMaxTimeoutTries(maxTimeoutTries)
+      .setConnectTimeoutSec(connectTimeoutSec)
+      .setRequestTimeoutSec(requestTimeoutSec)
+      .setSlowStartIntervalSec(slowStartIntervalSec);
+    return createUpstreamConfig(profile, retryPolicyConfig);
+  }
+
+  /**
+   * options which are not set in profile get their defaults
+   */
+  public static UpstreamConfig createUpstreamConfigWithDefaults(Profile profile) {
+    Map<Integer, Boolean> retryPolicyConfig = Optional.ofNullable(profile.getRetryPolicy())
+      .map(policy -> policy.entrySet().stream().collect(toMap(Map.Entry::getKey, e -> e.getValue().isIdempotent())))
+      .orElseGet(Map::of);
+    return createUpstreamConfig(profile, retryPolicyConfig);
+  }
+
+  private static UpstreamConfig createUpstreamConfig(Profile profile, @Nullable Map<Integer, Boolean> retryPolicyConfig) {
     UpstreamConfig upstreamConfig = new UpstreamConfig(
-      requireNonNullElse(maxTries, DEFAULT_MAX_TRIES),
-      requireNonNullElse(maxTimeoutTries, DEFAULT_MAX_TIMEOUT_TRIES),
-      convertToMillisOrFallback(connectTimeoutSec, DEFAULT_CONNECT_TIMEOUT_MS),
-      convertToMillisOrFallback(requestTimeoutSec, DEFAULT_REQUEST_TIMEOUT_MS)
+      requireNonNullElse(profile.getMaxTries(), DEFAULT_MAX_TRIES),
+      requireNonNullElse(profile.getMaxTimeoutTries(), DEFAULT_MAX_TIMEOUT_TRIES),
+      convertToMillisOrFallback(profile.getConnectTimeoutSec(), DEFAULT_CONNECT_TIMEOUT_MS),
+      convertToMillisOrFallback(profile.getRequestTimeoutSec(), DEFAULT_REQUEST_TIMEOUT_MS)
     );
     upstreamConfig.getRetryPolicy().update(retryPolicyConfig);
-    upstreamConfig.setSlowStartIntervalSec(requireNonNullElse(slowStartIntervalSec, 0));
-
+    upstreamConfig.setSlowStartIntervalSec(requireNonNullElse(profile.getSlowStartIntervalSec(), 0));
+    upstreamConfig.setSlowStartAggression(requireNonNullElse(profile.getSlowStartAggression(), 1f));
+    upstreamConfig.setBalancingStrategyType(BalancingStrategyType.fromConfigValue(profile.getBalancingStrategy()));
+    upstreamConfig.setRetryBudgetRatio(requireNonNullElse(profile.getRetryBudgetPercent(), 0f) / 100d);
+    upstreamConfig.setMinRetriesPerSec(requireNonNullElse(profile.getMinRetriesPerSec(), DEFAULT_MIN_RETRIES_PER_SEC));
+    upstreamConfig.setCircuitBreakerConsecutiveFails(requireNonNullElse(profile.getCircuitBreakerConsecutiveFails(), 0));
+    upstreamConfig.setCircuitBreakerErrorPercent(requireNonNullElse(profile.getCircuitBreakerErrorPercent(), 0));
+    upstreamConfig.setCircuitBreakerOpenIntervalMs(
+      convertToMillisOrFallback(profile.getCircuitBreakerOpenIntervalSec(), DEFAULT_CIRCUIT_BREAKER_OPEN_INTERVAL_MS)
+    );
+    upstreamConfig.setMaxConcurrentRequests(requireNonNullElse(profile.getMaxConcurrentRequests(), 0));
+    upstreamConfig.setCrossDcSpilloverPercent(requireNonNullElse(profile.getCrossDcSpilloverPercent(), 0));
+    upstreamConfig.setOutlierDetectionIntervalMs(convertToMillisOrFallback(profile.getOutlierDetectionIntervalSec(), 0));
+    upstreamConfig.setOutlierEjectionMs(convertToMillisOrFallback(profile.getOutlierEjectionSec(), DEFAULT_OUTLIER_EJECTION_MS));
+    upstreamConfig.setOutlierMaxEjectionPercent(
+      requireNonNullElse(profile.getOutlierMaxEjectionPercent(), DEFAULT_OUTLIER_MAX_EJECTION_PERCENT)
+    );
 
     return upstreamConfig;
   }
@@ -2,10 +2,12 @@ package ru.hh.jclient.common.balancing;
 
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static ru.hh.jclient.common.HttpStatuses.BAD_GATEWAY;
+import static ru.hh.jclient.common.HttpStatuses.SERVICE_UNAVAILABLE;
 import ru.hh.jclient.common.MappedTransportErrorResponse;
 import ru.hh.jclient.common.Monitoring;
 import ru.hh.jclient.common.Request;
@@ -24,11 +26,29 @@ public class UpstreamRequestBalancer extends RequestBalancer {
   private final BalancingState state;
 
   private final Set<Monitoring> monitorings;
+  @Nullable
+  private final HedgingPolicy hedgingPolicy;
+  /**
+   * limiter holding a permit of the current try
+   */
+  @Nullable
+  private ConcurrencyLimiter acquiredLimiter;
+  /**
+   * execution of the current try if it is hedged
+   */
+  @Nullable
+  private HedgedExecution hedgedExecution;
   private int firstStatusCode;
 
   public UpstreamRequestBalancer(BalancingState state, Request request, RequestStrategy.RequestExecutor requestExecutor,
                                  int maxTimeoutTries, boolean forceIdempotence,
                                  @Nullable Double timeoutMultiplier, Set<Monitoring> monitorings) {
+    this(state, request, requestExecutor, maxTimeoutTries, forceIdempotence, timeoutMultiplier, monitorings, null);
+  }
+
+  UpstreamRequestBalancer(BalancingState state, Request request, RequestStrategy.RequestExecutor requestExecutor,
+                          int maxTimeoutTries, boolean forceIdempotence,
+                          @Nullable Double timeoutMultiplier, Set<Monitoring> monitorings, @Nullable HedgingPolicy hedgingPolicy) {
     super(request, requestExecutor,
       state.getUpstreamConfig().getRequestTimeoutMs(),
       maxTimeoutTries,
@@ -37,6 +57,7 @@ public class UpstreamRequestBalancer extends RequestBalancer {
     );
     this.state = state;
     this.monitorings = monitorings;
+    this.hedgingPolicy = hedgingPolicy;
   }
 
   @Override
@@ -46,8 +67,26 @@ public class UpstreamRequestBalancer extends RequestBalancer {
       LOGGER.warn("Upstream {} is disabled. Returning serverNotAvailableResponse", upstreamName);
       return new ImmediateResultOrPreparedRequest(getServerNotAvailableResponse(request, upstreamName), new RequestContext(upstreamName, "unknown"));
     }
+    ConcurrencyLimiter limiter = state.upstream.getConcurrencyLimiter();
+    if (limiter.isEnabled()) {
+      if (!limiter.tryAcquire()) {
+        LOGGER.debug("Concurrency limit {} of upstream {} is exceeded. Returning concurrencyLimitExceededResponse", limiter, upstreamName);
+        for (Monitoring monitoring : monitorings) {
+          monitoring.countConcurrencyLimitRejection(upstreamName, state.upstream.getDatacenter());
+        }
+        return new ImmediateResultOrPreparedRequest(
+          getConcurrencyLimitExceededResponse(request, upstreamName), new RequestContext(upstreamName, "unknown")
+        );
+      }
+      acquiredLimiter = limiter;
+    }
     state.acquireServer();
+    reportCrossDcSpill(state.upstream.getCrossDcSpillover());
     if (!state.isServerAvailable()) {
+      if (acquiredLimiter != null) {
+        acquiredLimiter.release();
+        acquiredLimiter = null;
+      }
       return new ImmediateResultOrPreparedRequest(getServerNotAvailableResponse(request, upstreamName), new RequestContext(upstreamName, "unknown"));
     }
     int requestTimeout = request.getRequestTimeout() > 0 ? request.getRequestTimeout()
@@ -61,6 +100,51 @@ public class UpstreamRequestBalancer extends RequestBalancer {
     return new ImmediateResultOrPreparedRequest(context, requestBuilder.build());
   }
 
+  private void reportCrossDcSpill(CrossDcSpillover spillover) {
+    if (!spillover.isEnabled()) {
+      return;
+    }
+    int percent = spillover.getPercent();
+    if (spillover.claimReport(percent)) {
+      LOGGER.debug("Cross dc spill of upstream {} changed to {}%", state.getUpstreamName(), percent);
+      for (Monitoring monitoring : monitorings) {
+        monitoring.reportCrossDcSpill(state.getUpstreamName(), state.upstream.getDatacenter(), percent);
+      }
+    }
+  }
+
+  @Override
+  protected RequestContext getFailFastRequestContext() {
+    return new RequestContext(state.getUpstreamName(), "unknown");
+  }
+
+  @Override
+  protected CompletableFuture<ResponseWrapper> executeRequest(Request balancedRequest, int retryCount, RequestContext context) {
+    if (hedgingPolicy == null || retryCount > 0 || !isIdempotent()) {
+      return super.executeRequest(balancedRequest, retryCount, context);
+    }
+    Upstream upstream = state.upstream;
+    upstream.getHedgeBudget().deposit();
+    long delayMs = hedgingPolicy.getDelayMs(upstream.getLatencyHistogram());
+    if (delayMs < 0 || delayMs >= balancedRequest.getRequestTimeout()) {
+      return super.executeRequest(balancedRequest, retryCount, context);
+    }
+    LatencyHistogram histogram = hedgingPolicy.usesPercentile() ? upstream.getLatencyHistogram() : null;
+    HedgedExecution execution = new HedgedExecution(
+      state, upstream.getHedgeBudget(), getCallbackExecutor(), histogram, server -> executeHedge(balancedRequest, server, retryCount + 1)
+    );
+    hedgedExecution = execution;
+    return execution.start(super.executeRequest(balancedRequest, retryCount, context), delayMs);
+  }
+
+  private CompletableFuture<ResponseWrapper> executeHedge(Request balancedRequest, ServerEntry server, int retryCount) {
+    LOGGER.debug("Hedging {} {} to {} after {}", balancedRequest.getMethod(), balancedRequest.getUri(), server.getAddress(), hedgingPolicy);
+    RequestBuilder requestBuilder = new RequestBuilder(balancedRequest);
+    requestBuilder.setUrl(getBalancedUrl(balancedRequest, server.getAddress()));
+    String dc = Optional.ofNullable(server.getDatacenter()).map(String::toLowerCase).orElse(null);
+    return super.executeRequest(requestBuilder.build(), retryCount, new RequestContext(state.getUpstreamName(), dc));
+  }
+
   private static String getBalancedUrl(Request request, String serverAddress) {
     String originalServer = getOriginalServer(request);
     return request.getUrl().replace(originalServer, serverAddress);
@@ -79,9 +163,40 @@ public class UpstreamRequestBalancer extends RequestBalancer {
     );
   }
 
+  private static Response getConcurrencyLimitExceededResponse(Request request, String upstreamName) {
+    return ResponseConverterUtils.convert(
+      new MappedTransportErrorResponse(SERVICE_UNAVAILABLE, "Concurrency limit exceeded for upstream: " + upstreamName, request.getUri())
+    );
+  }
+
   @Override
   protected void onRequestReceived(ResponseWrapper wrapper, long timeToLastByteMicros) {
-    state.releaseServer(timeToLastByteMicros, isServerError(wrapper));
+    HedgedExecution execution = hedgedExecution;
+    hedgedExecution = null;
+    // if the hedge has won, the cancelled primary is recorded instead of it
+    boolean primaryCancelled = execution != null && execution.isPrimaryCancelled();
+    if (wrapper != null && hedgingPolicy != null && hedgingPolicy.usesPercentile() && !primaryCancelled) {
+      state.upstream.getLatencyHistogram().record(timeToLastByteMicros);
+    }
+    boolean isServerError = isServerError(wrapper);
+    if (wrapper != null && !isServerError) {
+      state.upstream.getRetryBudget().deposit();
+    }
+    if (acquiredLimiter != null) {
+      releaseLimiter(acquiredLimiter, timeToLastByteMicros, wrapper == null || isServerError);
+      acquiredLimiter = null;
+    }
+    state.releaseServer(timeToLastByteMicros, isServerError);
+  }
+
+  private void releaseLimiter(ConcurrencyLimiter limiter, long timeToLastByteMicros, boolean isError) {
+    int limit = limiter.release(timeToLastByteMicros, isError);
+    if (limiter.claimReport(limit)) {
+      LOGGER.debug("Concurrency limit of upstream {} changed to {}", state.getUpstreamName(), limit);
+      for (Monitoring monitoring : monitorings) {
+        monitoring.reportConcurrencyLimit(state.getUpstreamName(), limit);
+      }
+    }
   }
 
   @Override
@@ -108,7 +223,20 @@ public class UpstreamRequestBalancer extends RequestBalancer {
 
   @Override
   protected boolean checkRetry(Response response, boolean isIdempotent) {
-    return state.getUpstreamConfig().getRetryPolicy().isRetriable(response, isIdempotent);
+    if (!state.getUpstreamConfig().getRetryPolicy().isRetriable(response, isIdempotent)) {
+      return false;
+    }
+    if (state.upstream.getRetryBudget().tryWithdraw()) {
+      return true;
+    }
+    String upstreamName = state.getUpstreamName();
+    LOGGER.info("Retry budget {} of upstream {} is exhausted, not retrying {} on {} {}",
+      state.upstream.getRetryBudget(), upstreamName, response.getStatusCode(), request.getMethod(), request.getUri());
+    String dcName = state.isServerAvailable() ? state.getCurrentServer().getDatacenter() : null;
+    for (Monitoring monitoring : monitorings) {
+      monitoring.countRetryBudgetExhausted(upstreamName, dcName, response.getStatusCode());
+    }
+    return false;
   }
 
   @Override
@@ -0,0 +1,219 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable view of upstream servers and configs. Published by {@link Upstream} through a single volatile reference,
+ * so readers get consistent servers, configs and datacenter partitions without locking.
+ * The only mutable parts are adaptive sampling table and consistent hash ring, which are derived from servers and replaced as a whole,
+ * and max stat load of servers, which is tracked incrementally
+ */
+final class UpstreamSnapshot {
+  private final List<Server> servers;
+  private final ServerEntry[] serverEntries;
+  private final UpstreamConfigs configs;
+  private final int[] localServerIndexes;
+  private final int[] remoteServerIndexes;
+  private final int[] allowedServerIndexes;
+  private final List<Server> allowedServers;
+  private final ServerEntry[] allowedServerEntries;
+  private final CircuitBreaker.Settings circuitBreakerSettings;
+  private final StatRescaleGroup localRescaleGroup;
+  private final StatRescaleGroup remoteRescaleGroup;
+
+  private volatile AdaptiveSamplingTable<ServerEntry> adaptiveSamplingTable;
+  private volatile ConsistentHashRing hashRing;
+  private final AtomicInteger maxStatLoadBits = new AtomicInteger();
+
+  private UpstreamSnapshot(List<Server> servers, ServerEntry[] serverEntries, UpstreamConfigs configs,
+                           int[] localServerIndexes, int[] remoteServerIndexes,
+                           int[] allowedServerIndexes, List<Server> allowedServers, ServerEntry[] allowedServerEntries) {
+    this.servers = servers;
+    this.serverEntries = serverEntries;
+    this.configs = configs;
+    this.localServerIndexes = localServerIndexes;
+    this.remoteServerIndexes = remoteServerIndexes;
+    this.allowedServerIndexes = allowedServerIndexes;
+    this.allowedServers = allowedServers;
+    this.allowedServerEntries = allowedServerEntries;
+    this.circuitBreakerSettings = CircuitBreaker.Settings.of(configs.getOrNull(UpstreamConfig.DEFAULT));
+    this.localRescaleGroup = new StatRescaleGroup(localServerIndexes);
+    this.remoteRescaleGroup = new StatRescaleGroup(remoteServerIndexes);
+    resetMaxStatLoad();
+  }
+
+  static UpstreamSnapshot of(List<Server> servers, UpstreamConfigs configs, String datacenter, boolean allowCrossDCRequests) {
+    int[] local = new int[servers.size()];
+    int[] remote = new int[servers.size()];
+    int[] allowed = new int[servers.size()];
+    List<Server> allowedServers = new ArrayList<>(servers.size());
+    ServerEntry[] serverEntries = new ServerEntry[servers.size()];
+    int localCount = 0;
+    int remoteCount = 0;
+    int allowedCount = 0;
+    for (int i = 0; i < servers.size(); i++) {
+      Server server = servers.get(i);
+      if (server == null) {
+        continue;
+      }
+      serverEntries[i] = new ServerEntry(i, server);
+      boolean isLocal = Objects.equals(datacenter, server.getDatacenter());
+      if (isLocal) {
+        local[localCount++] = i;
+      } else {
+        remote[remoteCount++] = i;
+      }
+      if (isLocal || allowCrossDCRequests) {
+        allowed[allowedCount++] = i;
+        allowedServers.add(server);
+      }
+    }
+    int[] allowedServerIndexes = Arrays.copyOf(allowed, allowedCount);
+    ServerEntry[] allowedServerEntries = new ServerEntry[allowedCount];
+    for (int i = 0; i < allowedCount; i++) {
+      allowedServerEntries[i] = serverEntries[allowedServerIndexes[i]];
+    }
+    return new UpstreamSnapshot(
+      servers, serverEntries, configs,
+      Arrays.copyOf(local, localCount), Arrays.copyOf(remote, remoteCount),
+      allowedServerIndexes, List.copyOf(allowedServers), allowedServerEntries
+    );
+  }
+
+  List<Server> getServers() {
+    return servers;
+  }
+
+  /**
+   * @return entry describing server at the index. Entries are immutable, so they are created once per snapshot
+   */
+  ServerEntry getServerEntry(int index) {
+    return serverEntries[index];
+  }
+
+  UpstreamConfigs getConfigs() {
+    return configs;
+  }
+
+  /**
+   * @return circuit breaker settings of default profile
+   */
+  CircuitBreaker.Settings getCircuitBreakerSettings() {
+    return circuitBreakerSettings;
+  }
+
+  /**
+   * @return indexes of servers located in the current datacenter
+   */
+  int[] getLocalServerIndexes() {
+    return localServerIndexes;
+  }
+
+  /**
+   * @return indexes of servers located in other datacenters
+   */
+  int[] getRemoteServerIndexes() {
+    return remoteServerIndexes;
+  }
+
+  /**
+   * @return max stat load of servers, used as initial stat of a new server, so it does not get all requests until it catches up.
+   * Grows with {@link #updateMaxStatLoad(float)} on acquire and is recomputed on rescale, so servers are not scanned on every pick
+   */
+  float getMaxStatLoad() {
+    return Float.intBitsToFloat(maxStatLoadBits.get());
+  }
+
+  void updateMaxStatLoad(float load) {
+    int prev;
+    do {
+      prev = maxStatLoadBits.get();
+      if (Float.intBitsToFloat(prev) >= load) {
+        return;
+      }
+    } while (!maxStatLoadBits.compareAndSet(prev, Float.floatToRawIntBits(load)));
+  }
+
+  /**
+   * should be called under {@link Upstream} write lock, if stats were rescaled
+   */
+  void resetMaxStatLoad() {
+    float maxStatLoad = 0;
+    for (Server server : servers) {
+      if (server != null) {
+        maxStatLoad = Math.max(maxStatLoad, server.calculateLoad());
+      }
+    }
+    maxStatLoadBits.set(Float.floatToRawIntBits(maxStatLoad));
+  }
+
+  StatRescaleGroup getLocalRescaleGroup() {
+    return localRescaleGroup;
+  }
+
+  StatRescaleGroup getRemoteRescaleGroup() {
+    return remoteRescaleGroup;
+  }
+
+  /**
+   * @return indexes of servers which can be used with respect to cross dc policy, in ascending order
+   */
+  int[] getAllowedServerIndexes() {
+    return allowedServerIndexes;
+  }
+
+  /**
+   * @return servers matching {@link #getAllowedServerIndexes()} position by position
+   */
+  List<Server> getAllowedServers() {
+    return allowedServers;
+  }
+
+  /**
+   * @return hash ring over all servers, built on first use
+   */
+  ConsistentHashRing getHashRing() {
+    ConsistentHashRing ring = hashRing;
+    if (ring == null) {
+      ring = ConsistentHashRing.of(servers);
+      hashRing = ring;
+    }
+    return ring;
+  }
+
+  /**
+   * updates hash ring of the previous snapshot for servers of this one, if it was in use
+   */
+  void inheritHashRing(UpstreamSnapshot previous) {
+    ConsistentHashRing ring = previous.hashRing;
+    if (ring != null) {
+      hashRing = ring.update(servers);
+    }
+  }
+
+  /**
+   * @return sampling table over allowed servers, rebuilt from their statistics when older than refresh interval
+   */
+  AdaptiveSamplingTable<ServerEntry> getAdaptiveSamplingTable(Clock clock, long refreshIntervalMillis) {
+    AdaptiveSamplingTable<ServerEntry> table = adaptiveSamplingTable;
+    if (table == null) {
+      table = AdaptiveBalancingStrategy.buildSamplingTable(allowedServers, allowedServerEntries, clock);
+      adaptiveSamplingTable = table;
+    } else if (clock.millis() - table.getCreatedAtMillis() >= refreshIntervalMillis && table.claimRefresh()) {
+      try {
+        table = AdaptiveBalancingStrategy.buildSamplingTable(allowedServers, allowedServerEntries, clock);
+        adaptiveSamplingTable = table;
+      } catch (RuntimeException e) {
+        // let the next caller retry instead of keeping the stale table until config update
+        table.releaseRefresh();
+        throw e;
+      }
+    }
+    return table;
+  }
+}
@@ -1,7 +1,6 @@
 package ru.hh.jclient.common.balancing.config;
 
 import java.util.Map;
-import java.util.Optional;
 import static java.util.stream.Collectors.toMap;
 import ru.hh.jclient.common.balancing.UpstreamConfig;
 import ru.hh.jclient.common.balancing.UpstreamConfigFormatException;
@@ -39,14 +38,7 @@ public class ApplicationConfig {
   }
 
   private static UpstreamConfig convertProfileToUpstreamConfig(Profile profile) {
-    return UpstreamConfigs.createUpstreamConfigWithDefaults(
-      profile.getMaxTries(), profile.getMaxTimeoutTries(),
-      profile.getConnectTimeoutSec(), profile.getRequestTimeoutSec(),
-      profile.getSlowStartIntervalSec(),
-      Optional.ofNullable(profile.getRetryPolicy())
-        .map(policy -> policy.entrySet().stream().collect(toMap(Map.Entry::getKey, e -> e.getValue().isIdempotent())))
-        .orElseGet(Map::of)
-    );
+    return UpstreamConfigs.createUpstreamConfigWithDefaults(profile);
   }
 
   @Override
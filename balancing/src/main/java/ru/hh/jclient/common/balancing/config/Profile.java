@@ -14,6 +14,30 @@ public class Profile {
   private Float requestTimeoutSec;
   @JsonProperty("slow_start_interval_sec")
   private Integer slowStartIntervalSec;
+  @JsonProperty("slow_start_aggression")
+  private Float slowStartAggression;
+  @JsonProperty("balancing_strategy")
+  private String balancingStrategy;
+  @JsonProperty("retry_budget_percent")
+  private Float retryBudgetPercent;
+  @JsonProperty("min_retries_per_sec")
+  private Integer minRetriesPerSec;
+  @JsonProperty("circuit_breaker_consecutive_fails")
+  private Integer circuitBreakerConsecutiveFails;
+  @JsonProperty("circuit_breaker_error_percent")
+  private Integer circuitBreakerErrorPercent;
+  @JsonProperty("circuit_breaker_open_interval_sec")
+  private Float circuitBreakerOpenIntervalSec;
+  @JsonProperty("max_concurrent_requests")
+  private Integer maxConcurrentRequests;
+  @JsonProperty("cross_dc_spillover_percent")
+  private Integer crossDcSpilloverPercent;
+  @JsonProperty("outlier_detection_interval_sec")
+  private Float outlierDetectionIntervalSec;
+  @JsonProperty("outlier_ejection_sec")
+  private Float outlierEjectionSec;
+  @JsonProperty("outlier_max_ejection_percent")
+  private Integer outlierMaxEjectionPercent;
   @JsonProperty("retry_policy")
   private Map<Integer, RetryPolicyConfig> retryPolicy;
 
@@ -71,6 +95,114 @@ public class Profile {
     return this;
   }
 
+  public Float getSlowStartAggression() {
+    return slowStartAggression;
+  }
+
+  public Profile setSlowStartAggression(Float slowStartAggression) {
+    this.slowStartAggression = slowStartAggression;
+    return this;
+  }
+
+  public String getBalancingStrategy() {
+    return balancingStrategy;
+  }
+
+  public Profile setBalancingStrategy(String balancingStrategy) {
+    this.balancingStrategy = balancingStrategy;
+    return this;
+  }
+
+  public Float getRetryBudgetPercent() {
+    return retryBudgetPercent;
+  }
+
+  public Profile setRetryBudgetPercent(Float retryBudgetPercent) {
+    this.retryBudgetPercent = retryBudgetPercent;
+    return this;
+  }
+
+  public Integer getMinRetriesPerSec() {
+    return minRetriesPerSec;
+  }
+
+  public Profile setMinRetriesPerSec(Integer minRetriesPerSec) {
+    this.minRetriesPerSec = minRetriesPerSec;
+    return this;
+  }
+
+  public Integer getCircuitBreakerConsecutiveFails() {
+    return circuitBreakerConsecutiveFails;
+  }
+
+  public Profile setCircuitBreakerConsecutiveFails(Integer circuitBreakerConsecutiveFails) {
+    this.circuitBreakerConsecutiveFails = circuitBreakerConsecutiveFails;
+    return this;
+  }
+
+  public Integer getCircuitBreakerErrorPercent() {
+    return circuitBreakerErrorPercent;
+  }
+
+  public Profile setCircuitBreakerErrorPercent(Integer circuitBreakerErrorPercent) {
+    this.circuitBreakerErrorPercent = circuitBreakerErrorPercent;
+    return this;
+  }
+
+  public Float getCircuitBreakerOpenIntervalSec() {
+    return circuitBreakerOpenIntervalSec;
+  }
+
+  public Profile setCircuitBreakerOpenIntervalSec(Float circuitBreakerOpenIntervalSec) {
+    this.circuitBreakerOpenIntervalSec = circuitBreakerOpenIntervalSec;
+    return this;
+  }
+
+  public Integer getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  public Profile setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    return this;
+  }
+
+  public Integer getCrossDcSpilloverPercent() {
+    return crossDcSpilloverPercent;
+  }
+
+  public Profile setCrossDcSpilloverPercent(Integer crossDcSpilloverPercent) {
+    this.crossDcSpilloverPercent = crossDcSpilloverPercent;
+    return this;
+  }
+
+  public Float getOutlierDetectionIntervalSec() {
+    return outlierDetectionIntervalSec;
+  }
+
+  public Profile setOutlierDetectionIntervalSec(Float outlierDetectionIntervalSec) {
+    this.outlierDetectionIntervalSec = outlierDetectionIntervalSec;
+    return this;
+  }
+
+  public Float getOutlierEjectionSec() {
+    return outlierEjectionSec;
+  }
+
+  public Profile setOutlierEjectionSec(Float outlierEjectionSec) {
+    this.outlierEjectionSec = outlierEjectionSec;
+    return this;
+  }
+
+  public Integer getOutlierMaxEjectionPercent() {
+    return outlierMaxEjectionPercent;
+  }
+
+  public Profile setOutlierMaxEjectionPercent(Integer outlierMaxEjectionPercent) {
+    this.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+    return this;
+  }
+
   @Override
   public String toString() {
     return "Profile{" +
@@ -79,6 +211,18 @@ public class Profile {
         ", connectTimeoutMs=" + connectTimeoutSec +
         ", requestTimeoutMs=" + requestTimeoutSec +
         ", slowStartIntervalSec=" + slowStartIntervalSec +
+        ", slowStartAggression=" + slowStartAggression +
+        ", balancingStrategy=" + balancingStrategy +
+        ", retryBudgetPercent=" + retryBudgetPercent +
+        ", minRetriesPerSec=" + minRetriesPerSec +
+        ", circuitBreakerConsecutiveFails=" + circuitBreakerConsecutiveFails +
+        ", circuitBreakerErrorPercent=" + circuitBreakerErrorPercent +
+        ", circuitBreakerOpenIntervalSec=" + circuitBreakerOpenIntervalSec +
+        ", maxConcurrentRequests=" + maxConcurrentRequests +
+        ", crossDcSpilloverPercent=" + crossDcSpilloverPercent +
+        ", outlierDetectionIntervalSec=" + outlierDetectionIntervalSec +
+        ", outlierEjectionSec=" + outlierEjectionSec +
+        ", outlierMaxEjectionPercent=" + outlierMaxEjectionPercent +
         ", retryPolicy=" + retryPolicy +
         '}';
   }
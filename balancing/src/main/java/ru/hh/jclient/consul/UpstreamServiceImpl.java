@@ -4,6 +4,7 @@ import java.math.BigInteger;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -183,7 +184,7 @@ public class UpstreamServiceImpl implements AutoCloseable, UpstreamService {
 
   private void checkServersForAllUpstreamsInCurrentDcExist(boolean throwIfError) {
     var upstreamsNotPresentInCurrentDC = upstreamList.stream()
-      .filter(upstream -> serverStore.getServers(upstream).stream().noneMatch(this::isInCurrentDc))
+      .filter(upstream -> serverStore.getServers(upstream).stream().filter(Objects::nonNull).noneMatch(this::isInCurrentDc))
       .collect(Collectors.toSet());
     if (!upstreamsNotPresentInCurrentDC.isEmpty()) {
       if (throwIfError) {
@@ -201,7 +202,7 @@ public class UpstreamServiceImpl implements AutoCloseable, UpstreamService {
 
   private void checkServersForAllUpstreamsExist(boolean throwIfError) {
     var emptyUpstreams = upstreamList.stream()
-      .filter(upstream -> serverStore.getServers(upstream).isEmpty())
+      .filter(upstream -> serverStore.getServers(upstream).stream().noneMatch(Objects::nonNull))
       .collect(Collectors.toSet());
     if (!emptyUpstreams.isEmpty()) {
       if (throwIfError) {
@@ -214,7 +215,7 @@ public class UpstreamServiceImpl implements AutoCloseable, UpstreamService {
 
   void updateUpstreams(Map<ServiceHealthKey, ServiceHealth> upstreams, String serviceName, String datacenter) {
     Set<Server> currentServers = serverStore.getServers(serviceName).stream()
-      .filter(server -> datacenter.equals(server.getDatacenter())).collect(Collectors.toSet());
+      .filter(server -> server != null && datacenter.equals(server.getDatacenter())).collect(Collectors.toSet());
 
     Map<String, Server> serverToRemoveByAddress = currentServers.stream().collect(toMap(Server::getAddress, Function.identity()));
 
@@ -13,6 +13,10 @@ import ru.hh.nab.metrics.Tag;
  * - http.client.requests
  * - http.client.request.time
  * - http.client.retries
+ * - http.client.retries.budget.exhausted
+ * - http.client.concurrency.limit.rejections
+ * - http.client.concurrency.limit
+ * - http.client.cross.dc.spill.percent
  */
 public class UpstreamMonitoring implements Monitoring {
   private final StatsDSender statsDSender;
@@ -50,6 +54,31 @@ public class UpstreamMonitoring implements Monitoring {
     statsDSender.sendCount("http.client.retries", 1, toTagsArray(tags));
   }
 
+  @Override
+  public void countRetryBudgetExhausted(String upstreamName, String serverDatacenter, int statusCode) {
+    Map<String, String> tags = getCommonTags(serviceName, upstreamName, serverDatacenter);
+    tags.put("status", String.valueOf(statusCode));
+    statsDSender.sendCount("http.client.retries.budget.exhausted", 1, toTagsArray(tags));
+  }
+
+  @Override
+  public void countConcurrencyLimitRejection(String upstreamName, String clientDatacenter) {
+    Map<String, String> tags = getCommonTags(serviceName, upstreamName, clientDatacenter);
+    statsDSender.sendCount("http.client.concurrency.limit.rejections", 1, toTagsArray(tags));
+  }
+
+  @Override
+  public void reportConcurrencyLimit(String upstreamName, int limit) {
+    Map<String, String> tags = getCommonTags(serviceName, upstreamName, null);
+    statsDSender.sendGauge("http.client.concurrency.limit", limit, toTagsArray(tags));
+  }
+
+  @Override
+  public void reportCrossDcSpill(String upstreamName, String clientDatacenter, int percent) {
+    Map<String, String> tags = getCommonTags(serviceName, upstreamName, clientDatacenter);
+    statsDSender.sendGauge("http.client.cross.dc.spill.percent", percent, toTagsArray(tags));
+  }
+
   @Override
   public void countUpdateIgnore(String upstreamName, String clientDatacenter) {
     statsDSender.sendCount("http.client.not.ehough.servers.update", 1, toTagsArray(getCommonTags(serviceName, upstreamName, clientDatacenter)));
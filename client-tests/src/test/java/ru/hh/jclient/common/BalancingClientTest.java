@@ -2,6 +2,7 @@ package ru.hh.jclient.common;
 
 import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -189,12 +190,11 @@ public class BalancingClientTest extends BalancingClientTestBase {
         return currentTimeMillis.get();
       }
     };
-    var servers = List.of(server1, server2);
-    when(serverStore.getServers(TEST_UPSTREAM)).thenReturn(servers);
+    when(serverStore.getServers(TEST_UPSTREAM)).thenReturn(List.of(server1));
 
-    int slowStartInterval = 2;
+    int slowStartInterval = 4;
     ApplicationConfig applicationConfig = buildTestConfig();
-    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT).setSlowStartIntervalSec(3);
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT).setSlowStartIntervalSec(slowStartInterval);
     when(configStore.getUpstreamConfig(TEST_UPSTREAM)).thenReturn(ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT));
 
     createHttpClientFactory(List.of(TEST_UPSTREAM));
@@ -208,16 +208,32 @@ public class BalancingClientTest extends BalancingClientTestBase {
     getTestClient().get();
     getTestClient().get();
     getTestClient().get();
-    assertEquals(3, server1.getStatsRequests());
-    assertEquals(0, server2.getStatsRequests());
+    assertEquals(3, Collections.frequency(calledAddresses, server1.getAddress()));
+
     currentTimeMillis.addAndGet(TimeUnit.SECONDS.toMillis(slowStartInterval + 1));
-    getTestClient().get();
-    assertEquals(4, server1.getStatsRequests());
-    assertEquals(server1.getAddress(), calledAddresses.get(calledAddresses.size() - 1));
-    assertEquals(3, server2.getStatsRequests());
-    getTestClient().get();
-    assertEquals(4, server2.getStatsRequests());
-    assertEquals(server2.getAddress(), calledAddresses.get(calledAddresses.size() - 1));
+    when(serverStore.getServers(TEST_UPSTREAM)).thenReturn(List.of(server1, server2));
+    upstreamManager.updateUpstreams(Set.of(TEST_UPSTREAM));
+    // new server starts with a tenth of its weight
+    calledAddresses.clear();
+    for (int i = 0; i < 10; i++) {
+      getTestClient().get();
+    }
+    assertEquals(1, Collections.frequency(calledAddresses, server2.getAddress()));
+
+    currentTimeMillis.addAndGet(TimeUnit.SECONDS.toMillis(slowStartInterval / 2));
+    calledAddresses.clear();
+    for (int i = 0; i < 6; i++) {
+      getTestClient().get();
+    }
+    assertEquals(2, Collections.frequency(calledAddresses, server2.getAddress()));
+
+    // stats of the new server are on par with others after slow start, so it does not get a burst of requests
+    currentTimeMillis.addAndGet(TimeUnit.SECONDS.toMillis(slowStartInterval / 2 + 1));
+    calledAddresses.clear();
+    for (int i = 0; i < 6; i++) {
+      getTestClient().get();
+    }
+    assertEquals(3, Collections.frequency(calledAddresses, server2.getAddress()));
   }
 
   @Test
@@ -17,16 +17,20 @@ import org.asynchttpclient.Request;
 import org.asynchttpclient.Response;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.invocation.InvocationOnMock;
 import ru.hh.jclient.common.HttpClientImpl.CompletionHandler;
 import static ru.hh.jclient.common.HttpHeaderNames.CONTENT_TYPE;
+import static ru.hh.jclient.common.HttpHeaderNames.X_OUTER_TIMEOUT_MS;
 import static ru.hh.jclient.common.TestRequestDebug.Call.FINISHED;
 import static ru.hh.jclient.common.TestRequestDebug.Call.REQUEST;
 import static ru.hh.jclient.common.TestRequestDebug.Call.RESPONSE;
@@ -296,6 +300,42 @@ abstract class BalancingClientTestBase extends HttpClientTestBase {
     assertEquals((int) (customTimeout * multiplier), request[0].getRequestTimeout());
   }
 
+  @Test
+  public void shouldShrinkRequestTimeoutToOuterTimeout() throws Exception {
+    withContext(Map.of(X_OUTER_TIMEOUT_MS, List.of("300")));
+    createHttpClientFactory(List.of(TEST_UPSTREAM));
+
+    Request[] request = new Request[1];
+    when(httpClient.executeRequest(any(Request.class), any(CompletionHandler.class)))
+        .then(iom -> {
+          request[0] = completeWith(200, iom);
+          return null;
+        });
+
+    getTestClient().getWithOuterTimeoutEnforced(1000);
+    assertTrue(request[0].getRequestTimeout() > 0);
+    assertTrue(request[0].getRequestTimeout() <= 300);
+
+    withContext(Map.of(X_OUTER_TIMEOUT_MS, List.of("3000")));
+    getTestClient().getWithOuterTimeoutEnforced(1000);
+    assertRequestTimeoutEquals(request[0], 1000);
+  }
+
+  @Test
+  public void shouldFailFastWhenOuterTimeoutIsExceeded() throws Exception {
+    withContext(Map.of(X_OUTER_TIMEOUT_MS, List.of("1")));
+    createHttpClientFactory(List.of(TEST_UPSTREAM));
+    Thread.sleep(10);
+
+    try {
+      getTestClient().getWithOuterTimeoutEnforced(1000);
+      fail("expected fail fast response");
+    } catch (ExecutionException e) {
+      assertEquals(HttpStatuses.GATEWAY_TIMEOUT, ((ClientResponseException) e.getCause()).getStatusCode());
+    }
+    verify(httpClient, never()).executeRequest(any(Request.class), any(CompletionHandler.class));
+  }
+
   @Test
   public void retry503ForNonIdempotentRequest() throws Exception {
     List<Server> servers = List.of(new Server("server1", 1, null),
@@ -521,6 +561,17 @@ abstract class BalancingClientTestBase extends HttpClientTestBase {
       getWithTimeout(0);
     }
 
+    void getWithOuterTimeoutEnforced(int requestTimeout) throws Exception {
+      ru.hh.jclient.common.Request request = super.get(url("/get")).setRequestTimeout(requestTimeout).build();
+      RequestBalancerBuilder builder = getHttp().with(request)
+          .configureRequestEngine(RequestBalancerBuilder.class)
+          .enforceOuterTimeout();
+      if (adaptive) {
+        builder.makeAdaptive();
+      }
+      builder.backToClient().expectPlainText().result().get();
+    }
+
     void post() throws Exception {
       ru.hh.jclient.common.Request request = post(url("/post")).build();
       HttpClient client = getHttp().with(request);
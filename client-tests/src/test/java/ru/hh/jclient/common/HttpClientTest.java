@@ -145,6 +145,17 @@ public class HttpClientTest extends HttpClientTestBase {
     debug.assertCalled(REQUEST, RESPONSE, RESPONSE_CONVERTED, FINISHED);
   }
 
+  @Test
+  public void testXmlWithContextOfClass() throws InterruptedException, ExecutionException, JAXBException {
+    Request request = new RequestBuilder("GET").setUrl("http://localhost/xml").build();
+    // second response is parsed with pooled unmarshaller
+    for (String name : List.of("test тест1", "test тест2")) {
+      withEmptyContext().okRequest(xmlBytes(new XmlTest(name)), TEXT_XML_UTF_8);
+      XmlTest testOutput = http.with(request).expectXml(XmlTest.class).result().get();
+      assertEquals(name, testOutput.name);
+    }
+  }
+
   @Test(expected = ResponseConverterException.class)
   public void testIncorrectXml() throws Throwable {
     withEmptyContext().okRequest("test тест".getBytes(), TEXT_XML_UTF_8);
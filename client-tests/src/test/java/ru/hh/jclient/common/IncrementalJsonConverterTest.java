@@ -0,0 +1,88 @@
+package ru.hh.jclient.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import ru.hh.jclient.common.HttpClientImpl.CompletionHandler;
+import static ru.hh.jclient.common.HttpHeaderNames.CONTENT_TYPE;
+import ru.hh.jclient.common.model.XmlTest;
+import ru.hh.jclient.common.responseconverter.IncrementalJsonConverter;
+import static ru.hh.jclient.common.util.ContentType.APPLICATION_JSON_UTF_8;
+import ru.hh.jclient.common.util.storage.StorageUtils;
+
+public class IncrementalJsonConverterTest extends HttpClientTestBase {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final IncrementalJsonConverter<XmlTest> converter = new IncrementalJsonConverter<>(objectMapper, XmlTest.class);
+  private final Request request = new RequestBuilder("GET").setUrl("http://localhost/json").build();
+
+  @Test
+  public void bodyPartsShouldBeParsedAsTheyArrive() throws Exception {
+    // parts split multibyte characters
+    Response response = receive(200, "{\"name\":\"test тест\"}".getBytes(StandardCharsets.UTF_8), 1);
+
+    assertTrue(response.getParsedBody().isSuccess());
+    assertEquals("test тест", converter.converterFunction().apply(response).get().get().name);
+  }
+
+  @Test(expected = IOException.class)
+  public void malformedBodyShouldFailConversion() throws Throwable {
+    Response response = receive(200, "{\"name\":".getBytes(StandardCharsets.UTF_8), 3);
+
+    assertNotNull(response.getParsedBody());
+    converter.converterFunction().apply(response);
+  }
+
+  @Test
+  public void bodyOfErrorResponseShouldBeAggregated() throws Exception {
+    Response response = receive(500, "{\"name\":\"test\"}".getBytes(StandardCharsets.UTF_8), 4);
+
+    assertNull(response.getParsedBody());
+  }
+
+  @Test
+  public void aggregatedBodyShouldBeParsedToo() throws ExecutionException, InterruptedException {
+    String responseBody = "{\"name\":\"test тест\"}";
+    Supplier<Request> actualRequest = withEmptyContext().okRequest(responseBody, APPLICATION_JSON_UTF_8);
+
+    XmlTest testOutput = http.with(request).expectIncrementalJson(objectMapper, XmlTest.class).result().get();
+    assertEquals("test тест", testOutput.name);
+    assertEqualRequests(request, actualRequest.get());
+  }
+
+  private Response receive(int statusCode, byte[] body, int partSize) throws Exception {
+    CompletableFuture<ResponseWrapper> promise = new CompletableFuture<>();
+    CompletionHandler handler = new CompletionHandler(promise, request, Instant.now(), List.of(), StorageUtils.build(List.of()).prepare(),
+        Runnable::run, converter);
+
+    HttpResponseStatus status = mock(HttpResponseStatus.class);
+    when(status.getStatusCode()).thenReturn(statusCode);
+    handler.onStatusReceived(status);
+    for (int offset = 0; offset < body.length; offset += partSize) {
+      HttpResponseBodyPart part = mock(HttpResponseBodyPart.class);
+      when(part.getBodyPartBytes()).thenReturn(Arrays.copyOfRange(body, offset, Math.min(body.length, offset + partSize)));
+      handler.onBodyPartReceived(part);
+    }
+
+    org.asynchttpclient.Response response = mock(org.asynchttpclient.Response.class);
+    when(response.getStatusCode()).thenReturn(statusCode);
+    when(response.getHeader(eq(CONTENT_TYPE))).thenReturn(APPLICATION_JSON_UTF_8);
+    handler.onCompleted(response);
+    return promise.get().getResponse();
+  }
+}
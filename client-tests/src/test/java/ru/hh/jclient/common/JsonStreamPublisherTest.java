@@ -0,0 +1,191 @@
+package ru.hh.jclient.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.asynchttpclient.AsyncHandler.State;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import ru.hh.jclient.common.HttpClientImpl.CompletionHandler;
+import static ru.hh.jclient.common.HttpHeaderNames.CONTENT_TYPE;
+import ru.hh.jclient.common.exception.ClientResponseException;
+import ru.hh.jclient.common.exception.ResponseConverterException;
+import ru.hh.jclient.common.model.XmlTest;
+import static ru.hh.jclient.common.util.ContentType.APPLICATION_JSON_UTF_8;
+
+public class JsonStreamPublisherTest extends HttpClientTestBase {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final Request request = new RequestBuilder("GET").setUrl("http://localhost/json").build();
+
+  @Test
+  public void elementsShouldBePublishedAsRequested() {
+    withEmptyContext().okRequest("[{\"name\":\"first\"},{\"name\":\"second\"},{\"name\":\"third\"}]", APPLICATION_JSON_UTF_8);
+
+    TestSubscriber subscriber = new TestSubscriber(1);
+    http.with(request).expectJsonStream(objectMapper, XmlTest.class).subscribe(subscriber);
+    assertEquals(List.of("first"), subscriber.names);
+    assertFalse(subscriber.completed);
+
+    subscriber.subscription.request(5);
+    assertEquals(List.of("first", "second", "third"), subscriber.names);
+    assertTrue(subscriber.completed);
+    assertNull(subscriber.error);
+  }
+
+  @Test
+  public void elementsShouldBePublishedBeforeResponseIsCompleted() throws Exception {
+    TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE);
+    CompletionHandler handler = subscribe(subscriber, mock(Channel.class));
+
+    receive(handler, "[{\"name\":\"first\"},{\"na");
+    assertEquals(List.of("first"), subscriber.names);
+    receive(handler, "me\":\"second\"}]");
+    assertEquals(List.of("first", "second"), subscriber.names);
+    assertFalse(subscriber.completed);
+
+    org.asynchttpclient.Response response = mock(org.asynchttpclient.Response.class);
+    when(response.getStatusCode()).thenReturn(200);
+    when(response.getHeader(eq(CONTENT_TYPE))).thenReturn(APPLICATION_JSON_UTF_8);
+    handler.onCompleted(response);
+    assertTrue(subscriber.completed);
+  }
+
+  @Test
+  public void readsShouldBePausedWhileBufferIsFull() throws Exception {
+    Channel channel = mock(Channel.class);
+    ChannelConfig config = mock(ChannelConfig.class);
+    when(channel.config()).thenReturn(config);
+    TestSubscriber subscriber = new TestSubscriber(1);
+    CompletionHandler handler = subscribe(subscriber, channel);
+
+    String elements = IntStream.rangeClosed(0, JsonStreamPublisher.MAX_BUFFERED_ELEMENTS)
+        .mapToObj(i -> "{\"name\":\"" + i + "\"}")
+        .collect(Collectors.joining(","));
+    receive(handler, "[" + elements + ",");
+    verify(config).setAutoRead(false);
+
+    subscriber.subscription.request(JsonStreamPublisher.MAX_BUFFERED_ELEMENTS / 2 - 1);
+    verify(config, never()).setAutoRead(true);
+    subscriber.subscription.request(1);
+    verify(config).setAutoRead(true);
+  }
+
+  @Test
+  public void cancelShouldAbortRequest() throws Exception {
+    TestSubscriber subscriber = new TestSubscriber(1);
+    CompletionHandler handler = subscribe(subscriber, mock(Channel.class));
+
+    assertEquals(State.CONTINUE, receive(handler, "[{\"name\":\"first\"},"));
+    subscriber.subscription.cancel();
+    assertEquals(State.ABORT, receive(handler, "{\"name\":\"second\"}]"));
+    assertEquals(List.of("first"), subscriber.names);
+  }
+
+  @Test
+  public void notArrayShouldBeError() {
+    withEmptyContext().okRequest("{\"name\":\"first\"}", APPLICATION_JSON_UTF_8);
+
+    TestSubscriber subscriber = new TestSubscriber(1);
+    http.with(request).expectJsonStream(objectMapper, XmlTest.class).subscribe(subscriber);
+    assertTrue(subscriber.names.isEmpty());
+    assertTrue(subscriber.error instanceof ResponseConverterException);
+  }
+
+  @Test
+  public void errorResponseShouldBeError() {
+    withEmptyContext().request("[]", APPLICATION_JSON_UTF_8, 500);
+
+    TestSubscriber subscriber = new TestSubscriber(1);
+    http.with(request).expectJsonStream(objectMapper, XmlTest.class).subscribe(subscriber);
+    assertTrue(subscriber.error instanceof ClientResponseException);
+  }
+
+  @Test
+  public void secondSubscriberShouldGetError() {
+    withEmptyContext().okRequest("[]", APPLICATION_JSON_UTF_8);
+
+    Flow.Publisher<XmlTest> publisher = http.with(request).expectJsonStream(objectMapper, XmlTest.class);
+    TestSubscriber first = new TestSubscriber(1);
+    TestSubscriber second = new TestSubscriber(1);
+    publisher.subscribe(first);
+    publisher.subscribe(second);
+    assertTrue(first.completed);
+    assertTrue(second.error instanceof IllegalStateException);
+  }
+
+  private CompletionHandler subscribe(TestSubscriber subscriber, Channel channel) throws Exception {
+    CompletionHandler[] handler = new CompletionHandler[1];
+    AsyncHttpClient httpClient = mock(AsyncHttpClient.class);
+    when(httpClient.getConfig()).thenReturn(httpClientConfig);
+    when(httpClient.executeRequest(isA(org.asynchttpclient.Request.class), isA(CompletionHandler.class))).then(iom -> {
+      handler[0] = iom.getArgument(1);
+      return null;
+    });
+    withEmptyContext();
+    http = createHttpClientBuilder(httpClient, HttpClientFactoryBuilder.DEFAULT_TIMEOUT_MULTIPLIER);
+    http.with(request).expectJsonStream(objectMapper, XmlTest.class).subscribe(subscriber);
+
+    handler[0].onConnectionPooled(channel);
+    HttpResponseStatus status = mock(HttpResponseStatus.class);
+    when(status.getStatusCode()).thenReturn(200);
+    handler[0].onStatusReceived(status);
+    return handler[0];
+  }
+
+  private static State receive(CompletionHandler handler, String bodyPart) throws Exception {
+    HttpResponseBodyPart part = mock(HttpResponseBodyPart.class);
+    when(part.getBodyPartBytes()).thenReturn(bodyPart.getBytes(StandardCharsets.UTF_8));
+    return handler.onBodyPartReceived(part);
+  }
+
+  private static final class TestSubscriber implements Flow.Subscriber<XmlTest> {
+    private final long initialRequest;
+    private final List<String> names = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private boolean completed;
+    private Throwable error;
+
+    private TestSubscriber(long initialRequest) {
+      this.initialRequest = initialRequest;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(initialRequest);
+    }
+
+    @Override
+    public void onNext(XmlTest item) {
+      names.add(item.name);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
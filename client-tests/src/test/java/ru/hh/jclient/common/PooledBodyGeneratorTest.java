@@ -0,0 +1,137 @@
+package ru.hh.jclient.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import ru.hh.jclient.common.exception.RequestConverterException;
+
+public class PooledBodyGeneratorTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final List<ByteBuf> allocated = new ArrayList<>();
+  private final UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(false) {
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+      ByteBuf buffer = super.newDirectBuffer(initialCapacity, maxCapacity);
+      allocated.add(buffer);
+      return buffer;
+    }
+  };
+
+  @Test
+  public void everyTryShouldWriteWholeBody() throws IOException {
+    Map<String, String> bodyObject = Map.of("text", String.join("", Collections.nCopies(PooledBodyGenerator.CHUNK_SIZE, "ab")));
+    Request request = new RequestBuilder("POST").setUrl("http://localhost/json").setStreamingJsonBody(MAPPER, bodyObject).build();
+    BodyGenerator generator = request.getDelegate().getBodyGenerator();
+    byte[] expected = MAPPER.writeValueAsBytes(bodyObject);
+
+    assertEquals("application/json", request.getHeaders().get(HttpHeaderNames.CONTENT_TYPE));
+    assertArrayEquals(expected, readAll(generator.createBody()));
+    assertArrayEquals(expected, readAll(generator.createBody()));
+  }
+
+  @Test
+  public void bodyShouldBeSerializedOnceForAllTries() throws IOException {
+    byte[] bytes = new byte[PooledBodyGenerator.CHUNK_SIZE * 2 + 1];
+    AtomicInteger writes = new AtomicInteger();
+    PooledBodyGenerator generator = new PooledBodyGenerator(out -> {
+      writes.incrementAndGet();
+      out.write(bytes);
+    }, allocator);
+    assertEquals(1, writes.get());
+    assertEquals(3, allocated.size());
+
+    Body first = generator.createBody();
+    Body second = generator.createBody();
+    assertEquals(bytes.length, first.getContentLength());
+    assertArrayEquals(bytes, readAll(first));
+    assertArrayEquals(bytes, readAll(second));
+    assertEquals(1, writes.get());
+    assertEquals(3, allocated.size());
+    generator.release();
+  }
+
+  @Test
+  public void buffersShouldBeReleasedWhenWriteIsAbortedAndGeneratorIsReleased() throws IOException {
+    byte[] bytes = new byte[PooledBodyGenerator.CHUNK_SIZE * 3];
+    PooledBodyGenerator generator = new PooledBodyGenerator(out -> out.write(bytes), allocator);
+    Body body = generator.createBody();
+
+    ByteBuf target = Unpooled.buffer(PooledBodyGenerator.CHUNK_SIZE + 1);
+    assertEquals(Body.BodyState.CONTINUE, body.transferTo(target));
+    assertEquals(3, allocated.size());
+    // the first chunk is written, the rest are held by this try and by the generator
+    assertEquals(1, allocated.get(0).refCnt());
+    assertEquals(2, allocated.get(1).refCnt());
+
+    body.close();
+    allocated.forEach(buffer -> assertEquals(1, buffer.refCnt()));
+    generator.release();
+    allocated.forEach(buffer -> assertEquals(0, buffer.refCnt()));
+  }
+
+  @Test
+  public void bodyShouldFailIfTransferStartsAfterRelease() throws IOException {
+    PooledBodyGenerator generator = new PooledBodyGenerator(out -> out.write(new byte[10]), allocator);
+    Body body = generator.createBody();
+    generator.release();
+    allocated.forEach(buffer -> assertEquals(0, buffer.refCnt()));
+    try {
+      body.transferTo(Unpooled.buffer(100));
+      fail();
+    } catch (IOException e) {
+      body.close();
+    }
+    generator.release();
+  }
+
+  @Test
+  public void buffersShouldBeReleasedOnConversionError() throws IOException {
+    try {
+      new PooledBodyGenerator(out -> {
+        out.write(new byte[PooledBodyGenerator.CHUNK_SIZE + 1]);
+        throw new RequestConverterException("failed");
+      }, allocator);
+      fail();
+    } catch (RequestConverterException e) {
+      assertEquals(2, allocated.size());
+      allocated.forEach(buffer -> assertEquals(0, buffer.refCnt()));
+    }
+  }
+
+  @Test(expected = RequestConverterException.class)
+  public void conversionErrorShouldBeThrownWhenBodyIsSet() {
+    new RequestBuilder("POST").setUrl("http://localhost/json").setStreamingBody(out -> {
+      throw new IOException("failed");
+    }, "application/json");
+  }
+
+  private static byte[] readAll(Body body) throws IOException {
+    ByteBuf result = Unpooled.buffer();
+    Body.BodyState state;
+    do {
+      ByteBuf target = Unpooled.buffer(1000);
+      state = body.transferTo(target);
+      result.writeBytes(target);
+    } while (state == Body.BodyState.CONTINUE);
+    body.close();
+    assertTrue(result.isReadable());
+    byte[] bytes = new byte[result.readableBytes()];
+    result.readBytes(bytes);
+    return bytes;
+  }
+}
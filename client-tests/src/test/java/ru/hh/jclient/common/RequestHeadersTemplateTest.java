@@ -0,0 +1,58 @@
+package ru.hh.jclient.common;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static ru.hh.jclient.common.HttpHeaderNames.X_HH_DEBUG;
+import static ru.hh.jclient.common.HttpHeaderNames.X_REQUEST_ID;
+
+public class RequestHeadersTemplateTest {
+  private static final Optional<Collection<String>> JSON = Optional.of(List.of("application/json"));
+  private static final Optional<Collection<String>> JSON_AND_XML = Optional.of(List.of("application/json", "application/xml"));
+
+  private final HttpClientContext context = new HttpClientContext(
+      Map.of("x-request-id", List.of("123"), X_HH_DEBUG, List.of("true"), "X-Custom", List.of("value")), Map.of(), List.of()
+  );
+
+  @Test
+  public void shouldPassThroughOnlyKnownHeaders() {
+    RequestHeadersTemplate template = context.getHeadersTemplate(new RequestHeadersTemplate.Key(false, true, JSON, Optional.empty()));
+    assertEquals("123", template.getPassThroughHeaders().get(X_REQUEST_ID));
+    assertEquals("true", template.getPassThroughHeaders().get(X_HH_DEBUG));
+    assertFalse(template.getPassThroughHeaders().contains("X-Custom"));
+    assertEquals("application/json", template.getAccept());
+    assertNull(template.getAcceptErrors());
+  }
+
+  @Test
+  public void shouldNotPassThroughDebugHeaderIfDebugIsDisabled() {
+    RequestHeadersTemplate template = context.getHeadersTemplate(new RequestHeadersTemplate.Key(false, false, JSON, Optional.empty()));
+    assertTrue(template.getPassThroughHeaders().contains(X_REQUEST_ID));
+    assertFalse(template.getPassThroughHeaders().contains(X_HH_DEBUG));
+  }
+
+  @Test
+  public void shouldNotPassThroughHeadersToExternalRequest() {
+    RequestHeadersTemplate template = context.getHeadersTemplate(new RequestHeadersTemplate.Key(true, false, JSON, JSON));
+    assertTrue(template.getPassThroughHeaders().isEmpty());
+    assertEquals("application/json", template.getAcceptErrors());
+  }
+
+  @Test
+  public void templateShouldBeSharedByRequestsWithSameExpectations() {
+    RequestHeadersTemplate template = context.getHeadersTemplate(new RequestHeadersTemplate.Key(false, false, JSON_AND_XML, JSON));
+    assertEquals("application/json,application/xml", template.getAccept());
+    assertFalse(template.areMediaTypesCompatible());
+
+    assertSame(template, context.getHeadersTemplate(
+        new RequestHeadersTemplate.Key(false, false, Optional.of(List.of("application/json", "application/xml")), JSON)
+    ));
+  }
+}
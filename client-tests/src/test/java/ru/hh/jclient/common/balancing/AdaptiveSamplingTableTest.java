@@ -0,0 +1,71 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.HashSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class AdaptiveSamplingTableTest {
+  private static final int PICKS = 100_000;
+
+  @Test
+  public void shouldPickProportionallyToScores() {
+    long[] scores = {1, 2, 3, 4};
+    AdaptiveSamplingTable<Integer> table = AdaptiveSamplingTable.of(new Integer[] {0, 1, 2, 3}, scores, 0);
+
+    int[] picks = new int[scores.length];
+    for (int i = 0; i < PICKS; i++) {
+      picks[table.sample(1).get(0)]++;
+    }
+
+    for (int i = 0; i < scores.length; i++) {
+      assertEquals(scores[i] / 10d, (double) picks[i] / PICKS, 0.01);
+    }
+  }
+
+  @Test
+  public void shouldPickDistinctItems() {
+    AdaptiveSamplingTable<String> table = AdaptiveSamplingTable.of(new String[] {"a", "b", "c"}, new long[] {1_000_000, 1, 1}, 0);
+
+    for (int i = 0; i < 1_000; i++) {
+      List<String> picked = table.sample(5);
+      assertEquals(3, picked.size());
+      assertEquals(3, new HashSet<>(picked).size());
+    }
+  }
+
+  @Test
+  public void secondPickShouldFollowRemainingScores() {
+    AdaptiveSamplingTable<Integer> table = AdaptiveSamplingTable.of(new Integer[] {0, 1, 2}, new long[] {2, 1, 1}, 0);
+
+    int secondIsOne = 0;
+    int firstIsZero = 0;
+    for (int i = 0; i < PICKS; i++) {
+      List<Integer> picked = table.sample(2);
+      if (picked.get(0) == 0) {
+        firstIsZero++;
+        if (picked.get(1) == 1) {
+          secondIsOne++;
+        }
+      }
+    }
+
+    assertEquals(0.5, (double) firstIsZero / PICKS, 0.01);
+    assertEquals(0.5, (double) secondIsOne / firstIsZero, 0.02);
+  }
+
+  @Test
+  public void upstreamShouldSampleAllowedServers() {
+    List<Server> servers = List.of(new Server("a", 1, "DC1"), new Server("b", 1, "DC2"), new Server("c", 1, "DC1"));
+    Upstream upstream = new Upstream("backend", UpstreamConfigs.getDefaultConfig(), servers, "DC1", false, true);
+
+    for (int i = 0; i < 1_000; i++) {
+      List<ServerEntry> entries = upstream.acquireAdaptiveServers(UpstreamConfig.DEFAULT);
+      assertEquals(2, entries.size());
+      for (ServerEntry entry : entries) {
+        assertEquals("DC1", entry.getDatacenter());
+        assertEquals(servers.get(entry.getIndex()).getAddress(), entry.getAddress());
+      }
+    }
+  }
+}
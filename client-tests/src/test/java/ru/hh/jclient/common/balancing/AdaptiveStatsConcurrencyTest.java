@@ -0,0 +1,87 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class AdaptiveStatsConcurrencyTest {
+  private static final int THREADS = 8;
+  private static final int EVENTS_PER_THREAD = 100_000;
+  private static final int WINDOW = 100;
+
+  @Test
+  public void downtimeDetectorShouldCountWindowUnderContention() throws InterruptedException {
+    DowntimeDetector detector = new DowntimeDetector(WINDOW);
+    assertEquals(WINDOW, detector.successCount());
+
+    runConcurrently(i -> {
+      if (i % 2 == 0) {
+        detector.failed();
+      } else {
+        detector.success();
+      }
+    });
+    int successCount = detector.successCount();
+    assertTrue("successCount=" + successCount, successCount >= 0 && successCount <= WINDOW);
+
+    runConcurrently(i -> detector.failed());
+    assertEquals(0, detector.successCount());
+
+    runConcurrently(i -> detector.success());
+    assertEquals(WINDOW, detector.successCount());
+  }
+
+  @Test
+  public void responseTimeTrackerShouldKeepTotalConsistentUnderContention() throws InterruptedException {
+    ResponseTimeTracker tracker = new ResponseTimeTracker(WINDOW);
+
+    runConcurrently(i -> tracker.time(i % 1_000));
+    long mean = tracker.mean();
+    assertTrue("mean=" + mean, mean >= 0 && mean < 1_000);
+    assertFalse(tracker.isWarmUp());
+
+    runConcurrently(i -> tracker.time(500));
+    assertEquals(500, tracker.mean());
+  }
+
+  @Test
+  public void responseTimeTrackerShouldWarmUpAfterWindowIsFilled() {
+    ResponseTimeTracker tracker = new ResponseTimeTracker(WINDOW);
+    for (int i = 0; i < WINDOW - 1; i++) {
+      tracker.time(10);
+      assertTrue(tracker.isWarmUp());
+    }
+    tracker.time(10);
+
+    assertFalse(tracker.isWarmUp());
+    assertEquals(10, tracker.mean());
+  }
+
+  private static void runConcurrently(IntConsumer event) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>(THREADS);
+    for (int t = 0; t < THREADS; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+          event.accept(i);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+}
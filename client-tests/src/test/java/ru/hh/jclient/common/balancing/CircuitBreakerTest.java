@@ -0,0 +1,208 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+import ru.hh.jclient.common.balancing.config.ApplicationConfig;
+import static ru.hh.jclient.common.balancing.config.ApplicationConfigTest.buildTestConfig;
+
+public class CircuitBreakerTest {
+  private static final float OPEN_INTERVAL_SEC = 5;
+
+  private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+  private Clock clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
+  @Test
+  public void shouldOpenAfterConsecutiveFails() {
+    CircuitBreaker.Settings settings = settings(3, null);
+    fail(settings, 1);
+    fail(settings, 2);
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    fail(settings, 3);
+
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.isAvailable(clock));
+    assertEquals(CircuitBreaker.REJECTED, circuitBreaker.acquire(clock));
+
+    passTime(OPEN_INTERVAL_SEC - 1);
+    assertFalse(circuitBreaker.isAvailable(clock));
+  }
+
+  @Test
+  public void shouldOpenOnErrorRatio() {
+    CircuitBreaker.Settings settings = settings(null, 50);
+    for (int i = 0; i < CircuitBreaker.MIN_REQUESTS / 2 - 1; i++) {
+      succeed(settings);
+      fail(settings, 1);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    succeed(settings);
+    fail(settings, 1);
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+  }
+
+  @Test
+  public void shouldNotOpenOnLowErrorRatio() {
+    CircuitBreaker.Settings settings = settings(null, 50);
+    for (int i = 0; i < 1_000; i++) {
+      succeed(settings);
+      succeed(settings);
+      fail(settings, 1);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  public void shouldAdmitLimitedProbesWhenHalfOpen() {
+    CircuitBreaker.Settings settings = settings(1, null);
+    fail(settings, 1);
+    passTime(OPEN_INTERVAL_SEC);
+
+    assertTrue(circuitBreaker.isAvailable(clock));
+    long[] probes = new long[CircuitBreaker.MAX_PROBES];
+    for (int i = 0; i < CircuitBreaker.MAX_PROBES; i++) {
+      probes[i] = circuitBreaker.acquire(clock);
+      assertTrue(probes[i] > CircuitBreaker.NOT_PROBE);
+    }
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertFalse(circuitBreaker.isAvailable(clock));
+    assertEquals(CircuitBreaker.REJECTED, circuitBreaker.acquire(clock));
+
+    for (long probe : probes) {
+      circuitBreaker.onResult(false, probe, 0, settings, clock);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    assertEquals(CircuitBreaker.NOT_PROBE, circuitBreaker.acquire(clock));
+  }
+
+  @Test
+  public void failedProbeShouldOpenAgain() {
+    CircuitBreaker.Settings settings = settings(1, null);
+    fail(settings, 1);
+    passTime(OPEN_INTERVAL_SEC);
+    long probe = circuitBreaker.acquire(clock);
+
+    circuitBreaker.onResult(true, probe, 2, settings, clock);
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertEquals(CircuitBreaker.REJECTED, circuitBreaker.acquire(clock));
+    passTime(OPEN_INTERVAL_SEC);
+    assertTrue(circuitBreaker.acquire(clock) > CircuitBreaker.NOT_PROBE);
+  }
+
+  @Test
+  public void onlyProbesShouldDriveHalfOpenBreaker() {
+    CircuitBreaker.Settings settings = settings(1, null);
+    fail(settings, 1);
+    passTime(OPEN_INTERVAL_SEC);
+    long probe = circuitBreaker.acquire(clock);
+
+    // responses to requests sent before the breaker was opened
+    for (int i = 0; i < CircuitBreaker.MAX_PROBES; i++) {
+      succeed(settings);
+    }
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    for (int i = 1; i < CircuitBreaker.MAX_PROBES; i++) {
+      assertTrue(circuitBreaker.acquire(clock) > CircuitBreaker.NOT_PROBE);
+    }
+    assertEquals(CircuitBreaker.REJECTED, circuitBreaker.acquire(clock));
+
+    circuitBreaker.onCancel(probe);
+    assertTrue(circuitBreaker.isAvailable(clock));
+  }
+
+  @Test
+  public void probeOfPreviousHalfOpenPeriodShouldBeIgnored() {
+    CircuitBreaker.Settings settings = settings(1, null);
+    fail(settings, 1);
+    passTime(OPEN_INTERVAL_SEC);
+    long stale = circuitBreaker.acquire(clock);
+    circuitBreaker.onResult(true, circuitBreaker.acquire(clock), 2, settings, clock);
+    passTime(OPEN_INTERVAL_SEC);
+    long probe = circuitBreaker.acquire(clock);
+
+    circuitBreaker.onResult(false, stale, 0, settings, clock);
+    for (int i = 1; i < CircuitBreaker.MAX_PROBES; i++) {
+      circuitBreaker.onResult(false, circuitBreaker.acquire(clock), 0, settings, clock);
+    }
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    circuitBreaker.onResult(false, probe, 0, settings, clock);
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  public void disabledBreakerShouldNotOpen() {
+    CircuitBreaker.Settings settings = settings(null, null);
+    for (int i = 1; i <= 100; i++) {
+      fail(settings, i);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  public void upstreamShouldSkipServerWithOpenBreaker() {
+    List<Server> servers = List.of(new Server("a", 1, null), new Server("b", 1, null));
+    Upstream upstream = new Upstream("backend", buildConfigs(1, null), servers, null, false, true);
+
+    ServerEntry server = upstream.acquireServer();
+    upstream.releaseServer(server.getIndex(), false, true, 100);
+    assertEquals(CircuitBreaker.State.OPEN, servers.get(server.getIndex()).getCircuitBreaker().getState());
+
+    for (int i = 0; i < 10; i++) {
+      ServerEntry next = upstream.acquireServer(new BitSet());
+      assertEquals(1 - server.getIndex(), next.getIndex());
+      upstream.releaseServer(next.getIndex(), false, false, 100);
+    }
+
+  }
+
+  @Test
+  public void upstreamShouldIgnoreBreakersIfAllAreOpen() {
+    List<Server> servers = List.of(new Server("a", 1, null), new Server("b", 1, null));
+    Upstream upstream = new Upstream("backend", buildConfigs(1, null), servers, null, false, true);
+    for (int i = 0; i < servers.size(); i++) {
+      ServerEntry server = upstream.acquireServer(new BitSet());
+      upstream.releaseServer(server.getIndex(), false, true, 100);
+    }
+    servers.forEach(server -> assertEquals(CircuitBreaker.State.OPEN, server.getCircuitBreaker().getState()));
+
+    ServerEntry server = upstream.acquireServer();
+    assertNotNull(server);
+    assertEquals(CircuitBreaker.NOT_PROBE, server.getProbe());
+    upstream.releaseServer(server, false, false, 100, false);
+    assertEquals(CircuitBreaker.State.OPEN, servers.get(server.getIndex()).getCircuitBreaker().getState());
+  }
+
+  private void fail(CircuitBreaker.Settings settings, int consecutiveFails) {
+    circuitBreaker.onResult(true, CircuitBreaker.NOT_PROBE, consecutiveFails, settings, clock);
+  }
+
+  private void succeed(CircuitBreaker.Settings settings) {
+    circuitBreaker.onResult(false, CircuitBreaker.NOT_PROBE, 0, settings, clock);
+  }
+
+  private void passTime(float seconds) {
+    clock = Clock.offset(clock, Duration.ofMillis((long) (seconds * 1000)));
+  }
+
+  private static CircuitBreaker.Settings settings(Integer consecutiveFails, Integer errorPercent) {
+    return CircuitBreaker.Settings.of(buildConfigs(consecutiveFails, errorPercent).get(DEFAULT).get());
+  }
+
+  private static UpstreamConfigs buildConfigs(Integer consecutiveFails, Integer errorPercent) {
+    ApplicationConfig applicationConfig = buildTestConfig();
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT)
+      .setCircuitBreakerConsecutiveFails(consecutiveFails)
+      .setCircuitBreakerErrorPercent(errorPercent)
+      .setCircuitBreakerOpenIntervalSec(OPEN_INTERVAL_SEC);
+    return ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT);
+  }
+}
@@ -0,0 +1,118 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+import ru.hh.jclient.common.balancing.config.ApplicationConfig;
+import static ru.hh.jclient.common.balancing.config.ApplicationConfigTest.buildTestConfig;
+
+public class ConcurrencyLimiterTest {
+  private static final long RESPONSE_TIME_MICROS = 10_000;
+
+  private final AtomicLong nanoTime = new AtomicLong();
+  private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(nanoTime::get);
+
+  @Test
+  public void shouldRejectOverLimit() {
+    limiter.configure(100);
+    for (int i = 0; i < ConcurrencyLimiter.INITIAL_LIMIT; i++) {
+      assertTrue(limiter.tryAcquire());
+    }
+    assertFalse(limiter.tryAcquire());
+
+    limiter.release();
+    assertTrue(limiter.tryAcquire());
+  }
+
+  @Test
+  public void shouldGrowWhileLimitIsUsed() {
+    limiter.configure(100);
+    for (int i = 0; i < 1_000; i++) {
+      fillAndRelease(RESPONSE_TIME_MICROS, false);
+    }
+    assertEquals(100, limiter.getLimit());
+  }
+
+  @Test
+  public void shouldNotGrowWhenLimitIsNotUsed() {
+    limiter.configure(100);
+    for (int i = 0; i < 1_000; i++) {
+      assertTrue(limiter.tryAcquire());
+      limiter.release(RESPONSE_TIME_MICROS, false);
+    }
+    assertEquals(ConcurrencyLimiter.INITIAL_LIMIT, limiter.getLimit());
+  }
+
+  @Test
+  public void shouldBackOffOnErrorsOncePerResponseTime() {
+    limiter.configure(100);
+    fillAndRelease(RESPONSE_TIME_MICROS, false);
+    int limit = limiter.getLimit();
+
+    nanoTime.addAndGet(TimeUnit.MICROSECONDS.toNanos(RESPONSE_TIME_MICROS));
+    fillAndRelease(RESPONSE_TIME_MICROS, true);
+    assertEquals((int) (limit * ConcurrencyLimiter.BACKOFF_RATIO), limiter.getLimit());
+
+    nanoTime.addAndGet(TimeUnit.MICROSECONDS.toNanos(RESPONSE_TIME_MICROS));
+    fillAndRelease(RESPONSE_TIME_MICROS, true);
+    assertEquals((int) (limit * ConcurrencyLimiter.BACKOFF_RATIO * ConcurrencyLimiter.BACKOFF_RATIO), limiter.getLimit());
+  }
+
+  @Test
+  public void shouldBackOffOnSlowResponses() {
+    limiter.configure(100);
+    for (int i = 0; i < 100; i++) {
+      fillAndRelease(RESPONSE_TIME_MICROS, false);
+    }
+    int limit = limiter.getLimit();
+    for (int i = 0; i < 5; i++) {
+      nanoTime.addAndGet(TimeUnit.MICROSECONDS.toNanos(RESPONSE_TIME_MICROS * 3));
+      fillAndRelease((long) (RESPONSE_TIME_MICROS * ConcurrencyLimiter.LATENCY_TOLERANCE * 1.5), false);
+    }
+    assertTrue(limiter.getLimit() <= (int) (limit * Math.pow(ConcurrencyLimiter.BACKOFF_RATIO, 5)) + 1);
+  }
+
+  @Test
+  public void shouldNotExceedMaxLimit() {
+    limiter.configure(10);
+    assertEquals(10, limiter.getLimit());
+    for (int i = 0; i < 1_000; i++) {
+      fillAndRelease(RESPONSE_TIME_MICROS, false);
+    }
+    assertEquals(10, limiter.getLimit());
+  }
+
+  @Test
+  public void shouldReportChangedLimitOnce() {
+    assertTrue(limiter.claimReport(20));
+    assertFalse(limiter.claimReport(20));
+    assertTrue(limiter.claimReport(21));
+  }
+
+  @Test
+  public void upstreamShouldConfigureLimiterFromDefaultProfile() {
+    ApplicationConfig applicationConfig = buildTestConfig();
+    Upstream upstream = new Upstream("backend", ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT), List.of(),
+      null, false, true);
+    assertFalse(upstream.getConcurrencyLimiter().isEnabled());
+
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT).setMaxConcurrentRequests(50);
+    upstream.updateConfig(ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT), List.of());
+    assertTrue(upstream.getConcurrencyLimiter().isEnabled());
+  }
+
+  private void fillAndRelease(long responseTimeMicros, boolean isError) {
+    int acquired = 0;
+    while (limiter.tryAcquire()) {
+      acquired++;
+    }
+    for (int i = 0; i < acquired; i++) {
+      limiter.release(responseTimeMicros, isError);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+
+public class ConsistentHashBalancingStrategyTest {
+  private static final String DATACENTER = "DC1";
+  private static final int KEYS = 10_000;
+
+  @Test
+  public void shouldSendSameKeyToSameServer() {
+    Upstream upstream = createUpstream(buildServers(1, 1, 1, 1));
+    for (int key = 0; key < 100; key++) {
+      String address = acquireAndRelease(upstream, "key" + key).getAddress();
+      for (int i = 0; i < 10; i++) {
+        assertEquals(address, acquireAndRelease(upstream, "key" + key).getAddress());
+      }
+    }
+  }
+
+  @Test
+  public void shouldSpreadKeysByWeight() {
+    List<Server> servers = buildServers(1, 3);
+    Upstream upstream = createUpstream(servers);
+    int heavy = 0;
+    for (int key = 0; key < KEYS; key++) {
+      if (acquireAndRelease(upstream, "key" + key).getIndex() == 1) {
+        heavy++;
+      }
+    }
+    assertEquals(0.75, (double) heavy / KEYS, 0.1);
+  }
+
+  @Test
+  public void shouldMoveOnlyKeysOfRemovedServer() {
+    List<Server> servers = buildServers(1, 1, 1, 1);
+    Upstream upstream = createUpstream(servers);
+    List<String> before = new ArrayList<>();
+    for (int key = 0; key < KEYS; key++) {
+      before.add(acquireAndRelease(upstream, "key" + key).getAddress());
+    }
+
+    upstream.updateConfig(UpstreamConfigs.getDefaultConfig(), List.of(servers.get(3), servers.get(0), servers.get(2)));
+    int moved = 0;
+    for (int key = 0; key < KEYS; key++) {
+      String address = acquireAndRelease(upstream, "key" + key).getAddress();
+      if (before.get(key).equals("s1")) {
+        assertNotEquals("s1", address);
+      } else if (!before.get(key).equals(address)) {
+        moved++;
+      }
+    }
+    assertEquals(0, moved);
+  }
+
+  @Test
+  public void updatedRingShouldMatchBuiltFromScratch() {
+    List<Server> servers = buildServers(1, 2, 3);
+    ConsistentHashRing ring = ConsistentHashRing.of(servers);
+    servers.get(1).setWeight(5);
+    List<Server> newServers = List.of(servers.get(2), servers.get(1), new Server("s9", 1, DATACENTER));
+
+    ConsistentHashRing updated = ring.update(newServers);
+    ConsistentHashRing built = ConsistentHashRing.of(newServers);
+    assertEquals(built.size(), updated.size());
+    for (int key = 0; key < KEYS; key++) {
+      long hash = ConsistentHashRing.hash("key" + key);
+      assertEquals(built.getServerIndex(built.getPosition(hash)), updated.getServerIndex(updated.getPosition(hash)));
+    }
+  }
+
+  @Test
+  public void shouldBoundLoadOfHotKey() {
+    List<Server> servers = buildServers(1, 1, 1, 1);
+    Upstream upstream = createUpstream(servers);
+    int requests = 40;
+    for (int i = 0; i < requests; i++) {
+      upstream.acquireServer(DEFAULT, null, new BitSet(), "hot");
+    }
+    long capacity = (long) Math.ceil(ConsistentHashBalancingStrategy.LOAD_FACTOR * requests / servers.size());
+    for (Server server : servers) {
+      assertTrue(server + " is overloaded", server.getRequests() <= capacity);
+    }
+  }
+
+  @Test
+  public void shouldPickAnotherServerForRetry() {
+    Upstream upstream = createUpstream(buildServers(1, 1, 1));
+    ServerEntry first = acquireAndRelease(upstream, "key");
+    BitSet excludedServers = new BitSet();
+    excludedServers.set(first.getIndex());
+
+    ServerEntry retry = upstream.acquireServer(DEFAULT, null, excludedServers, "key");
+    assertNotEquals(first.getIndex(), retry.getIndex());
+  }
+
+  @Test
+  public void shouldPreferCurrentDatacenter() {
+    List<Server> servers = List.of(new Server("s0", 1, "DC2"), new Server("s1", 1, DATACENTER), new Server("s2", 1, "DC2"));
+    Upstream upstream = new Upstream("backend", UpstreamConfigs.getDefaultConfig(), servers, DATACENTER, true, true);
+    for (int key = 0; key < 100; key++) {
+      assertEquals(DATACENTER, acquireAndRelease(upstream, "key" + key).getDatacenter());
+    }
+  }
+
+  private static ServerEntry acquireAndRelease(Upstream upstream, String routingKey) {
+    ServerEntry serverEntry = upstream.acquireServer(DEFAULT, null, new BitSet(), routingKey);
+    upstream.releaseServer(serverEntry.getIndex(), false, false, 100);
+    return serverEntry;
+  }
+
+  private static Upstream createUpstream(List<Server> servers) {
+    return new Upstream("backend", UpstreamConfigs.getDefaultConfig(), servers, DATACENTER, false, true);
+  }
+
+  private static List<Server> buildServers(int... weights) {
+    List<Server> servers = new ArrayList<>();
+    for (int i = 0; i < weights.length; i++) {
+      servers.add(new Server("s" + i, weights[i], DATACENTER));
+    }
+    return servers;
+  }
+}
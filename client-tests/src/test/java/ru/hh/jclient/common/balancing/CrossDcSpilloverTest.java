@@ -0,0 +1,128 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.BitSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+import ru.hh.jclient.common.balancing.config.ApplicationConfig;
+import static ru.hh.jclient.common.balancing.config.ApplicationConfigTest.buildTestConfig;
+
+public class CrossDcSpilloverTest {
+  private static final String DATACENTER = "DC1";
+  private static final String REMOTE_DATACENTER = "DC2";
+  private static final int PICKS = 1_000;
+
+  private final Clock clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
+  @Test
+  public void shouldNotSpillWhileCapacityIsAboveThreshold() {
+    List<Server> servers = buildServers();
+    servers.get(0).release(false, true);
+
+    assertEquals(0, CrossDcSpillover.computeFraction(snapshot(servers), 50, clock), 0);
+    assertEquals(0, CrossDcSpillover.computeFraction(snapshot(servers), 0, clock), 0);
+  }
+
+  @Test
+  public void shouldSpillProportionallyToLostCapacity() {
+    List<Server> servers = buildServers();
+    servers.get(0).release(false, true);
+
+    assertEquals(0.5, CrossDcSpillover.computeFraction(snapshot(servers), 100, clock), 0.001);
+    assertEquals(0.375, CrossDcSpillover.computeFraction(snapshot(servers), 80, clock), 0.001);
+
+    servers.get(1).release(false, true);
+    assertEquals(1, CrossDcSpillover.computeFraction(snapshot(servers), 80, clock), 0);
+  }
+
+  @Test
+  public void shouldNotSpillWithoutRemoteServers() {
+    List<Server> servers = List.of(new Server("a", 1, DATACENTER));
+    servers.get(0).release(false, true);
+
+    assertEquals(0, CrossDcSpillover.computeFraction(snapshot(servers), 100, clock), 0);
+  }
+
+  @Test
+  public void upstreamShouldKeepRequestsInLocalDatacenter() {
+    Upstream upstream = createUpstream(buildServers(), 100);
+    for (int i = 0; i < PICKS; i++) {
+      assertEquals(DATACENTER, acquireAndRelease(upstream).getDatacenter());
+    }
+  }
+
+  @Test
+  public void upstreamShouldSpillToRemoteDatacenter() {
+    List<Server> servers = buildServers();
+    servers.get(0).release(false, true);
+    servers.get(1).release(false, true);
+    Upstream upstream = createUpstream(servers, 100);
+
+    for (int i = 0; i < PICKS; i++) {
+      assertEquals(REMOTE_DATACENTER, acquireAndRelease(upstream).getDatacenter());
+    }
+    assertEquals(100, upstream.getCrossDcSpillover().getPercent());
+  }
+
+  @Test
+  public void upstreamShouldFallbackToLocalServersWhenRemoteAreExcluded() {
+    List<Server> servers = buildServers();
+    Upstream upstream = createUpstream(servers, 100);
+    servers.get(0).release(false, true);
+    servers.get(1).release(false, true);
+
+    BitSet excludedServers = new BitSet();
+    excludedServers.set(2);
+    ServerEntry serverEntry = upstream.acquireServer(excludedServers);
+    assertEquals(DATACENTER, serverEntry.getDatacenter());
+  }
+
+  @Test
+  public void upstreamShouldNotSpillIfCrossDcRequestsAreNotAllowed() {
+    List<Server> servers = buildServers();
+    servers.get(0).release(false, true);
+    servers.get(1).release(false, true);
+    ApplicationConfig applicationConfig = buildTestConfig();
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT).setCrossDcSpilloverPercent(100);
+    Upstream upstream = new Upstream("backend", ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT), servers,
+        DATACENTER, false, true, clock);
+
+    assertFalse(upstream.getCrossDcSpillover().isEnabled());
+    assertEquals(DATACENTER, acquireAndRelease(upstream).getDatacenter());
+  }
+
+  @Test
+  public void shouldReportPercentOnce() {
+    CrossDcSpillover spillover = new CrossDcSpillover();
+    assertFalse(spillover.claimReport(0));
+    assertTrue(spillover.claimReport(50));
+    assertFalse(spillover.claimReport(50));
+    assertTrue(spillover.claimReport(0));
+  }
+
+  private Upstream createUpstream(List<Server> servers, int spilloverPercent) {
+    ApplicationConfig applicationConfig = buildTestConfig();
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT).setCrossDcSpilloverPercent(spilloverPercent);
+    return new Upstream("backend", ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT), servers, DATACENTER, true, true, clock);
+  }
+
+  private static ServerEntry acquireAndRelease(Upstream upstream) {
+    ServerEntry serverEntry = upstream.acquireServer();
+    upstream.releaseServer(serverEntry.getIndex(), false, false, 100);
+    return serverEntry;
+  }
+
+  private static UpstreamSnapshot snapshot(List<Server> servers) {
+    return UpstreamSnapshot.of(servers, UpstreamConfigs.getDefaultConfig(), DATACENTER, true);
+  }
+
+  private static List<Server> buildServers() {
+    return List.of(new Server("a", 1, DATACENTER), new Server("b", 1, DATACENTER), new Server("c", 1, REMOTE_DATACENTER));
+  }
+}
@@ -0,0 +1,318 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import ru.hh.jclient.common.ResponseWrapper;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+
+public class HedgingTest {
+  private static final long TIMEOUT_MS = 5_000;
+
+  @Test
+  public void budgetShouldAllowShareOfRequests() {
+    HedgeBudget budget = new HedgeBudget(0.1);
+    assertFalse(budget.tryAcquire());
+    for (int i = 0; i < 100; i++) {
+      budget.deposit();
+    }
+    int hedges = 0;
+    while (budget.tryAcquire()) {
+      hedges++;
+    }
+    assertEquals(10, hedges);
+  }
+
+  @Test
+  public void budgetShouldBeCapped() {
+    HedgeBudget budget = new HedgeBudget(0.1);
+    for (int i = 0; i < 10_000; i++) {
+      budget.deposit();
+    }
+    int hedges = 0;
+    while (budget.tryAcquire()) {
+      hedges++;
+    }
+    assertEquals(10, hedges);
+    budget.refund();
+    assertTrue(budget.tryAcquire());
+  }
+
+  @Test
+  public void histogramShouldNotReportPercentileWithoutSamples() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i < LatencyHistogram.MIN_SAMPLES; i++) {
+      histogram.record(i * 1_000);
+    }
+    assertEquals(-1, histogram.getPercentileMicros(0.95));
+  }
+
+  @Test
+  public void histogramShouldEstimatePercentile() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1_000; i++) {
+      histogram.record(i * 1_000);
+    }
+    long p95 = histogram.getPercentileMicros(0.95);
+    assertTrue(String.valueOf(p95), p95 >= 950_000 && p95 <= 950_000 * 5 / 4);
+    long p50 = histogram.getPercentileMicros(0.5);
+    assertTrue(String.valueOf(p50), p50 >= 500_000 && p50 <= 500_000 * 5 / 4);
+  }
+
+  @Test
+  public void histogramBucketsShouldCoverValues() {
+    for (long value : new long[] {0, 1, 3, 4, 5, 7, 8, 1_000, 123_456_789, Long.MAX_VALUE}) {
+      int index = LatencyHistogram.bucketIndex(value);
+      assertTrue(value <= LatencyHistogram.bucketUpperBound(index));
+      assertTrue(index == 0 || value > LatencyHistogram.bucketUpperBound(index - 1));
+    }
+  }
+
+  @Test
+  public void primaryShouldWinAndCancelHedge() throws Exception {
+    List<Server> servers = buildServers();
+    BalancingState state = acquiredState(servers);
+    int primaryIndex = state.getCurrentServer().getIndex();
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    CompletableFuture<ResponseWrapper> hedge = new CompletableFuture<>();
+    AtomicReference<ServerEntry> hedgeServer = new AtomicReference<>();
+    CompletableFuture<ResponseWrapper> result = start(state, fullBudget(), primary, hedge, hedgeServer);
+
+    awaitHedge(hedgeServer);
+    assertNotEquals(primaryIndex, hedgeServer.get().getIndex());
+    assertEquals(1, servers.get(hedgeServer.get().getIndex()).getRequests());
+
+    ResponseWrapper wrapper = new ResponseWrapper(null, 100);
+    primary.complete(wrapper);
+
+    assertSame(wrapper, result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertTrue(hedge.isCancelled());
+    assertEquals(primaryIndex, state.getCurrentServer().getIndex());
+    assertEquals(0, servers.get(hedgeServer.get().getIndex()).getRequests());
+    assertEquals(1, servers.get(primaryIndex).getRequests());
+  }
+
+  @Test
+  public void hedgeShouldWinAndBecomeCurrentServer() throws Exception {
+    List<Server> servers = buildServers();
+    BalancingState state = acquiredState(servers);
+    int primaryIndex = state.getCurrentServer().getIndex();
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    CompletableFuture<ResponseWrapper> hedge = new CompletableFuture<>();
+    AtomicReference<ServerEntry> hedgeServer = new AtomicReference<>();
+    CompletableFuture<ResponseWrapper> result = start(state, fullBudget(), primary, hedge, hedgeServer);
+
+    awaitHedge(hedgeServer);
+    ResponseWrapper wrapper = new ResponseWrapper(null, 100);
+    hedge.complete(wrapper);
+
+    assertSame(wrapper, result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertTrue(primary.isCancelled());
+    assertEquals(hedgeServer.get().getIndex(), state.getCurrentServer().getIndex());
+    assertEquals(0, servers.get(primaryIndex).getRequests());
+
+    state.releaseServer(100, false);
+    assertEquals(0, servers.get(hedgeServer.get().getIndex()).getRequests());
+  }
+
+  @Test
+  public void cancelledAttemptShouldNotCountAsResult() throws Exception {
+    List<Server> servers = buildServers();
+    for (Server server : servers) {
+      server.acquire();
+      server.release(false, true);
+    }
+    BalancingState state = acquiredState(servers);
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    CompletableFuture<ResponseWrapper> hedge = new CompletableFuture<>();
+    AtomicReference<ServerEntry> hedgeServer = new AtomicReference<>();
+    CompletableFuture<ResponseWrapper> result = start(state, fullBudget(), primary, hedge, hedgeServer);
+
+    awaitHedge(hedgeServer);
+    primary.complete(new ResponseWrapper(null, 100));
+    result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+    Server cancelled = servers.get(hedgeServer.get().getIndex());
+    assertEquals(0, cancelled.getRequests());
+    assertEquals(1, cancelled.getStatsRequests());
+    assertEquals(1, cancelled.getFails());
+  }
+
+  @Test
+  public void hedgeShouldTakeConcurrencyLimiterPermit() throws Exception {
+    List<Server> servers = buildServers();
+    BalancingState state = acquiredState(servers);
+    ConcurrencyLimiter limiter = state.upstream.getConcurrencyLimiter();
+    limiter.configure(100);
+    // permit of the primary attempt, taken and released by the balancer
+    assertTrue(limiter.tryAcquire());
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    CompletableFuture<ResponseWrapper> hedge = new CompletableFuture<>();
+    AtomicReference<ServerEntry> hedgeServer = new AtomicReference<>();
+    CompletableFuture<ResponseWrapper> result = start(state, fullBudget(), primary, hedge, hedgeServer);
+
+    awaitHedge(hedgeServer);
+    assertEquals(2, limiter.getInFlight());
+
+    hedge.complete(new ResponseWrapper(null, 100));
+    result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    assertEquals(1, limiter.getInFlight());
+  }
+
+  @Test
+  public void failedAttemptShouldNotWinWhileOtherIsInFlight() throws Exception {
+    List<Server> servers = buildServers();
+    BalancingState state = acquiredState(servers);
+    int primaryIndex = state.getCurrentServer().getIndex();
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    CompletableFuture<ResponseWrapper> hedge = new CompletableFuture<>();
+    AtomicReference<ServerEntry> hedgeServer = new AtomicReference<>();
+    CompletableFuture<ResponseWrapper> result = start(state, fullBudget(), primary, hedge, hedgeServer);
+
+    awaitHedge(hedgeServer);
+    primary.completeExceptionally(new RuntimeException("connection reset"));
+    assertFalse(result.isDone());
+    assertEquals(0, servers.get(primaryIndex).getRequests());
+    assertEquals(1, servers.get(primaryIndex).getFails());
+    assertTrue(state.getTriedServerIndexes().get(primaryIndex));
+
+    ResponseWrapper wrapper = new ResponseWrapper(null, 100);
+    hedge.complete(wrapper);
+    assertSame(wrapper, result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertEquals(hedgeServer.get().getIndex(), state.getCurrentServer().getIndex());
+  }
+
+  @Test
+  public void hedgeShouldBeFiredOnCallbackExecutor() throws Exception {
+    List<Server> servers = buildServers();
+    BalancingState state = acquiredState(servers);
+    AtomicReference<String> hedgeThread = new AtomicReference<>();
+    HedgedExecution execution = new HedgedExecution(state, fullBudget(), runnable -> new Thread(runnable, "callback").start(), null,
+      server -> {
+        hedgeThread.set(Thread.currentThread().getName());
+        return new CompletableFuture<>();
+      });
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    CompletableFuture<ResponseWrapper> result = execution.start(primary, 1);
+
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (hedgeThread.get() == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals("callback", hedgeThread.get());
+    primary.complete(new ResponseWrapper(null, 100));
+    result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void cancelledPrimaryShouldBeRecordedToHistogram() throws Exception {
+    List<Server> servers = buildServers();
+    BalancingState state = acquiredState(servers);
+    LatencyHistogram histogram = new LatencyHistogram();
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    CompletableFuture<ResponseWrapper> hedge = new CompletableFuture<>();
+    AtomicReference<ServerEntry> hedgeServer = new AtomicReference<>();
+    HedgedExecution execution = new HedgedExecution(state, fullBudget(), Runnable::run, histogram, server -> {
+      hedgeServer.set(server);
+      return hedge;
+    });
+    CompletableFuture<ResponseWrapper> result = execution.start(primary, 1);
+
+    awaitHedge(hedgeServer);
+    Thread.sleep(20);
+    hedge.complete(new ResponseWrapper(null, 100));
+    result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+    assertTrue(execution.isPrimaryCancelled());
+    for (int i = 1; i < LatencyHistogram.MIN_SAMPLES; i++) {
+      histogram.record(0);
+    }
+    // the only non zero sample is the primary, which took at least the time before the hedge won
+    assertTrue(histogram.getPercentileMicros(1) >= 20_000);
+  }
+
+  @Test
+  public void shouldNotHedgeWithoutBudget() throws Exception {
+    List<Server> servers = buildServers();
+    BalancingState state = acquiredState(servers);
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    AtomicInteger hedges = new AtomicInteger();
+    HedgedExecution execution = new HedgedExecution(state, new HedgeBudget(0.1), Runnable::run, null, server -> {
+      hedges.incrementAndGet();
+      return new CompletableFuture<>();
+    });
+    CompletableFuture<ResponseWrapper> result = execution.start(primary, 1);
+
+    Thread.sleep(50);
+    ResponseWrapper wrapper = new ResponseWrapper(null, 100);
+    primary.complete(wrapper);
+    assertSame(wrapper, result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    assertEquals(0, hedges.get());
+  }
+
+  @Test
+  public void shouldNotHedgeToTheOnlyServer() throws Exception {
+    List<Server> servers = List.of(new Server("a", 1, null));
+    BalancingState state = acquiredState(servers);
+    AtomicInteger hedges = new AtomicInteger();
+    HedgeBudget budget = fullBudget();
+    HedgedExecution execution = new HedgedExecution(state, budget, Runnable::run, null, server -> {
+      hedges.incrementAndGet();
+      return new CompletableFuture<>();
+    });
+    CompletableFuture<ResponseWrapper> primary = new CompletableFuture<>();
+    CompletableFuture<ResponseWrapper> result = execution.start(primary, 1);
+
+    Thread.sleep(50);
+    primary.complete(new ResponseWrapper(null, 100));
+    result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    assertEquals(0, hedges.get());
+    assertEquals(1, servers.get(0).getRequests());
+    // refunded token is still there
+    assertTrue(budget.tryAcquire());
+  }
+
+  private static CompletableFuture<ResponseWrapper> start(BalancingState state, HedgeBudget budget,
+                                                          CompletableFuture<ResponseWrapper> primary,
+                                                          CompletableFuture<ResponseWrapper> hedge,
+                                                          AtomicReference<ServerEntry> hedgeServer) {
+    HedgedExecution execution = new HedgedExecution(state, budget, Runnable::run, null, server -> {
+      hedgeServer.set(server);
+      return hedge;
+    });
+    return execution.start(primary, 1);
+  }
+
+  private static void awaitHedge(AtomicReference<ServerEntry> hedgeServer) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (hedgeServer.get() == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertTrue("hedge was not fired", hedgeServer.get() != null);
+  }
+
+  private static HedgeBudget fullBudget() {
+    HedgeBudget budget = new HedgeBudget(1);
+    budget.deposit();
+    return budget;
+  }
+
+  private static BalancingState acquiredState(List<Server> servers) {
+    Upstream upstream = new Upstream("backend", UpstreamConfigs.getDefaultConfig(), servers, null, false, true);
+    BalancingState state = new BalancingState(upstream, DEFAULT);
+    state.acquireServer();
+    return state;
+  }
+
+  private static List<Server> buildServers() {
+    return List.of(new Server("a", 1, null), new Server("b", 1, null));
+  }
+}
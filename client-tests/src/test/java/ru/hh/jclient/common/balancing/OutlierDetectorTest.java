@@ -0,0 +1,202 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+import ru.hh.jclient.common.balancing.config.ApplicationConfig;
+import static ru.hh.jclient.common.balancing.config.ApplicationConfigTest.buildTestConfig;
+
+public class OutlierDetectorTest {
+  private static final String DATACENTER = "DC1";
+  private static final int REQUESTS = 100;
+  private static final long EJECTION_MILLIS = 1_000;
+
+  private final Clock clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
+  @Test
+  public void shouldEjectServerAnsweringFastWithErrors() {
+    List<Server> servers = buildServers(4);
+    recordResults(servers.subList(0, 3), 0, 1000);
+    recordResults(servers.subList(3, 4), REQUESTS, 10);
+
+    OutlierDetector detector = createDetector(50);
+    detector.evaluate(servers, 0);
+    assertEjected(servers, 3);
+  }
+
+  @Test
+  public void shouldEjectServerWithLowSuccessRate() {
+    List<Server> servers = buildServers(6);
+    recordResults(servers.subList(0, 5), 1, 1000);
+    recordResults(servers.subList(5, 6), REQUESTS / 2, 1000);
+
+    OutlierDetector detector = createDetector(50);
+    detector.evaluate(servers, 0);
+    assertEjected(servers, 5);
+  }
+
+  @Test
+  public void shouldEjectSlowServer() {
+    List<Server> servers = buildServers(4);
+    recordResults(servers.subList(1, 4), 0, 1000);
+    recordResults(servers.subList(0, 1), 0, 10_000);
+
+    OutlierDetector detector = createDetector(50);
+    detector.evaluate(servers, 0);
+    assertEjected(servers, 0);
+  }
+
+  @Test
+  public void shouldNotCompareServersWithFewRequestsOrPeers() {
+    List<Server> servers = buildServers(4);
+    recordResults(servers.subList(0, 2), 0, 1000);
+    for (int i = 0; i < OutlierDetector.MIN_REQUESTS - 1; i++) {
+      servers.get(2).getOutlierStats().record(true, 10);
+    }
+    servers.get(3).getOutlierStats().record(true, 10);
+
+    OutlierDetector detector = createDetector(50);
+    detector.evaluate(servers, 0);
+    assertEjected(servers);
+  }
+
+  @Test
+  public void ejectionTimeShouldGrowWithEjectionsInRow() {
+    List<Server> servers = buildServers(4);
+    OutlierDetector detector = createDetector(50);
+    Server outlier = servers.get(3);
+    long now = 0;
+    for (int ejection = 0; ejection < OutlierDetector.MAX_EJECTION_SHIFT + 2; ejection++) {
+      recordResults(servers.subList(0, 3), 0, 1000);
+      recordResults(servers.subList(3, 4), REQUESTS, 10);
+      detector.evaluate(servers, now);
+
+      long ejectionTime = EJECTION_MILLIS << Math.min(ejection, OutlierDetector.MAX_EJECTION_SHIFT);
+      assertTrue(outlier.getOutlierStats().isEjected(now + ejectionTime - 1));
+      assertFalse(outlier.getOutlierStats().isEjected(now + ejectionTime));
+      now += ejectionTime;
+    }
+
+    recordResults(servers, 0, 1000);
+    detector.evaluate(servers, now);
+    assertEquals(OutlierDetector.MAX_EJECTION_SHIFT + 1, outlier.getOutlierStats().getEjections());
+  }
+
+  @Test
+  public void shouldNotEjectMoreThanMaxPercent() {
+    List<Server> servers = buildServers(10);
+    recordResults(servers.subList(0, 6), 0, 1000);
+    recordResults(servers.subList(6, 10), REQUESTS, 10);
+
+    OutlierDetector detector = createDetector(20);
+    detector.evaluate(servers, 0);
+    long ejected = servers.stream().filter(server -> server.getOutlierStats().isEjected(0)).count();
+    assertEquals(2, ejected);
+
+    recordResults(servers.subList(0, 6), 0, 1000);
+    recordResults(servers.subList(6, 10), REQUESTS, 10);
+    detector.evaluate(servers, 1);
+    assertEquals(2, servers.stream().filter(server -> server.getOutlierStats().isEjected(1)).count());
+  }
+
+  @Test
+  public void upstreamShouldSkipEjectedServer() {
+    List<Server> servers = buildServers(4);
+    ApplicationConfig applicationConfig = buildTestConfig();
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT).setOutlierDetectionIntervalSec(10f);
+    Upstream upstream = new Upstream("backend", ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT), servers,
+        DATACENTER, false, true, clock);
+    assertTrue(upstream.getOutlierDetector().isEnabled());
+
+    for (int i = 0; i < REQUESTS * servers.size(); i++) {
+      ServerEntry serverEntry = upstream.acquireServer();
+      upstream.releaseServer(serverEntry, false, serverEntry.getIndex() == 1, 1000, false);
+    }
+    upstream.getOutlierDetector().evaluate(servers, clock.millis());
+    assertEjected(servers, 1);
+
+    for (int i = 0; i < REQUESTS; i++) {
+      ServerEntry serverEntry = upstream.acquireServer();
+      assertNotEquals(1, serverEntry.getIndex());
+      upstream.releaseServer(serverEntry, false, false, 1000, false);
+    }
+  }
+
+  @Test
+  public void expiredEjectionShouldBeCleared() {
+    OutlierStats stats = new OutlierStats();
+    stats.eject(EJECTION_MILLIS);
+    AtomicLong clockReads = new AtomicLong();
+    Clock countingClock = new Clock() {
+      @Override
+      public ZoneId getZone() {
+        return ZoneOffset.UTC;
+      }
+
+      @Override
+      public Clock withZone(ZoneId zone) {
+        return this;
+      }
+
+      @Override
+      public Instant instant() {
+        clockReads.incrementAndGet();
+        return Instant.ofEpochMilli(EJECTION_MILLIS);
+      }
+    };
+    assertFalse(stats.isEjected(countingClock));
+    assertEquals(1, clockReads.get());
+    assertFalse(stats.isEjected(countingClock));
+    assertEquals(1, clockReads.get());
+  }
+
+  private static void assertEjected(List<Server> servers, int... ejectedIndexes) {
+    List<Integer> expected = new ArrayList<>();
+    for (int index : ejectedIndexes) {
+      expected.add(index);
+    }
+    for (int i = 0; i < servers.size(); i++) {
+      assertEquals(servers.get(i).toString(), expected.contains(i), servers.get(i).getOutlierStats().isEjected(0));
+    }
+  }
+
+  private static OutlierDetector createDetector(int maxEjectionPercent) {
+    ApplicationConfig applicationConfig = buildTestConfig();
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT)
+        .setOutlierDetectionIntervalSec(10f)
+        .setOutlierEjectionSec(EJECTION_MILLIS / 1000f)
+        .setOutlierMaxEjectionPercent(maxEjectionPercent);
+    OutlierDetector detector = new OutlierDetector();
+    detector.configure(ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT).get(DEFAULT).get());
+    return detector;
+  }
+
+  /**
+   * records {@link #REQUESTS} results for every server, first errors of them fail
+   */
+  private static void recordResults(List<Server> servers, int errors, long responseTimeMicros) {
+    for (Server server : servers) {
+      for (int i = 0; i < REQUESTS; i++) {
+        server.getOutlierStats().record(i < errors, responseTimeMicros);
+      }
+    }
+  }
+
+  private static List<Server> buildServers(int count) {
+    List<Server> servers = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      servers.add(new Server("s" + i, 1, DATACENTER));
+    }
+    return servers;
+  }
+}
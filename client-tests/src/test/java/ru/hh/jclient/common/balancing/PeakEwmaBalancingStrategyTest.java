@@ -0,0 +1,120 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+
+public class PeakEwmaBalancingStrategyTest {
+  private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+  private static final int PICKS = 1_000;
+
+  @Test
+  public void trackerShouldJumpToPeak() {
+    PeakEwmaTracker tracker = new PeakEwmaTracker(DECAY_NANOS);
+    tracker.observe(1_000, 0);
+    tracker.observe(50_000, 1);
+
+    assertEquals(50_000, tracker.getCost(1), 1);
+  }
+
+  @Test
+  public void trackerShouldDecayOnElapsedTime() {
+    PeakEwmaTracker tracker = new PeakEwmaTracker(DECAY_NANOS);
+    tracker.observe(50_000, 0);
+
+    assertEquals(50_000 / Math.E, tracker.getCost(DECAY_NANOS), 1);
+
+    tracker.observe(1_000, DECAY_NANOS);
+    assertEquals(1_000 + (50_000 - 1_000) / Math.E, tracker.getCost(DECAY_NANOS), 1);
+  }
+
+  @Test
+  public void shouldPreferFasterServer() {
+    AtomicLong nanoTime = new AtomicLong();
+    List<Server> servers = List.of(new Server("a", 1, null), new Server("b", 1, null));
+    Upstream upstream = createUpstream(servers, nanoTime);
+    upstream.observeResponseTime(0, 200_000, false);
+    upstream.observeResponseTime(1, 1_000, false);
+
+    for (int i = 0; i < PICKS; i++) {
+      ServerEntry entry = upstream.acquireServer(DEFAULT, BalancingStrategyType.PEAK_EWMA, new BitSet());
+      assertEquals("b", entry.getAddress());
+      upstream.releaseServer(entry.getIndex(), false, false, 1_000);
+    }
+  }
+
+  @Test
+  public void shouldAccountRequestsInFlight() {
+    AtomicLong nanoTime = new AtomicLong();
+    List<Server> servers = List.of(new Server("a", 1, null), new Server("b", 1, null));
+    Upstream upstream = createUpstream(servers, nanoTime);
+    upstream.observeResponseTime(0, 2_000, false);
+    upstream.observeResponseTime(1, 1_000, false);
+
+    for (int i = 0; i < 10; i++) {
+      upstream.acquireServer(DEFAULT, BalancingStrategyType.PEAK_EWMA, new BitSet());
+    }
+
+    // loads are balanced when in flight requests are inversely proportional to response times
+    int fast = servers.get(1).getRequests();
+    int slow = servers.get(0).getRequests();
+    assertTrue("fast=" + fast + ", slow=" + slow, fast > slow && slow > 0);
+  }
+
+  @Test
+  public void freshServerWithRequestsInFlightShouldLoseToWarmIdleServer() {
+    AtomicLong nanoTime = new AtomicLong();
+    List<Server> servers = List.of(new Server("a", 1, null), new Server("b", 1, null));
+    Upstream upstream = createUpstream(servers, nanoTime);
+    upstream.observeResponseTime(1, 10_000, false);
+
+    ServerEntry first = upstream.acquireServer(DEFAULT, BalancingStrategyType.PEAK_EWMA, new BitSet());
+    assertEquals("a", first.getAddress());
+    for (int i = 0; i < PICKS; i++) {
+      ServerEntry entry = upstream.acquireServer(DEFAULT, BalancingStrategyType.PEAK_EWMA, new BitSet());
+      assertEquals("b", entry.getAddress());
+      upstream.releaseServer(entry.getIndex(), false, false, 10_000);
+    }
+    assertEquals(1, servers.get(0).getRequests());
+  }
+
+  @Test
+  public void shouldPenalizeErrors() {
+    AtomicLong nanoTime = new AtomicLong();
+    List<Server> servers = List.of(new Server("a", 1, null), new Server("b", 1, null));
+    Upstream upstream = createUpstream(servers, nanoTime);
+    upstream.observeResponseTime(0, 10_000, false);
+    upstream.observeResponseTime(1, 10, true);
+
+    for (int i = 0; i < PICKS; i++) {
+      ServerEntry entry = upstream.acquireServer(DEFAULT, BalancingStrategyType.PEAK_EWMA, new BitSet());
+      assertEquals("a", entry.getAddress());
+      upstream.releaseServer(entry.getIndex(), false, false, 10_000);
+    }
+  }
+
+  @Test
+  public void balancingStateShouldObserveResponseTime() {
+    AtomicLong nanoTime = new AtomicLong();
+    List<Server> servers = List.of(new Server("a", 1, null));
+    Upstream upstream = createUpstream(servers, nanoTime);
+    BalancingState state = new BalancingState(upstream, DEFAULT, BalancingStrategyType.PEAK_EWMA);
+
+    state.acquireServer();
+    assertEquals(1, servers.get(0).getRequests());
+    state.releaseServer(5_000, false);
+
+    assertEquals(0, servers.get(0).getRequests());
+    assertEquals(5_000, servers.get(0).getPeakEwmaTracker().getCost(nanoTime.get()), 1);
+  }
+
+  private static Upstream createUpstream(List<Server> servers, AtomicLong nanoTime) {
+    return new Upstream("backend", UpstreamConfigs.getDefaultConfig(), servers, null, false, true, Clock.systemUTC(), nanoTime::get);
+  }
+}
@@ -0,0 +1,132 @@
+package ru.hh.jclient.common.balancing;
+
+import java.time.Clock;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Test;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+import ru.hh.jclient.common.balancing.config.Profile;
+
+public class PowerOfTwoChoicesBalancingStrategyTest {
+  private static final String DATACENTER = "DC1";
+  private static final int PICKS = 1_000;
+
+  @Test
+  public void shouldPickLessLoadedOfTwo() {
+    List<Server> servers = List.of(new Server("a", 1, DATACENTER), new Server("b", 1, DATACENTER));
+    initStatistics(servers);
+    servers.get(0).acquire();
+
+    for (int i = 0; i < PICKS; i++) {
+      assertEquals(1, getServer(servers, excluded(), false));
+    }
+  }
+
+  @Test
+  public void shouldNotPickExcluded() {
+    List<Server> servers = List.of(new Server("a", 1, DATACENTER), new Server("b", 1, DATACENTER), new Server("c", 1, DATACENTER));
+
+    for (int i = 0; i < PICKS; i++) {
+      assertNotEquals(1, getServer(servers, excluded(1), false));
+    }
+  }
+
+  @Test
+  public void shouldPreferCurrentDatacenter() {
+    List<Server> servers = List.of(
+        new Server("a", 1, "DC2"),
+        new Server("b", 1, DATACENTER),
+        new Server("c", 1, "DC2"),
+        new Server("d", 1, DATACENTER)
+    );
+    initStatistics(servers);
+    servers.get(1).acquire();
+    servers.get(3).acquire();
+
+    for (int i = 0; i < PICKS; i++) {
+      int index = getServer(servers, excluded(), true);
+      assertEquals(DATACENTER, servers.get(index).getDatacenter());
+    }
+  }
+
+  @Test
+  public void shouldUseOtherDatacenterWhenCurrentIsExcluded() {
+    List<Server> servers = List.of(
+        new Server("a", 1, "DC2"),
+        new Server("b", 1, DATACENTER),
+        new Server("c", 1, "DC2"),
+        new Server("d", 1, DATACENTER)
+    );
+
+    for (int i = 0; i < PICKS; i++) {
+      int index = getServer(servers, excluded(1, 3), true);
+      assertEquals("DC2", servers.get(index).getDatacenter());
+    }
+  }
+
+  @Test
+  public void shouldFallbackToExcludedWhenNothingElseLeft() {
+    List<Server> servers = List.of(new Server("a", 1, DATACENTER), new Server("b", 1, DATACENTER));
+    initStatistics(servers);
+    servers.get(0).acquire();
+
+    assertEquals(1, getServer(servers, excluded(0, 1), false));
+  }
+
+  @Test
+  public void requestToServerOnSlowStartShouldCountByWeight() {
+    List<Server> servers = List.of(new Server("a", 1, DATACENTER), new Server("b", 1, DATACENTER));
+    servers.get(0).setSlowStartEndTimeIfNeeded(Integer.MAX_VALUE / 1000, Clock.systemDefaultZone());
+    initStatistics(servers);
+    servers.get(0).acquire(Clock.systemDefaultZone());
+    servers.get(1).acquire();
+    servers.get(1).acquire();
+
+    for (int i = 0; i < PICKS; i++) {
+      assertEquals(1, getServer(servers, excluded(), false));
+    }
+  }
+
+  @Test
+  public void upstreamShouldUseConfiguredStrategy() {
+    List<Server> servers = List.of(new Server("a", 1, null), new Server("b", 1, null));
+    UpstreamConfig config = UpstreamConfigs.createUpstreamConfigWithDefaults(new Profile().setBalancingStrategy("power_of_two_choices"));
+    Upstream upstream = new Upstream("backend", UpstreamConfigs.of(Map.of(DEFAULT, config)), servers, null, false, true);
+    assertEquals(BalancingStrategyType.POWER_OF_TWO_CHOICES, upstream.getConfig(DEFAULT).getBalancingStrategyType());
+
+    upstream.acquireServer(DEFAULT, excluded());
+    upstream.acquireServer(DEFAULT, excluded());
+
+    assertEquals(1, servers.get(0).getRequests());
+    assertEquals(1, servers.get(1).getRequests());
+  }
+
+  @Test
+  public void unknownStrategyShouldFallBackToLeastLoaded() {
+    UpstreamConfig config = UpstreamConfigs.createUpstreamConfigWithDefaults(new Profile().setBalancingStrategy("strategy_of_future"));
+    assertEquals(BalancingStrategyType.LEAST_LOADED, config.getBalancingStrategyType());
+  }
+
+  private static BitSet excluded(int... indexes) {
+    BitSet excludedServers = new BitSet();
+    for (int index : indexes) {
+      excludedServers.set(index);
+    }
+    return excludedServers;
+  }
+
+  private static void initStatistics(List<Server> servers) {
+    servers.forEach(server -> server.getStatLoad(servers, Clock.systemDefaultZone()));
+  }
+
+  private static int getServer(List<Server> servers, BitSet excludedServers, boolean allowCrossDCRequests) {
+    UpstreamSnapshot snapshot = UpstreamSnapshot.of(servers, UpstreamConfigs.getDefaultConfig(), DATACENTER, allowCrossDCRequests);
+    return PowerOfTwoChoicesBalancingStrategy.getServer(
+        snapshot, excludedServers, DATACENTER, allowCrossDCRequests, Clock.systemDefaultZone(), ThreadLocalRandom.current()
+    );
+  }
+}
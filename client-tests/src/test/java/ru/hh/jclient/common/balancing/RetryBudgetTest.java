@@ -0,0 +1,84 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static ru.hh.jclient.common.balancing.UpstreamConfig.DEFAULT;
+import ru.hh.jclient.common.balancing.config.ApplicationConfig;
+import static ru.hh.jclient.common.balancing.config.ApplicationConfigTest.buildTestConfig;
+
+public class RetryBudgetTest {
+  private final AtomicLong nanoTime = new AtomicLong();
+  private final RetryBudget budget = new RetryBudget(nanoTime::get);
+
+  @Test
+  public void disabledBudgetShouldAllowAllRetries() {
+    for (int i = 0; i < 1_000; i++) {
+      assertTrue(budget.tryWithdraw());
+    }
+    assertFalse(budget.isEnabled());
+  }
+
+  @Test
+  public void shouldStartFull() {
+    budget.configure(0.1, 0);
+    assertEquals(RetryBudget.MIN_CAPACITY, withdrawAll());
+  }
+
+  @Test
+  public void shouldAllowShareOfSuccessfulRequests() {
+    budget.configure(0.2, 0);
+    withdrawAll();
+
+    for (int i = 0; i < 50; i++) {
+      budget.deposit();
+    }
+    assertEquals(10, withdrawAll());
+  }
+
+  @Test
+  public void shouldRefillAtMinRate() {
+    budget.configure(0.1, 2);
+    assertEquals(2 * RetryBudget.CAPACITY_SECONDS, withdrawAll());
+
+    nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(1_500));
+    assertEquals(3, withdrawAll());
+
+    nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    assertFalse(budget.tryWithdraw());
+    nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(400));
+    assertTrue(budget.tryWithdraw());
+  }
+
+  @Test
+  public void shouldCapBalance() {
+    budget.configure(1, 1);
+    for (int i = 0; i < 1_000; i++) {
+      budget.deposit();
+    }
+    nanoTime.addAndGet(TimeUnit.HOURS.toNanos(1));
+    assertEquals(RetryBudget.MIN_CAPACITY, withdrawAll());
+    nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals(1, withdrawAll());
+  }
+
+  @Test
+  public void upstreamShouldConfigureBudgetFromDefaultProfile() {
+    ApplicationConfig applicationConfig = buildTestConfig();
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT).setRetryBudgetPercent(50f);
+    Upstream upstream = new Upstream("backend", ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT), List.of(), null, false, true);
+    assertTrue(upstream.getRetryBudget().isEnabled());
+  }
+
+  private int withdrawAll() {
+    int withdrawn = 0;
+    while (budget.tryWithdraw()) {
+      withdrawn++;
+    }
+    return withdrawn;
+  }
+}
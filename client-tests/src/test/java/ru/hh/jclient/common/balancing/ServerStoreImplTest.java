@@ -0,0 +1,107 @@
+package ru.hh.jclient.common.balancing;
+
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class ServerStoreImplTest {
+  private static final String SERVICE = "backend";
+  private static final String DATACENTER = "DC1";
+
+  private final ServerStore serverStore = new ServerStoreImpl();
+
+  @Test
+  public void serversShouldKeepIndexesWhenOtherServerIsRemoved() {
+    Server a = new Server("a", 1, DATACENTER);
+    Server b = new Server("b", 1, DATACENTER);
+    Server c = new Server("c", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(a, b, c), List.of());
+    assertEquals(List.of(a, b, c), serverStore.getServers(SERVICE));
+
+    serverStore.updateServers(SERVICE, List.of(a, c), List.of(b));
+    assertEquals(Arrays.asList(a, null, c), serverStore.getServers(SERVICE));
+  }
+
+  @Test
+  public void tombstoneShouldNotBeReusedWhileRequestsAreInFlight() {
+    Server a = new Server("a", 1, DATACENTER);
+    Server b = new Server("b", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(a, b), List.of());
+    a.acquire();
+
+    Server c = new Server("c", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(b, c), List.of(a));
+    assertEquals(Arrays.asList(null, b, c), serverStore.getServers(SERVICE));
+
+    a.release(false, false);
+    Server d = new Server("d", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(d), List.of());
+    assertEquals(List.of(d, b, c), serverStore.getServers(SERVICE));
+  }
+
+  @Test
+  public void updateOfKnownServersShouldNotRepublishList() {
+    Server a = new Server("a", 1, DATACENTER);
+    Server b = new Server("b", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(a, b), List.of());
+    List<Server> servers = serverStore.getServers(SERVICE);
+
+    serverStore.updateServers(SERVICE, List.of(new Server("a", 5, DATACENTER), b), List.of());
+    assertSame(servers, serverStore.getServers(SERVICE));
+    assertEquals(5, a.getWeight());
+  }
+
+  @Test
+  public void drainedTombstonesShouldBeTrimmedAtTail() {
+    Server a = new Server("a", 1, DATACENTER);
+    Server b = new Server("b", 1, DATACENTER);
+    Server c = new Server("c", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(a, b, c), List.of());
+
+    serverStore.updateServers(SERVICE, List.of(a), List.of(b, c));
+    assertEquals(List.of(a), serverStore.getServers(SERVICE));
+  }
+
+  @Test
+  public void returnedServerShouldGetItsIndexBack() {
+    Server a = new Server("a", 1, DATACENTER);
+    Server b = new Server("b", 1, DATACENTER);
+    Server c = new Server("c", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(a, b, c), List.of());
+    b.acquire();
+    serverStore.updateServers(SERVICE, List.of(), List.of(b));
+
+    Server newB = new Server("b", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(newB), List.of());
+    assertSame(newB, serverStore.getServers(SERVICE).get(1));
+  }
+
+  @Test
+  public void aliveServerShouldKeepItsStats() {
+    Server a = new Server("a", 1, DATACENTER);
+    serverStore.updateServers(SERVICE, List.of(a), List.of());
+    a.acquire();
+
+    serverStore.updateServers(SERVICE, List.of(new Server("a", 5, DATACENTER)), List.of());
+    Server server = serverStore.getServers(SERVICE).get(0);
+    assertSame(a, server);
+    assertEquals(1, server.getRequests());
+    assertEquals(5, server.getWeight());
+  }
+
+  @Test
+  public void releaseShouldGoToAcquiredServerAfterItIsReplaced() {
+    Server a = new Server("a", 1, DATACENTER);
+    Upstream upstream = new Upstream(SERVICE, UpstreamConfigs.getDefaultConfig(), List.of(a), DATACENTER, false, true);
+    ServerEntry serverEntry = upstream.acquireServer();
+    assertEquals(1, a.getRequests());
+
+    Server b = new Server("b", 1, DATACENTER);
+    upstream.updateConfig(UpstreamConfigs.getDefaultConfig(), List.of(b));
+    upstream.releaseServer(serverEntry, false, false, 100, false);
+    assertEquals(0, a.getRequests());
+    assertEquals(0, b.getRequests());
+  }
+}
@@ -1,9 +1,15 @@
 package ru.hh.jclient.common.balancing;
 
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 
 public class ServerTest {
+  private static final Clock CLOCK = Clock.systemUTC();
 
   @Test
   public void testCreateServer() {
@@ -51,4 +57,141 @@ public class ServerTest {
     assertEquals(1, server.getStatsRequests());
   }
 
+  @Test
+  public void testReleaseWithoutAcquire() {
+    Server server = new Server("test", 1, null);
+
+    server.release(true, false);
+    server.acquire();
+
+    assertEquals(1, server.getRequests());
+    assertEquals(1, server.getStatsRequests());
+  }
+
+  @Test
+  public void testConcurrentAcquireRelease() throws InterruptedException {
+    Server server = new Server("test", 1, null);
+    int threadsCount = 8;
+    int requestsPerThread = 100_000;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadsCount; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        for (int i = 0; i < requestsPerThread; i++) {
+          server.acquire();
+          server.release(i % 2 == 0, false);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(0, server.getRequests());
+    assertEquals(threadsCount * requestsPerThread / 2, server.getStatsRequests());
+    assertEquals(0, server.getFails());
+  }
+
+  @Test
+  public void initialStatShouldBeFilledOnceByConcurrentReaders() throws InterruptedException {
+    Server server = new Server("test", 2, null);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        server.getStatLoad(50, CLOCK);
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(100, server.getStatsRequests());
+  }
+
+  @Test
+  public void slowStartWeightShouldGrowLinearly() {
+    AtomicLong currentTimeMillis = new AtomicLong(1_000);
+    Server server = createServer(currentTimeMillis);
+    assertEquals(1, server.getSlowStartWeightFactor(CLOCK), 0);
+
+    server.setSlowStartEndTimeIfNeeded(10, CLOCK);
+    assertEquals(Server.MIN_SLOW_START_WEIGHT_FACTOR, server.getSlowStartWeightFactor(CLOCK), 0);
+    currentTimeMillis.addAndGet(5_000);
+    assertEquals(0.5, server.getSlowStartWeightFactor(CLOCK), 0.001);
+    currentTimeMillis.addAndGet(5_001);
+    assertEquals(1, server.getSlowStartWeightFactor(CLOCK), 0);
+  }
+
+  @Test
+  public void slowStartWeightShouldGrowFasterWithAggression() {
+    AtomicLong currentTimeMillis = new AtomicLong(1_000);
+    Server server = createServer(currentTimeMillis);
+    server.setSlowStartEndTimeIfNeeded(10, 2, CLOCK);
+
+    currentTimeMillis.addAndGet(2_500);
+    assertEquals(0.5, server.getSlowStartWeightFactor(CLOCK), 0.001);
+  }
+
+  @Test
+  public void requestOnSlowStartShouldCountInStatByWeight() {
+    AtomicLong currentTimeMillis = new AtomicLong(1_000);
+    Server server = createServer(currentTimeMillis);
+    server.setSlowStartEndTimeIfNeeded(10, CLOCK);
+    currentTimeMillis.addAndGet(2_500);
+
+    assertEquals(12, server.getStatLoad(12, CLOCK), 0);
+    server.acquire(CLOCK);
+    assertEquals(1, server.getRequests());
+    assertEquals(16, server.getStatsRequests());
+
+    currentTimeMillis.addAndGet(7_501);
+    server.acquire(CLOCK);
+    assertEquals(2, server.getRequests());
+    assertEquals(17, server.getStatsRequests());
+  }
+
+  @Test
+  public void releaseOnSlowStartShouldTakeBackStatOfAcquisition() {
+    AtomicLong currentTimeMillis = new AtomicLong(1_000);
+    Server server = createServer(currentTimeMillis);
+    server.setSlowStartEndTimeIfNeeded(10, CLOCK);
+    currentTimeMillis.addAndGet(2_500);
+    assertEquals(12, server.getStatLoad(12, CLOCK), 0);
+
+    int statRequests = server.acquire(CLOCK);
+    assertEquals(4, statRequests);
+    server.release(true, false, statRequests);
+    assertEquals(0, server.getRequests());
+    assertEquals(12, server.getStatsRequests());
+
+    server.cancel(server.acquire(CLOCK));
+    assertEquals(0, server.getRequests());
+    assertEquals(12, server.getStatsRequests());
+  }
+
+  private static Server createServer(AtomicLong currentTimeMillis) {
+    return new Server("test", 1, null) {
+      @Override
+      protected long getCurrentTimeMillis(Clock clock) {
+        return currentTimeMillis.get();
+      }
+    };
+  }
 }
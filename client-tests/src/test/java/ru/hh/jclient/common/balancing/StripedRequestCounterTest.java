@@ -0,0 +1,32 @@
+package ru.hh.jclient.common.balancing;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class StripedRequestCounterTest {
+
+  @Test
+  public void extraReleaseShouldBeLostWithoutCells() {
+    StripedRequestCounter counter = new StripedRequestCounter();
+    assertExtraReleaseIsLost(counter);
+  }
+
+  @Test
+  public void extraReleaseShouldBeLostWithCells() {
+    StripedRequestCounter counter = new StripedRequestCounter();
+    counter.inflate();
+    assertExtraReleaseIsLost(counter);
+  }
+
+  private static void assertExtraReleaseIsLost(StripedRequestCounter counter) {
+    counter.add(1, 1);
+    counter.add(-1, -1);
+    counter.add(-1, -1);
+    assertEquals(0, StripedRequestCounter.statRequests(counter.get()));
+    assertEquals(0, StripedRequestCounter.currentRequests(counter.get()));
+
+    counter.add(2, 1);
+    assertEquals(2, StripedRequestCounter.statRequests(counter.get()));
+    assertEquals(1, StripedRequestCounter.currentRequests(counter.get()));
+  }
+}
@@ -1,5 +1,6 @@
 package ru.hh.jclient.common.balancing;
 
+import java.util.BitSet;
 import java.util.List;
 
 // to make constructor available outside of the package to housekeep tests better
@@ -9,4 +10,21 @@ public class UpstreamMorozov extends Upstream {
                          boolean allowCrossDCRequests, boolean enabled) {
     super(upstreamName, upstreamConfigs, servers, datacenter, allowCrossDCRequests, enabled);
   }
+
+  public int acquireServerIndex(String profile, BitSet excludedServers) {
+    ServerEntry serverEntry = acquireServer(profile, excludedServers);
+    return serverEntry == null ? -1 : serverEntry.getIndex();
+  }
+
+  public void releaseServerIndex(int serverIndex, boolean isRetry, boolean isError) {
+    releaseServer(serverIndex, isRetry, isError, 0);
+  }
+
+  public void releaseAdaptiveServerIndex(int serverIndex, boolean isError, long responseTimeMicros) {
+    releaseServer(serverIndex, false, isError, responseTimeMicros, true);
+  }
+
+  public int acquireAdaptiveServersCount(String profile) {
+    return acquireAdaptiveServers(profile).size();
+  }
 }
@@ -1,7 +1,7 @@
 package ru.hh.jclient.common.balancing;
 
 import static java.lang.System.currentTimeMillis;
-import static java.util.Collections.singleton;
+import java.util.BitSet;
 import java.util.List;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -55,9 +55,10 @@ public class UpstreamTest {
     List<Server> servers = buildServers();
     Upstream upstream = createTestUpstream(TEST_SERVICE_NAME, servers);
 
-    int excludedServerIndex = 0;
+    BitSet excludedServers = new BitSet();
+    excludedServers.set(0);
 
-    ServerEntry serverEntry = upstream.acquireServer(singleton(excludedServerIndex));
+    ServerEntry serverEntry = upstream.acquireServer(excludedServers);
 
     assertEquals("b", serverEntry.getAddress());
 
@@ -99,6 +100,56 @@ public class UpstreamTest {
     assertEquals(serverIndex, upstream.acquireServer().getIndex());
   }
 
+  @Test
+  public void updateConfigReplacesServersAndConfigs() {
+    Upstream upstream = createTestUpstream(TEST_SERVICE_NAME, buildServers());
+    assertEquals(UpstreamConfig.DEFAULT_CONFIG.getMaxTries(), upstream.getConfig(DEFAULT).getMaxTries());
+
+    List<Server> servers = List.of(new Server("c", 1, null));
+    upstream.updateConfig(ApplicationConfig.toUpstreamConfigs(buildTestConfig(), DEFAULT), servers);
+
+    assertEquals(servers, upstream.getServers());
+    assertEquals(3, upstream.getConfig(DEFAULT).getMaxTries());
+    assertEquals("c", upstream.acquireServer().getAddress());
+    upstream.releaseServer(0, false, false, 100);
+    assertServerCounters(servers, 0, 0, 1, 0);
+  }
+
+  @Test
+  public void rescaleStatsWhenAllServersReachLimit() {
+    List<Server> servers = List.of(new Server("a", 1, null), new Server("b", 1, null));
+    Upstream upstream = createTestUpstream(TEST_SERVICE_NAME, servers);
+    upstream.setStatLimit(4);
+
+    acquireReleaseUpstream(upstream, 7);
+    assertServerCounters(servers, 0, 0, 4, 0);
+    assertServerCounters(servers, 1, 0, 3, 0);
+
+    acquireReleaseUpstream(upstream, 1);
+    assertServerCounters(servers, 0, 0, 2, 0);
+    assertServerCounters(servers, 1, 0, 2, 0);
+
+    acquireReleaseUpstream(upstream, 3);
+    assertServerCounters(servers, 0, 0, 4, 0);
+    assertServerCounters(servers, 1, 0, 3, 0);
+  }
+
+  @Test
+  public void newServerGetsMaxStatLoadAsInitialStat() {
+    List<Server> servers = buildServers();
+    Upstream upstream = createTestUpstream(TEST_SERVICE_NAME, servers);
+    acquireReleaseUpstream(upstream, 6);
+    assertServerCounters(servers, 0, 0, 2, 0);
+    assertServerCounters(servers, 1, 0, 4, 0);
+
+    Server newServer = new Server("c", 3, null);
+    List<Server> newServers = List.of(servers.get(0), servers.get(1), newServer);
+    upstream.updateConfig(getDefaultConfig(), newServers);
+    assertEquals("a", upstream.acquireServer().getAddress());
+
+    assertEquals(6, newServer.getStatsRequests());
+  }
+
   @Test
   public void acquireReleaseFromTwoThreads() throws Exception {
     int numOfRequests = 100_000;
@@ -54,6 +54,7 @@ public class ApplicationConfigTest {
     assertEquals(UpstreamConfig.DEFAULT_CONFIG.getRequestTimeoutMs(), config.getRequestTimeoutMs());
     assertFalse(config.getRetryPolicy().getRules().get(599));
     assertFalse(config.getRetryPolicy().getRules().get(503));
+    assertEquals(0, config.getRetryBudgetRatio(), 0);
   }
 
   @Test
@@ -70,6 +71,17 @@ public class ApplicationConfigTest {
     assertTrue(config.getRetryPolicy().getRules().get(503));
   }
 
+  @Test
+  public void parseRetryBudget() {
+    ApplicationConfig applicationConfig = buildTestConfig();
+    applicationConfig.getHosts().get(DEFAULT).getProfiles().get(DEFAULT).setRetryBudgetPercent(20f).setMinRetriesPerSec(5);
+
+    UpstreamConfig config = ApplicationConfig.toUpstreamConfigs(applicationConfig, DEFAULT).get(DEFAULT).get();
+
+    assertEquals(0.2, config.getRetryBudgetRatio(), 1e-6);
+    assertEquals(5, config.getMinRetriesPerSec());
+  }
+
   public static ApplicationConfig buildTestConfig() {
 
     Profile profile = new Profile()
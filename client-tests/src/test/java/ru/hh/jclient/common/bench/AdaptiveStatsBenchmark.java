@@ -0,0 +1,76 @@
+package ru.hh.jclient.common.bench;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.hh.jclient.common.balancing.Server;
+import ru.hh.jclient.common.balancing.UpstreamConfig;
+import ru.hh.jclient.common.balancing.UpstreamMorozov;
+import ru.hh.jclient.common.balancing.config.ApplicationConfig;
+
+/**
+ * Measures contention on adaptive balancing statistics: all threads report results of the same server
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdaptiveStatsBenchmark {
+  private static final String DATACENTER = "test";
+
+  private UpstreamMorozov upstream;
+
+  public static void main(String[] args) throws RunnerException {
+    var opt = new OptionsBuilder()
+        .include(AdaptiveStatsBenchmark.class.getSimpleName())
+        .forks(1)
+        .jvmArgsAppend("-DrootLoggingLevel=WARN")
+        .build();
+    new Runner(opt).run();
+  }
+
+  @Setup
+  public void setUp() {
+    List<Server> servers = List.of(new Server("server1", 100, DATACENTER), new Server("server2", 100, DATACENTER));
+    upstream = new UpstreamMorozov(
+        "test", ApplicationConfig.toUpstreamConfigs(new ApplicationConfig(), UpstreamConfig.DEFAULT), servers, DATACENTER, false, true
+    );
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void release() {
+    releaseRandomResult();
+  }
+
+  @Benchmark
+  @Group("releaseAndSelect")
+  @GroupThreads(3)
+  public void releaseInGroup() {
+    releaseRandomResult();
+  }
+
+  @Benchmark
+  @Group("releaseAndSelect")
+  @GroupThreads(1)
+  public int selectInGroup() {
+    return upstream.acquireAdaptiveServersCount(UpstreamConfig.DEFAULT);
+  }
+
+  private void releaseRandomResult() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    upstream.releaseAdaptiveServerIndex(0, random.nextInt(10) == 0, 1_000 + random.nextInt(1_000));
+  }
+}
@@ -0,0 +1,102 @@
+package ru.hh.jclient.common.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import javax.xml.bind.JAXBContext;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.hh.jclient.common.Response;
+import ru.hh.jclient.common.model.ProtobufTest.ProtobufTestMessage;
+import ru.hh.jclient.common.model.XmlTest;
+import ru.hh.jclient.common.responseconverter.ProtobufConverter;
+import ru.hh.jclient.common.responseconverter.XmlConverter;
+
+/**
+ * Per-response cost of XML and protobuf converters, including creation of converter like every expect* call does.
+ * Benchmarks with "uncached" suffix repeat what converters did before per-type state was cached:
+ * created unmarshaller and looked up parseFrom method for every response
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConverterBenchmark {
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+  private JAXBContext context;
+  private Response xmlResponse;
+  private Response protobufResponse;
+
+  public static void main(String[] args) throws RunnerException {
+    var opt = new OptionsBuilder()
+        .include(ConverterBenchmark.class.getSimpleName())
+        .forks(1)
+        .jvmArgsAppend("-DrootLoggingLevel=WARN")
+        .build();
+    new Runner(opt).run();
+  }
+
+  @Setup
+  public void setUp() throws Exception {
+    context = JAXBContext.newInstance(XmlTest.class);
+    ByteArrayOutputStream xml = new ByteArrayOutputStream();
+    context.createMarshaller().marshal(new XmlTest("benchmark"), xml);
+    xmlResponse = new BodyResponse(xml.toByteArray());
+
+    ProtobufTestMessage message = ProtobufTestMessage.newBuilder().addAllIds(() -> IntStream.range(0, 100).boxed().iterator()).build();
+    protobufResponse = new BodyResponse(message.toByteArray());
+  }
+
+  @Benchmark
+  public XmlTest xml() throws Exception {
+    return new XmlConverter<>(context, XmlTest.class).singleTypeConverterFunction().apply(xmlResponse).get().get();
+  }
+
+  @Benchmark
+  public XmlTest xmlUncached() throws Exception {
+    XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StreamSource(xmlResponse.getResponseBodyAsStream()));
+    return context.createUnmarshaller().unmarshal(reader, XmlTest.class).getValue();
+  }
+
+  @Benchmark
+  public ProtobufTestMessage protobuf() throws Exception {
+    return new ProtobufConverter<>(ProtobufTestMessage.class).singleTypeConverterFunction().apply(protobufResponse).get().get();
+  }
+
+  @Benchmark
+  public ProtobufTestMessage protobufUncached() throws Exception {
+    return (ProtobufTestMessage) ProtobufTestMessage.class.getMethod("parseFrom", InputStream.class)
+        .invoke(null, protobufResponse.getResponseBodyAsStream());
+  }
+
+  private static final class BodyResponse extends Response {
+    private final byte[] body;
+
+    private BodyResponse(byte[] body) {
+      this.body = body;
+    }
+
+    @Override
+    public int getStatusCode() {
+      return 200;
+    }
+
+    @Override
+    public InputStream getResponseBodyAsStream() {
+      return new ByteArrayInputStream(body);
+    }
+  }
+}
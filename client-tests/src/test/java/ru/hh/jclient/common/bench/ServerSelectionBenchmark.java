@@ -0,0 +1,94 @@
+package ru.hh.jclient.common.bench;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.hh.jclient.common.balancing.Server;
+import ru.hh.jclient.common.balancing.UpstreamConfig;
+import ru.hh.jclient.common.balancing.UpstreamMorozov;
+import ru.hh.jclient.common.balancing.config.ApplicationConfig;
+import ru.hh.jclient.common.balancing.config.Host;
+import ru.hh.jclient.common.balancing.config.Profile;
+
+/**
+ * Measures server selection without http layer. Run with gc profiler (-prof gc):
+ * gc.alloc.rate.norm is expected to be ~0 bytes/op for every strategy.
+ * Contended benchmarks share one upstream between all threads, as responses of a hot upstream do
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServerSelectionBenchmark {
+  private static final String DATACENTER = "test";
+
+  @Param({"8", "300"})
+  private int serversCount;
+
+  @Param({"least_loaded", "power_of_two_choices"})
+  private String balancingStrategy;
+
+  private UpstreamMorozov upstream;
+  private final BitSet noTriedServers = new BitSet();
+  private final BitSet triedServers = new BitSet();
+
+  public static void main(String[] args) throws RunnerException {
+    var opt = new OptionsBuilder()
+        .include(ServerSelectionBenchmark.class.getSimpleName())
+        .forks(1)
+        .addProfiler(GCProfiler.class)
+        .jvmArgsAppend("-DrootLoggingLevel=WARN")
+        .build();
+    new Runner(opt).run();
+  }
+
+  @Setup
+  public void setUp() {
+    List<Server> servers = new ArrayList<>(serversCount);
+    for (int i = 0; i < serversCount; i++) {
+      servers.add(new Server("server" + i, 50 + i % 4 * 50, DATACENTER));
+    }
+    Profile profile = new Profile().setBalancingStrategy(balancingStrategy);
+    ApplicationConfig applicationConfig = new ApplicationConfig()
+        .setHosts(Map.of(UpstreamConfig.DEFAULT, new Host().setProfiles(Map.of(UpstreamConfig.DEFAULT, profile))));
+    upstream = new UpstreamMorozov(
+        "test", ApplicationConfig.toUpstreamConfigs(applicationConfig, UpstreamConfig.DEFAULT), servers, DATACENTER, false, true
+    );
+    triedServers.set(0);
+    triedServers.set(serversCount / 2);
+  }
+
+  @Benchmark
+  public int acquireRelease() {
+    int index = upstream.acquireServerIndex(UpstreamConfig.DEFAULT, noTriedServers);
+    upstream.releaseServerIndex(index, false, false);
+    return index;
+  }
+
+  @Benchmark
+  public int acquireReleaseRetry() {
+    int index = upstream.acquireServerIndex(UpstreamConfig.DEFAULT, triedServers);
+    upstream.releaseServerIndex(index, true, false);
+    return index;
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public int acquireReleaseContended() {
+    return acquireRelease();
+  }
+}
@@ -15,11 +15,16 @@ import static java.util.Objects.requireNonNull;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import static java.util.stream.Collectors.toList;
+import javax.annotation.Nullable;
 import javax.xml.bind.JAXBContext;
 import org.asynchttpclient.AsyncHttpClient;
+import ru.hh.jclient.common.responseconverter.IncrementalJsonConverter;
+import ru.hh.jclient.common.responseconverter.IncrementalTypeConverter;
 import ru.hh.jclient.common.responseconverter.JsonCollectionConverter;
 import ru.hh.jclient.common.responseconverter.JsonConverter;
 import ru.hh.jclient.common.responseconverter.JsonMapConverter;
@@ -28,6 +33,8 @@ import ru.hh.jclient.common.responseconverter.ProtobufConverter;
 import ru.hh.jclient.common.responseconverter.TypeConverter;
 import ru.hh.jclient.common.responseconverter.VoidConverter;
 import ru.hh.jclient.common.responseconverter.XmlConverter;
+import static ru.hh.jclient.common.util.JsonTypeConverter.convertClassToJavaType;
+import static ru.hh.jclient.common.util.JsonTypeConverter.convertReferenceToJavaType;
 import ru.hh.jclient.common.util.SimpleRange;
 import ru.hh.jclient.common.util.storage.Storage;
 import ru.hh.jclient.common.util.storage.StorageUtils.Storages;
@@ -48,6 +55,8 @@ public abstract class HttpClient {
   private Optional<?> requestBodyEntity = Optional.empty();
   private Optional<Collection<String>> expectedMediaTypes = Optional.empty();
   private Optional<Collection<String>> expectedMediaTypesForErrors = Optional.empty();
+  @Nullable
+  private IncrementalTypeConverter<?> incrementalConverter;
 
   private boolean readOnlyReplica;
   private boolean noSession;
@@ -147,6 +156,40 @@ public abstract class HttpClient {
     return this;
   }
 
+  /**
+   * Same as {@link #withProtobufBody(MessageLite)}, but body is serialized into pooled buffers,
+   * see {@link RequestBuilder#setStreamingBody}.
+   *
+   * @param body
+   *          protobuf object to send in request
+   */
+  public HttpClient withStreamingProtobufBody(MessageLite body) {
+    requestBodyEntity = Optional.of(requireNonNull(body, "body must not be null"));
+    RequestBuilder builder = new RequestBuilder(request);
+    builder.setStreamingBody(body::writeTo, "application/x-protobuf");
+    request = builder.build();
+    return this;
+  }
+
+  /**
+   * Same as {@link #withJavaObjectBody(Object)}, but body is serialized into pooled buffers,
+   * see {@link RequestBuilder#setStreamingBody}.
+   *
+   * @param body
+   *          java object to send in request
+   */
+  public HttpClient withStreamingJavaObjectBody(Object body) {
+    requestBodyEntity = Optional.of(requireNonNull(body, "body must not be null"));
+    RequestBuilder builder = new RequestBuilder(request);
+    builder.setStreamingBody(byteOut -> {
+      ObjectOutputStream out = new ObjectOutputStream(byteOut);
+      out.writeObject(body);
+      out.flush();
+    }, "application/x-java-serialized-object");
+    request = builder.build();
+    return this;
+  }
+
   // parsing response
 
   /**
@@ -161,6 +204,17 @@ public abstract class HttpClient {
     return new ResultProcessor<>(this, converter);
   }
 
+  /**
+   * Specifies that the type of result must be XML, parsed with JAXB context created once for the type.
+   *
+   * @param xmlClass type of result
+   */
+  public <T> ResultProcessor<T> expectXml(Class<T> xmlClass) {
+    TypeConverter<T> converter = new XmlConverter<>(xmlClass);
+    expectedMediaTypes = converter.getSupportedContentTypes();
+    return new ResultProcessor<>(this, converter);
+  }
+
   /**
    * Specifies that the type of result must be JSON.
    *
@@ -185,6 +239,28 @@ public abstract class HttpClient {
     return new ResultProcessor<>(this, converter);
   }
 
+  /**
+   * Same as {@link #expectJson(ObjectMapper, Class)}, but body of successful response is tokenized as it arrives
+   * instead of being aggregated, see {@link IncrementalJsonConverter}.
+   *
+   * @param mapper Jackson mapper used to parse response
+   * @param jsonClass type of result
+   */
+  public <T> ResultProcessor<T> expectIncrementalJson(ObjectMapper mapper, Class<T> jsonClass) {
+    return expect(new IncrementalJsonConverter<>(mapper, jsonClass));
+  }
+
+  /**
+   * Same as {@link #expectJson(ObjectMapper, TypeReference)}, but body of successful response is tokenized as it arrives
+   * instead of being aggregated, see {@link IncrementalJsonConverter}.
+   *
+   * @param mapper Jackson mapper used to parse response
+   * @param jsonClass type of result allowing generics
+   */
+  public <T> ResultProcessor<T> expectIncrementalJson(ObjectMapper mapper, TypeReference<T> jsonClass) {
+    return expect(new IncrementalJsonConverter<>(mapper, jsonClass));
+  }
+
   /**
    * Specifies that the type of result must be a collection of JSON objects.
    *
@@ -209,6 +285,28 @@ public abstract class HttpClient {
     return new ResultProcessor<>(this, converter);
   }
 
+  /**
+   * Specifies that the result must be a JSON array, elements of which are published while the response is downloading.
+   * The request is executed when a subscriber subscribes to the publisher, see {@link JsonStreamPublisher}.
+   *
+   * @param mapper Jackson mapper used to parse response
+   * @param jsonClass type of JSON object
+   */
+  public <T> Flow.Publisher<T> expectJsonStream(ObjectMapper mapper, Class<T> jsonClass) {
+    return new JsonStreamPublisher<>(this, mapper, convertClassToJavaType(mapper, jsonClass));
+  }
+
+  /**
+   * Specifies that the result must be a JSON array, elements of which are published while the response is downloading.
+   * The request is executed when a subscriber subscribes to the publisher, see {@link JsonStreamPublisher}.
+   *
+   * @param mapper Jackson mapper used to parse response
+   * @param jsonClass type of JSON object allowing generics
+   */
+  public <T> Flow.Publisher<T> expectJsonStream(ObjectMapper mapper, TypeReference<T> jsonClass) {
+    return new JsonStreamPublisher<>(this, mapper, convertReferenceToJavaType(mapper, jsonClass));
+  }
+
   /**
    * Specifies that the type of result must be a map with JSON objects.
    *
@@ -290,6 +388,9 @@ public abstract class HttpClient {
    */
   public <T> ResultProcessor<T> expect(TypeConverter<T> converter) {
     expectedMediaTypes = converter.getSupportedContentTypes();
+    if (converter instanceof IncrementalTypeConverter) {
+      incrementalConverter = (IncrementalTypeConverter<T>) converter;
+    }
     return new ResultProcessor<>(this, converter);
   }
 
@@ -309,13 +410,19 @@ public abstract class HttpClient {
    */
   public CompletableFuture<Response> unconverted() {
     RequestStrategy.RequestExecutor requestExecutor = createRequestExecutor();
-    return requestEngineBuilder.build(request, requestExecutor).execute();
+    Request executedRequest = request;
+    CompletableFuture<Response> future = requestEngineBuilder.build(executedRequest, requestExecutor).execute();
+    // all tries are done, pooled body buffers are not needed anymore
+    future.whenComplete((response, throwable) -> executedRequest.releaseBody());
+    return future;
   }
 
   abstract RequestStrategy.RequestExecutor createRequestExecutor();
 
   abstract CompletableFuture<ResponseWrapper> executeRequest(Request request, int retryCount, RequestContext context);
 
+  abstract Executor getCallbackExecutor();
+
   boolean isNoSessionRequired() {
     String host = request.getUri().getHost();
     return noSession || hostsWithSession.stream().map(Uri::create).map(Uri::getHost).noneMatch(host::equals);
@@ -348,6 +455,11 @@ public abstract class HttpClient {
     return expectedMediaTypes;
   }
 
+  @Nullable
+  IncrementalTypeConverter<?> getIncrementalConverter() {
+    return incrementalConverter;
+  }
+
   Optional<Collection<String>> getExpectedMediaTypesForErrors() {
     return expectedMediaTypesForErrors;
   }
@@ -8,6 +8,8 @@ import java.util.Map;
 import static java.util.Objects.requireNonNull;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
 import static ru.hh.jclient.common.RequestUtils.isInDebugMode;
 import ru.hh.jclient.common.util.storage.StorageUtils;
@@ -25,6 +27,7 @@ public class HttpClientContext {
   private final List<Supplier<RequestDebug>> debugSuppliers;
   private final Optional<String> requestId;
   private final Storages storages;
+  private final ConcurrentMap<RequestHeadersTemplate.Key, RequestHeadersTemplate> headersTemplates = new ConcurrentHashMap<>();
 
   public HttpClientContext(Map<String, List<String>> headers, Map<String, List<String>> queryParams, List<Supplier<RequestDebug>> debugSuppliers) {
     this(headers, queryParams, debugSuppliers, StorageUtils.build(emptySet()));
@@ -92,6 +95,13 @@ public class HttpClientContext {
     return storages;
   }
 
+  /**
+   * @return headers template shared by local requests with the same expectations, see {@link RequestHeadersTemplate}
+   */
+  RequestHeadersTemplate getHeadersTemplate(RequestHeadersTemplate.Key key) {
+    return headersTemplates.computeIfAbsent(key, templateKey -> RequestHeadersTemplate.create(headers, templateKey));
+  }
+
   @Override
   public String toString() {
     return "HttpClientContext for " + requestId.orElse("unknown") + " requestId (" + this.hashCode() + ')';
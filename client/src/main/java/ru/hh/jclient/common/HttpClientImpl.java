@@ -1,6 +1,8 @@
 package ru.hh.jclient.common;
 
+import io.netty.channel.Channel;
 import static java.lang.Boolean.TRUE;
+import java.net.InetSocketAddress;
 import java.time.Instant;
 import static java.time.Instant.now;
 import java.time.temporal.ChronoUnit;
@@ -9,12 +11,16 @@ import java.util.Set;
 import static java.util.Set.of;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 import static java.util.stream.Collectors.toList;
+import javax.annotation.Nullable;
 import org.asynchttpclient.AsyncCompletionHandler;
 import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.Param;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static ru.hh.jclient.common.HttpHeaderNames.ACCEPT;
@@ -32,8 +38,10 @@ import static ru.hh.jclient.common.HttpHeaderNames.X_REQUEST_ID;
 import static ru.hh.jclient.common.HttpHeaderNames.X_SOURCE;
 import static ru.hh.jclient.common.HttpParams.READ_ONLY_REPLICA;
 import ru.hh.jclient.common.RequestStrategy.RequestExecutor;
-import ru.hh.jclient.common.util.ContentType;
+import ru.hh.jclient.common.responseconverter.BodyPartsParser;
+import ru.hh.jclient.common.responseconverter.IncrementalTypeConverter;
 import ru.hh.jclient.common.util.MDCCopy;
+import ru.hh.jclient.common.util.Try;
 import ru.hh.jclient.common.util.storage.Storage;
 import ru.hh.jclient.common.util.storage.StorageUtils.Transfers;
 
@@ -54,6 +62,11 @@ class HttpClientImpl extends HttpClient {
       X_HH_PROFESSIONAL_ROLES_MODE);
 
   private final Executor callbackExecutor;
+  /**
+   * template of the first try, reused by retries and hedges. Not volatile: the template is immutable and the same for every try,
+   * so a try which does not see it just looks it up again
+   */
+  private RequestHeadersTemplate headersTemplate;
 
   HttpClientImpl(AsyncHttpClient http,
                  Request request,
@@ -76,7 +89,7 @@ class HttpClientImpl extends HttpClient {
       check.beforeExecute(this, originalRequest);
     }
 
-    CompletableFuture<ResponseWrapper> promise = new CompletableFuture<>();
+    AbortablePromise promise = new AbortablePromise();
 
     Request request = addHeadersAndParams(originalRequest);
     if (LOGGER.isTraceEnabled()) {
@@ -91,60 +104,59 @@ class HttpClientImpl extends HttpClient {
     }
 
     Transfers transfers = getStorages().prepare();
-    CompletionHandler handler = new CompletionHandler(promise, request, now(), getDebugs(), transfers, callbackExecutor);
-    getHttp().executeRequest(request.getDelegate(), handler);
+    CompletionHandler handler = new CompletionHandler(promise, request, now(), getDebugs(), transfers, callbackExecutor,
+        getIncrementalConverter());
+    promise.setRequestFuture(getHttp().executeRequest(request.getDelegate(), handler));
 
     return promise;
   }
 
+  @Override
+  Executor getCallbackExecutor() {
+    return callbackExecutor;
+  }
+
   private Request addHeadersAndParams(Request request) {
-    RequestBuilder requestBuilder = new RequestBuilder(request);
+    RequestHeadersTemplate template = getHeadersTemplate();
+    boolean enableDebug = template.isDebugEnabled();
 
     // compute headers. Headers from context are used as base, with headers from request overriding any existing values
     HttpHeaders headers = new HttpHeaders();
     if (!isExternalRequest()) {
       headers.add(HttpHeaderNames.X_OUTER_TIMEOUT_MS, Integer.toString(request.getRequestTimeout()));
-      PASS_THROUGH_HEADERS.stream()
-        .filter(getContext().getHeaders()::containsKey)
-        .forEach(h -> headers.add(h, getContext().getHeaders().get(h)));
     }
-
-    boolean canUnwrapDebugResponse = getDebugs().stream().anyMatch(RequestDebug::canUnwrapDebugResponse);
-    boolean enableDebug = !isNoDebug() && !isExternalRequest() && getContext().isDebugMode() && canUnwrapDebugResponse;
-
-    // debug header is passed through by default, but should be removed if debug is not enabled
-    if (!enableDebug) {
-      headers.remove(X_HH_DEBUG);
-    }
-
+    headers.add(template.getPassThroughHeaders());
     headers.add(request.getHeaders());
 
     if (isNoSessionRequired()) {
       headers.remove(HH_PROTO_SESSION);
     }
 
-    requestBuilder.setHeaders(headers);
+    // sanity check for debug header if debug is not enabled, before debug header is added
+    if (!enableDebug && headers.contains(X_HH_DEBUG)) {
+      throw new IllegalStateException("Debug header in request when debug is disabled");
+    }
 
-    if (!headers.contains(ACCEPT) && getExpectedMediaTypes().isPresent()) {
-      requestBuilder.addHeader(ACCEPT, String.join(",", getExpectedMediaTypes().get()));
+    if (template.getAccept() != null && !headers.contains(ACCEPT)) {
+      headers.add(ACCEPT, template.getAccept());
     }
 
-    if (!areAllowedMediaTypesForResponseAndErrorCompatible()) {
+    if (!template.areMediaTypesCompatible()) {
       LOGGER.warn("Different MediaTypes for successful answer and for errors on {} {} s: {} e: {} ",
           request.getMethod(),
           request.getUri(),
-          getExpectedMediaTypes().get().stream().map(Object::toString).collect(Collectors.joining(",")),
-          getExpectedMediaTypesForErrors().get().stream().map(Object::toString).collect(Collectors.joining(","))
+          template.getAccept(),
+          template.getAcceptErrors()
       );
     }
 
-    if (!headers.contains(X_HH_ACCEPT_ERRORS) && getExpectedMediaTypesForErrors().isPresent()) {
-      requestBuilder.addHeader(
-          X_HH_ACCEPT_ERRORS,
-          getExpectedMediaTypesForErrors().get().stream().map(Object::toString).collect(Collectors.joining(","))
-      );
+    if (template.getAcceptErrors() != null && !headers.contains(X_HH_ACCEPT_ERRORS)) {
+      headers.add(X_HH_ACCEPT_ERRORS, template.getAcceptErrors());
     }
 
+    RequestBuilder requestBuilder = new RequestBuilder(request);
+    requestBuilder.setHeaders(headers);
+
     // add readonly param
     if (useReadOnlyReplica() && !isExternalRequest()) {
       requestBuilder.addQueryParam(READ_ONLY_REPLICA, TRUE.toString());
@@ -156,29 +168,36 @@ class HttpClientImpl extends HttpClient {
       requestBuilder.addQueryParam(HttpParams.DEBUG, HttpParams.getDebugValue());
     }
 
-    // sanity check for debug header/param if debug is not enabled
+    // sanity check for debug param if debug is not enabled
     if (!enableDebug) {
-      if (headers.contains(X_HH_DEBUG)) {
-        throw new IllegalStateException("Debug header in request when debug is disabled");
-      }
-
-      if (request.getQueryParams().stream().anyMatch(param -> param.getName().equals(HttpParams.DEBUG))) {
-        throw new IllegalStateException("Debug param in request when debug is disabled");
+      for (Param param : request.getDelegate().getQueryParams()) {
+        if (param.getName().equals(HttpParams.DEBUG)) {
+          throw new IllegalStateException("Debug param in request when debug is disabled");
+        }
       }
     }
     return requestBuilder.build();
   }
 
-  private boolean areAllowedMediaTypesForResponseAndErrorCompatible() {
-    if (getExpectedMediaTypes().isEmpty() || getExpectedMediaTypesForErrors().isEmpty()) {
-      return true;
+  private RequestHeadersTemplate getHeadersTemplate() {
+    RequestHeadersTemplate template = headersTemplate;
+    if (template == null) {
+      boolean enableDebug = !isNoDebug() && !isExternalRequest() && getContext().isDebugMode() && canUnwrapDebugResponse();
+      template = getContext().getHeadersTemplate(
+          new RequestHeadersTemplate.Key(isExternalRequest(), enableDebug, getExpectedMediaTypes(), getExpectedMediaTypesForErrors())
+      );
+      headersTemplate = template;
     }
+    return template;
+  }
 
-    if (getExpectedMediaTypes().get().size() == 1 && getExpectedMediaTypes().get().contains(ContentType.ANY)) {
-      return true;
+  private boolean canUnwrapDebugResponse() {
+    for (RequestDebug debug : getDebugs()) {
+      if (debug.canUnwrapDebugResponse()) {
+        return true;
+      }
     }
-
-    return getExpectedMediaTypes().get().equals(getExpectedMediaTypesForErrors().get());
+    return false;
   }
 
   @Override
@@ -212,6 +231,11 @@ class HttpClientImpl extends HttpClient {
       public int getDefaultRequestTimeoutMs() {
         return getHttp().getConfig().getRequestTimeout();
       }
+
+      @Override
+      public Executor getCallbackExecutor() {
+        return callbackExecutor;
+      }
     };
   }
 
@@ -243,6 +267,30 @@ class HttpClientImpl extends HttpClient {
   }
 
 
+  /**
+   * aborts http request when cancelled, so a caller which is not interested in the response anymore frees the connection
+   */
+  static final class AbortablePromise extends CompletableFuture<ResponseWrapper> {
+    private volatile Future<?> requestFuture;
+
+    void setRequestFuture(@Nullable Future<?> requestFuture) {
+      this.requestFuture = requestFuture;
+      if (requestFuture != null && isCancelled()) {
+        requestFuture.cancel(true);
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      Future<?> requestFuture = this.requestFuture;
+      if (cancelled && requestFuture != null) {
+        requestFuture.cancel(true);
+      }
+      return cancelled;
+    }
+  }
+
   static class CompletionHandler extends AsyncCompletionHandler<ResponseWrapper> {
     private final MDCCopy mdcCopy;
     private final CompletableFuture<ResponseWrapper> promise;
@@ -251,9 +299,23 @@ class HttpClientImpl extends HttpClient {
     private final List<RequestDebug> requestDebugs;
     private final Transfers contextTransfers;
     private final Executor callbackExecutor;
+    @Nullable
+    private final IncrementalTypeConverter<?> incrementalConverter;
+    // body parts of a response are received sequentially on IO thread
+    @Nullable
+    private BodyPartsParser bodyPartsParser;
+    @Nullable
+    private Exception parsingFailure;
+    /**
+     * connection of the request, reads of which are paused by body parts parser
+     */
+    @Nullable
+    private volatile Channel channel;
+    private volatile boolean readsPaused;
 
     CompletionHandler(CompletableFuture<ResponseWrapper> promise, Request request, Instant requestStart,
-                      List<RequestDebug> requestDebugs, Transfers contextTransfers, Executor callbackExecutor) {
+                      List<RequestDebug> requestDebugs, Transfers contextTransfers, Executor callbackExecutor,
+                      @Nullable IncrementalTypeConverter<?> incrementalConverter) {
       this.requestStart = requestStart;
       mdcCopy = MDCCopy.capture();
       this.promise = promise;
@@ -261,10 +323,52 @@ class HttpClientImpl extends HttpClient {
       this.requestDebugs = List.copyOf(requestDebugs);
       this.contextTransfers = contextTransfers;
       this.callbackExecutor = callbackExecutor;
+      this.incrementalConverter = incrementalConverter;
+    }
+
+    @Override
+    public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+      channel = connection;
+    }
+
+    @Override
+    public void onConnectionPooled(Channel connection) {
+      channel = connection;
+    }
+
+    @Override
+    public State onStatusReceived(HttpResponseStatus status) throws Exception {
+      // only bodies of successful responses are parsed by converter, others are aggregated for error converters and debug
+      bodyPartsParser = incrementalConverter != null && OK_RANGE.contains(status.getStatusCode())
+          ? incrementalConverter.createBodyPartsParser()
+          : null;
+      parsingFailure = null;
+      if (bodyPartsParser != null) {
+        bodyPartsParser.setReads(new ChannelReads());
+      }
+      return super.onStatusReceived(status);
+    }
+
+    @Override
+    public State onBodyPartReceived(HttpResponseBodyPart content) throws Exception {
+      if (bodyPartsParser == null) {
+        return super.onBodyPartReceived(content);
+      }
+      if (parsingFailure == null) {
+        try {
+          bodyPartsParser.onBodyPart(content.getBodyPartBytes());
+        } catch (Exception e) {
+          // the rest of the body is skipped, converter reports the failure
+          parsingFailure = e;
+        }
+      }
+      // e.g. consumer of parsed body has cancelled, the connection is closed instead of reading the rest of the body
+      return bodyPartsParser.isAborted() ? State.ABORT : State.CONTINUE;
     }
 
     @Override
     public ResponseWrapper onCompleted(org.asynchttpclient.Response response) {
+      resumeReads();
       int responseStatusCode = response.getStatusCode();
       String responseStatusText = response.getStatusText();
 
@@ -277,6 +381,7 @@ class HttpClientImpl extends HttpClient {
 
     @Override
     public void onThrowable(Throwable t) {
+      resumeReads();
       org.asynchttpclient.Response response = TransportExceptionMapper.map(t, request.getUri());
       long timeToLastByteMicros = getTimeToLastByte();
 
@@ -302,7 +407,7 @@ class HttpClientImpl extends HttpClient {
 
     private ResponseWrapper proceedWithResponse(org.asynchttpclient.Response response, long responseTimeMicros) {
       return HttpClientImpl.proceedWithResponse(
-          new Response(response),
+          new Response(response, completeParsing()),
           responseTimeMicros,
           requestDebugs,
           contextTransfers,
@@ -310,6 +415,47 @@ class HttpClientImpl extends HttpClient {
           callbackExecutor);
     }
 
+    /**
+     * the connection may go back to the pool, it should read responses of next requests
+     */
+    private void resumeReads() {
+      Channel channel = this.channel;
+      if (readsPaused && channel != null) {
+        readsPaused = false;
+        channel.config().setAutoRead(true);
+      }
+    }
+
+    private final class ChannelReads implements BodyPartsParser.Reads {
+
+      @Override
+      public void pause() {
+        Channel channel = CompletionHandler.this.channel;
+        if (channel != null) {
+          readsPaused = true;
+          channel.config().setAutoRead(false);
+        }
+      }
+
+      @Override
+      public void resume() {
+        resumeReads();
+      }
+    }
+
+    @Nullable
+    private Try<Object> completeParsing() {
+      BodyPartsParser parser = bodyPartsParser;
+      if (parser == null) {
+        return null;
+      }
+      bodyPartsParser = null;
+      if (parsingFailure != null) {
+        return Try.failure(parsingFailure);
+      }
+      return Try.of(parser::onCompleted);
+    }
+
     private void completeExceptionally(Throwable t) {
       Runnable completeExceptionallyTask = () -> {
         try {
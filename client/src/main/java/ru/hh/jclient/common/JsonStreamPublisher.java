@@ -0,0 +1,403 @@
+package ru.hh.jclient.common;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.hh.jclient.common.exception.ResponseConverterException;
+import ru.hh.jclient.common.responseconverter.BodyPartsParser;
+import ru.hh.jclient.common.responseconverter.IncrementalTypeConverter;
+import ru.hh.jclient.common.responseconverter.SingleTypeConverter;
+import static ru.hh.jclient.common.util.ContentType.APPLICATION_JSON;
+import ru.hh.jclient.common.util.MoreFunctionalInterfaces.FailableFunction;
+import ru.hh.jclient.common.util.Try;
+import ru.hh.jclient.common.util.storage.StorageUtils.Transfers;
+
+/**
+ * Publishes elements of JSON array in response body while it is downloading. The request is executed when the subscriber subscribes,
+ * only one subscriber is supported.
+ * Body parts are split into elements on IO thread, elements are bound to their type and passed to the subscriber on callback executor
+ * as the subscriber requests them. Elements which are parsed but not requested yet are buffered: once there are
+ * {@link #MAX_BUFFERED_ELEMENTS} of them, reading of the connection is paused until the subscriber takes half of them.
+ * The buffer may exceed the bound by elements of body parts which are already read, a paused request is still limited by its timeout.
+ * Cancellation of the subscription aborts the request and closes its connection.
+ * Once an element of some try is published, other tries can not be published: if the request is retried after that
+ * (e.g. connection is reset in the middle of the body), the subscriber gets an error instead of duplicate elements.
+ * Errors are the same as errors of {@link ResultProcessor#result()}.
+ */
+final class JsonStreamPublisher<T> implements Flow.Publisher<T> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JsonStreamPublisher.class);
+  private static final Set<String> MEDIA_TYPES = Set.of(APPLICATION_JSON);
+  static final int MAX_BUFFERED_ELEMENTS = 256;
+  private static final int RESUME_READS_ELEMENTS = MAX_BUFFERED_ELEMENTS / 2;
+
+  private final HttpClient httpClient;
+  private final ObjectMapper objectMapper;
+  private final JavaType elementType;
+  private final ResultProcessor<Void> resultProcessor;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+  private final AtomicReference<ElementsParser> publishingParser = new AtomicReference<>();
+  private final Queue<TokenBuffer> elements = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger bufferedElements = new AtomicInteger();
+  private final AtomicBoolean readsPaused = new AtomicBoolean();
+  private volatile ElementsSubscription subscription;
+
+  JsonStreamPublisher(HttpClient httpClient, ObjectMapper objectMapper, JavaType elementType) {
+    this.httpClient = httpClient;
+    this.objectMapper = objectMapper;
+    this.elementType = elementType;
+    this.resultProcessor = httpClient.expect(new ElementsConverter());
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber must not be null");
+    }
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("Response can be published to only one subscriber"));
+      return;
+    }
+    subscription = new ElementsSubscription(subscriber, httpClient.getCallbackExecutor(), httpClient.getStorages().prepare());
+    subscriber.onSubscribe(subscription);
+    CompletableFuture<Void> result = resultProcessor.result();
+    result.whenComplete((ignored, throwable) -> subscription.onResult(throwable));
+  }
+
+  private boolean isCancelled() {
+    ElementsSubscription subscription = this.subscription;
+    return subscription != null && subscription.cancelled;
+  }
+
+  /**
+   * called on IO thread by publishing parser once the buffer is full
+   */
+  private void pauseReads(ElementsParser parser) {
+    BodyPartsParser.Reads reads = parser.reads;
+    if (reads == null || readsPaused.get()) {
+      return;
+    }
+    // marked after pausing, so the subscriber never resumes reads before they are paused
+    reads.pause();
+    readsPaused.set(true);
+    // the subscriber may have taken elements before reads were marked paused, and would not resume them then
+    if (bufferedElements.get() <= RESUME_READS_ELEMENTS || isCancelled()) {
+      resumeReads();
+    }
+  }
+
+  /**
+   * called by subscription once half of the buffer is taken, or once it is cancelled, so that the request is aborted on next body part
+   */
+  private void resumeReads() {
+    ElementsParser parser = publishingParser.get();
+    BodyPartsParser.Reads reads = parser != null ? parser.reads : null;
+    if (reads != null && readsPaused.compareAndSet(true, false)) {
+      reads.resume();
+    }
+  }
+
+  /**
+   * checks content type and which try was published, the elements themselves are published by parsers
+   */
+  private final class ElementsConverter extends SingleTypeConverter<Void> implements IncrementalTypeConverter<Void> {
+
+    @Override
+    public BodyPartsParser createBodyPartsParser() {
+      try {
+        return new ElementsParser();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public FailableFunction<Response, ResultWithResponse<Void>, Exception> singleTypeConverterFunction() {
+      return r -> {
+        ElementsParser parser;
+        Try<Object> parsedBody = r.getParsedBody();
+        if (parsedBody == null) {
+          parser = new ElementsParser();
+          byte[] body = r.getResponseBodyAsBytes();
+          parser.onBodyPart(body != null ? body : new byte[0]);
+          parser.onCompleted();
+        } else if (parsedBody.isFailure()) {
+          throw new IOException("Failed to parse response body", parsedBody.reasonOfFail());
+        } else {
+          parser = (ElementsParser) parsedBody.get();
+        }
+        ElementsParser published = publishingParser.get();
+        if (published != null && published != parser) {
+          throw new IllegalStateException("Elements of another try of the request were already published");
+        }
+        return new ResultWithResponse<>(null, r);
+      };
+    }
+
+    @Override
+    protected Collection<String> getContentTypes() {
+      return MEDIA_TYPES;
+    }
+  }
+
+  /**
+   * splits root array into tokens of elements, which are queued if this try can be published
+   */
+  private final class ElementsParser implements BodyPartsParser {
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private boolean arrayStarted;
+    private boolean arrayFinished;
+    private int depth;
+    @Nullable
+    private TokenBuffer element;
+    @Nullable
+    private volatile Reads reads;
+
+    private ElementsParser() throws IOException {
+      parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+      feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    @Override
+    public void onBodyPart(byte[] bytes) throws IOException {
+      if (isCancelled()) {
+        return;
+      }
+      feeder.feedInput(bytes, 0, bytes.length);
+      readAvailableTokens();
+    }
+
+    @Override
+    public void setReads(Reads reads) {
+      this.reads = reads;
+    }
+
+    @Override
+    public boolean isAborted() {
+      return isCancelled();
+    }
+
+    @Override
+    public ElementsParser onCompleted() throws IOException {
+      if (isCancelled()) {
+        return this;
+      }
+      feeder.endOfInput();
+      readAvailableTokens();
+      parser.close();
+      if (!arrayFinished) {
+        throw new JsonParseException(parser, "Unexpected end of array");
+      }
+      return this;
+    }
+
+    private void readAvailableTokens() throws IOException {
+      JsonToken token;
+      while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+        if (!arrayStarted) {
+          if (token != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected array, got " + token);
+          }
+          arrayStarted = true;
+          continue;
+        }
+        if (arrayFinished) {
+          throw new JsonParseException(parser, "Unexpected token after array: " + token);
+        }
+        if (depth == 0) {
+          if (token == JsonToken.END_ARRAY) {
+            arrayFinished = true;
+            continue;
+          }
+          element = new TokenBuffer(objectMapper, false);
+          element.forceUseOfBigDecimal(objectMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS));
+        }
+        element.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+          depth++;
+        } else if (token.isStructEnd()) {
+          depth--;
+        }
+        if (depth == 0) {
+          publish(element);
+          element = null;
+        }
+      }
+    }
+
+    private void publish(TokenBuffer element) {
+      if (publishingParser.get() != this && !publishingParser.compareAndSet(null, this)) {
+        // another try is published, this one will be rejected by converter if it completes the request
+        return;
+      }
+      elements.add(element);
+      if (bufferedElements.incrementAndGet() >= MAX_BUFFERED_ELEMENTS) {
+        pauseReads(this);
+      }
+      ElementsSubscription subscription = JsonStreamPublisher.this.subscription;
+      if (subscription != null) {
+        subscription.drain();
+      }
+    }
+  }
+
+  private final class ElementsSubscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super T> subscriber;
+    private final Executor executor;
+    private final Transfers contextTransfers;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger drains = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile boolean completed;
+    @Nullable
+    private volatile Throwable failure;
+
+    private ElementsSubscription(Flow.Subscriber<? super T> subscriber, Executor executor, Transfers contextTransfers) {
+      this.subscriber = subscriber;
+      this.executor = executor;
+      this.contextTransfers = contextTransfers;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        onResult(new IllegalArgumentException("Requested number of elements must be positive, got " + n));
+        return;
+      }
+      requested.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      elements.clear();
+      resumeReads();
+    }
+
+    private void onResult(@Nullable Throwable throwable) {
+      if (throwable instanceof CompletionException && throwable.getCause() != null) {
+        throwable = throwable.getCause();
+      }
+      if (failure == null) {
+        failure = throwable;
+      }
+      completed = true;
+      drain();
+    }
+
+    private void drain() {
+      if (drains.getAndIncrement() != 0) {
+        return;
+      }
+      try {
+        // deliver to subscriber in a separate thread not to block ning thread
+        executor.execute(this::drainLoop);
+      } catch (RejectedExecutionException e) {
+        LOGGER.warn("Failed to publish elements in a separate thread: {}, using current thread", e.toString());
+        drainLoop();
+      }
+    }
+
+    private void drainLoop() {
+      try {
+        // install context(s) for current (callback) thread so subscriber has context to run with
+        contextTransfers.perform();
+        int missed = 1;
+        do {
+          long requested = this.requested.get();
+          long delivered = 0;
+          while (true) {
+            if (cancelled) {
+              elements.clear();
+              return;
+            }
+            boolean completed = this.completed;
+            Throwable failure = this.failure;
+            if (completed && failure != null) {
+              terminate(failure);
+              return;
+            }
+            if (delivered == requested) {
+              if (completed && elements.isEmpty()) {
+                terminate(null);
+                return;
+              }
+              break;
+            }
+            TokenBuffer tokens = elements.poll();
+            if (tokens == null) {
+              if (completed) {
+                terminate(null);
+                return;
+              }
+              break;
+            }
+            if (bufferedElements.decrementAndGet() <= RESUME_READS_ELEMENTS && readsPaused.get()) {
+              resumeReads();
+            }
+            T element;
+            try {
+              element = objectMapper.readValue(tokens.asParser(objectMapper), elementType);
+            } catch (IOException | RuntimeException e) {
+              terminate(new ResponseConverterException("Failed to convert element", e));
+              return;
+            }
+            subscriber.onNext(element);
+            delivered++;
+          }
+          if (delivered != 0 && requested != Long.MAX_VALUE) {
+            this.requested.addAndGet(-delivered);
+          }
+          missed = drains.addAndGet(-missed);
+        } while (missed != 0);
+      } finally {
+        // remove context(s) once elements are delivered
+        contextTransfers.rollback();
+      }
+    }
+
+    private void terminate(@Nullable Throwable failure) {
+      cancelled = true;
+      elements.clear();
+      resumeReads();
+      if (failure != null) {
+        subscriber.onError(failure);
+      } else {
+        subscriber.onComplete();
+      }
+    }
+  }
+}
@@ -11,4 +11,28 @@ public interface Monitoring {
   void countRetry(String upstreamName, String serverDatacenter, String serverAddress, int statusCode, int firstStatusCode, int retryCount);
 
   void countUpdateIgnore(String upstreamName, String serverDatacenter);
+
+  /**
+   * counts retries which were not fired because retry budget of the upstream was exhausted
+   */
+  default void countRetryBudgetExhausted(String upstreamName, String serverDatacenter, int statusCode) {
+  }
+
+  /**
+   * counts requests rejected without sending because concurrency limit of the upstream was exceeded
+   */
+  default void countConcurrencyLimitRejection(String upstreamName, String clientDatacenter) {
+  }
+
+  /**
+   * reports adaptive concurrency limit of the upstream when it changes
+   */
+  default void reportConcurrencyLimit(String upstreamName, int limit) {
+  }
+
+  /**
+   * reports percent of requests sent to other datacenters because current datacenter lost part of its capacity, when it changes
+   */
+  default void reportCrossDcSpill(String upstreamName, String clientDatacenter, int percent) {
+  }
 }
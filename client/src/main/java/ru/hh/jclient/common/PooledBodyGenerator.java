@@ -0,0 +1,158 @@
+package ru.hh.jclient.common;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+import ru.hh.jclient.common.util.MoreFunctionalInterfaces.FailableConsumer;
+
+/**
+ * Serializes request body straight into pooled direct buffers instead of intermediate byte array.
+ * Serialization is done once, on the thread creating the generator, so IO threads only copy ready bytes to the channel.
+ * Every try of a request (retries and hedged tries included) gets its own {@link Body} over retained duplicates of the same buffers,
+ * which are released as soon as they are written or the write is aborted. The buffers themselves are released by {@link #release()}
+ * when the request completes. Pooled direct memory does not trigger GC, so cleaner releasing them once the generator is collected
+ * is only a safety net for a generator which is never executed
+ */
+final class PooledBodyGenerator implements BodyGenerator {
+  static final int CHUNK_SIZE = 16 * 1024;
+  private static final Cleaner CLEANER = Cleaner.create(runnable -> new Thread(runnable, "jclient-body-cleaner"));
+
+  private final List<ByteBuf> chunks;
+  private final long contentLength;
+  private final Cleaner.Cleanable cleanable;
+  private boolean released;
+
+  PooledBodyGenerator(FailableConsumer<OutputStream, IOException> writer) throws IOException {
+    this(writer, ByteBufAllocator.DEFAULT);
+  }
+
+  PooledBodyGenerator(FailableConsumer<OutputStream, IOException> writer, ByteBufAllocator allocator) throws IOException {
+    ChunkedOutputStream out = new ChunkedOutputStream(allocator);
+    try {
+      writer.accept(out);
+    } catch (IOException | RuntimeException e) {
+      releaseAll(out.chunks);
+      throw e;
+    }
+    this.chunks = List.copyOf(out.chunks);
+    this.contentLength = chunks.stream().mapToLong(ByteBuf::readableBytes).sum();
+    // the action must not reference the generator, otherwise it never becomes unreachable
+    List<ByteBuf> buffers = this.chunks;
+    this.cleanable = CLEANER.register(this, () -> buffers.forEach(ByteBuf::release));
+  }
+
+  @Override
+  public Body createBody() {
+    return new PooledBody();
+  }
+
+  /**
+   * releases buffers right away instead of waiting for the generator to be collected. Bodies which have started the transfer
+   * keep their duplicates, bodies which have not fail on the first transfer
+   */
+  synchronized void release() {
+    if (!released) {
+      released = true;
+      cleanable.clean();
+    }
+  }
+
+  private synchronized Deque<ByteBuf> retainChunks() throws IOException {
+    if (released) {
+      throw new IOException("Request body is already released, the request has completed");
+    }
+    Deque<ByteBuf> duplicates = new ArrayDeque<>(chunks.size());
+    for (ByteBuf chunk : chunks) {
+      duplicates.addLast(chunk.retainedDuplicate());
+    }
+    // buffers must not be released by cleaner before they are retained
+    Reference.reachabilityFence(this);
+    return duplicates;
+  }
+
+  /**
+   * retains buffers on the first transfer, so a try which is never written holds nothing
+   */
+  private final class PooledBody implements Body {
+    private Deque<ByteBuf> chunks;
+
+    @Override
+    public long getContentLength() {
+      return contentLength;
+    }
+
+    @Override
+    public BodyState transferTo(ByteBuf target) throws IOException {
+      if (chunks == null) {
+        chunks = retainChunks();
+      }
+      while (target.isWritable() && !chunks.isEmpty()) {
+        ByteBuf chunk = chunks.peekFirst();
+        target.writeBytes(chunk, Math.min(chunk.readableBytes(), target.writableBytes()));
+        if (!chunk.isReadable()) {
+          chunks.removeFirst().release();
+        }
+      }
+      return chunks.isEmpty() ? BodyState.STOP : BodyState.CONTINUE;
+    }
+
+    @Override
+    public void close() {
+      if (chunks != null) {
+        releaseAll(chunks);
+      }
+    }
+  }
+
+  private static void releaseAll(Deque<ByteBuf> chunks) {
+    ByteBuf chunk;
+    while ((chunk = chunks.pollFirst()) != null) {
+      chunk.release();
+    }
+  }
+
+  /**
+   * appends fixed size chunks instead of growing a single buffer, so written bytes are never copied on resize
+   */
+  private static final class ChunkedOutputStream extends OutputStream {
+    private final ByteBufAllocator allocator;
+    private final Deque<ByteBuf> chunks = new ArrayDeque<>();
+
+    private ChunkedOutputStream(ByteBufAllocator allocator) {
+      this.allocator = allocator;
+    }
+
+    private ByteBuf writableChunk() {
+      ByteBuf last = chunks.peekLast();
+      if (last == null || !last.isWritable()) {
+        last = allocator.directBuffer(CHUNK_SIZE, CHUNK_SIZE);
+        chunks.addLast(last);
+      }
+      return last;
+    }
+
+    @Override
+    public void write(int b) {
+      writableChunk().writeByte(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      while (len > 0) {
+        ByteBuf chunk = writableChunk();
+        int length = Math.min(len, chunk.writableBytes());
+        chunk.writeBytes(b, off, length);
+        off += length;
+        len -= length;
+      }
+    }
+  }
+}
@@ -177,4 +177,13 @@ public class Request {
   org.asynchttpclient.Request getDelegate() {
     return delegate;
   }
+
+  /**
+   * releases buffers of body set by {@link RequestBuilder#setStreamingBody}, if any
+   */
+  void releaseBody() {
+    if (delegate.getBodyGenerator() instanceof PooledBodyGenerator) {
+      ((PooledBodyGenerator) delegate.getBodyGenerator()).release();
+    }
+  }
 }
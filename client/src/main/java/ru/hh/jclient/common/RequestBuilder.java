@@ -2,7 +2,9 @@ package ru.hh.jclient.common;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -13,10 +15,13 @@ import java.util.Objects;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import javax.ws.rs.core.MediaType;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
 import org.asynchttpclient.request.body.multipart.Part;
 import static ru.hh.jclient.common.HttpHeaderNames.CONTENT_TYPE;
 import static ru.hh.jclient.common.Param.toParamDelegate;
 import ru.hh.jclient.common.exception.RequestConverterException;
+import ru.hh.jclient.common.util.MoreFunctionalInterfaces.FailableConsumer;
 
 public class RequestBuilder {
 
@@ -203,6 +208,52 @@ public class RequestBuilder {
     }
   }
 
+  /**
+   * Sets body written by writer straight into pooled direct buffers, without intermediate byte array.
+   * Writer is called once, on the calling thread, all tries of the request send the same buffers.
+   * Buffers are released when the request completes, so such request should not be executed again.
+   *
+   * @param writer writes body to provided stream, should not close it
+   * @throws RequestConverterException if writer fails with {@link IOException}
+   */
+  public RequestBuilder setStreamingBody(FailableConsumer<OutputStream, IOException> writer, String contentType) {
+    Objects.requireNonNull(writer, "writer must not be null");
+    try {
+      delegate.setBody(new PooledBodyGenerator(writer));
+    } catch (IOException e) {
+      throw new RequestConverterException("Failed to write body", e);
+    }
+    delegate.setHeader(CONTENT_TYPE, contentType);
+    return this;
+  }
+
+  /**
+   * Same as {@link #setJsonBody(ObjectMapper, Object)}, but body is serialized with {@link #setStreamingBody(FailableConsumer, String)}
+   */
+  public RequestBuilder setStreamingJsonBody(ObjectMapper mapper, Object bodyObject) {
+    return setStreamingBody(out -> {
+      try {
+        mapper.writeValue(out, bodyObject);
+      } catch (JsonProcessingException e) {
+        throw new RequestConverterException("Failed to convert " + bodyObject, e);
+      }
+    }, MediaType.APPLICATION_JSON);
+  }
+
+  /**
+   * Sets JAXB object as body serialized with {@link #setStreamingBody(FailableConsumer, String)},
+   * conversion errors are thrown as {@link RequestConverterException}
+   */
+  public RequestBuilder setStreamingXmlBody(JAXBContext context, Object bodyObject) {
+    return setStreamingBody(out -> {
+      try {
+        context.createMarshaller().marshal(bodyObject, out);
+      } catch (JAXBException e) {
+        throw new RequestConverterException("Failed to convert " + bodyObject, e);
+      }
+    }, MediaType.APPLICATION_XML);
+  }
+
   public RequestBuilder setHeader(CharSequence name, String value) {
     delegate.setHeader(name.toString(), value);
     return this;
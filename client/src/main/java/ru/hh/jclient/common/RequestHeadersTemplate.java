@@ -0,0 +1,131 @@
+package ru.hh.jclient.common;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import static ru.hh.jclient.common.HttpHeaderNames.X_HH_DEBUG;
+import ru.hh.jclient.common.util.ContentType;
+
+/**
+ * Part of outgoing request headers which depends only on {@link HttpClientContext} and expected media types of converter:
+ * headers passed through from incoming request and values of Accept headers.
+ * Built once per combination and shared by all requests of the context and their retries, so a request is built with a single merge
+ */
+final class RequestHeadersTemplate {
+  private final HttpHeaders passThroughHeaders;
+  private final boolean debugEnabled;
+  @Nullable
+  private final String accept;
+  @Nullable
+  private final String acceptErrors;
+  private final boolean mediaTypesCompatible;
+
+  private RequestHeadersTemplate(HttpHeaders passThroughHeaders, boolean debugEnabled, @Nullable String accept,
+                                 @Nullable String acceptErrors, boolean mediaTypesCompatible) {
+    this.passThroughHeaders = passThroughHeaders;
+    this.debugEnabled = debugEnabled;
+    this.accept = accept;
+    this.acceptErrors = acceptErrors;
+    this.mediaTypesCompatible = mediaTypesCompatible;
+  }
+
+  static RequestHeadersTemplate create(Map<String, List<String>> contextHeaders, Key key) {
+    HttpHeaders passThroughHeaders = new HttpHeaders();
+    if (!key.externalRequest) {
+      for (String name : HttpClientImpl.PASS_THROUGH_HEADERS) {
+        List<String> values = contextHeaders.get(name);
+        if (values != null) {
+          passThroughHeaders.add(name, values);
+        }
+      }
+    }
+    // debug header is passed through by default, but should be removed if debug is not enabled
+    if (!key.debugEnabled) {
+      passThroughHeaders.remove(X_HH_DEBUG);
+    }
+    return new RequestHeadersTemplate(
+        passThroughHeaders,
+        key.debugEnabled,
+        key.expectedMediaTypes.map(RequestHeadersTemplate::join).orElse(null),
+        key.expectedMediaTypesForErrors.map(RequestHeadersTemplate::join).orElse(null),
+        areCompatible(key.expectedMediaTypes, key.expectedMediaTypesForErrors)
+    );
+  }
+
+  private static String join(Collection<String> mediaTypes) {
+    return String.join(",", mediaTypes);
+  }
+
+  private static boolean areCompatible(Optional<Collection<String>> mediaTypes, Optional<Collection<String>> mediaTypesForErrors) {
+    if (mediaTypes.isEmpty() || mediaTypesForErrors.isEmpty()) {
+      return true;
+    }
+    if (mediaTypes.get().size() == 1 && mediaTypes.get().contains(ContentType.ANY)) {
+      return true;
+    }
+    return mediaTypes.get().equals(mediaTypesForErrors.get());
+  }
+
+  /**
+   * should not be modified, requests copy them
+   */
+  HttpHeaders getPassThroughHeaders() {
+    return passThroughHeaders;
+  }
+
+  boolean isDebugEnabled() {
+    return debugEnabled;
+  }
+
+  @Nullable
+  String getAccept() {
+    return accept;
+  }
+
+  @Nullable
+  String getAcceptErrors() {
+    return acceptErrors;
+  }
+
+  boolean areMediaTypesCompatible() {
+    return mediaTypesCompatible;
+  }
+
+  static final class Key {
+    private final boolean externalRequest;
+    private final boolean debugEnabled;
+    private final Optional<Collection<String>> expectedMediaTypes;
+    private final Optional<Collection<String>> expectedMediaTypesForErrors;
+
+    Key(boolean externalRequest, boolean debugEnabled, Optional<Collection<String>> expectedMediaTypes,
+        Optional<Collection<String>> expectedMediaTypesForErrors) {
+      this.externalRequest = externalRequest;
+      this.debugEnabled = debugEnabled;
+      this.expectedMediaTypes = expectedMediaTypes;
+      this.expectedMediaTypesForErrors = expectedMediaTypesForErrors;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return externalRequest == key.externalRequest &&
+          debugEnabled == key.debugEnabled &&
+          expectedMediaTypes.equals(key.expectedMediaTypes) &&
+          expectedMediaTypesForErrors.equals(key.expectedMediaTypesForErrors);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(externalRequest, debugEnabled, expectedMediaTypes, expectedMediaTypesForErrors);
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package ru.hh.jclient.common;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.UnaryOperator;
 
 public interface RequestStrategy<REB extends RequestEngineBuilder<REB>> {
@@ -9,6 +10,13 @@ public interface RequestStrategy<REB extends RequestEngineBuilder<REB>> {
     CompletableFuture<ResponseWrapper> executeRequest(Request request, int retryCount, RequestContext context);
     CompletableFuture<ResponseWrapper> handleFailFastResponse(Request request, RequestContext requestContext, Response response);
     int getDefaultRequestTimeoutMs();
+
+    /**
+     * executor of response callbacks, the request engine may also use it to fire tries from its own timers
+     */
+    default Executor getCallbackExecutor() {
+      return Runnable::run;
+    }
   }
   REB createRequestEngineBuilder(HttpClient client);
   RequestStrategy<REB> createCustomizedCopy(UnaryOperator<REB> configAction);
@@ -5,13 +5,23 @@ import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import ru.hh.jclient.common.responseconverter.BodyPartsParser;
+import ru.hh.jclient.common.util.Try;
 
 public class Response {
 
   private final org.asynchttpclient.Response delegate;
+  @Nullable
+  private final Try<Object> parsedBody;
 
   Response(org.asynchttpclient.Response delegate) {
+    this(delegate, null);
+  }
+
+  Response(org.asynchttpclient.Response delegate, @Nullable Try<Object> parsedBody) {
     this.delegate = delegate;
+    this.parsedBody = parsedBody;
   }
 
   protected Response() {
@@ -169,6 +179,16 @@ public class Response {
     return delegate.hasResponseBody();
   }
 
+  /**
+   * Returns result of {@link BodyPartsParser} if body was parsed as it arrived. Body is not aggregated in this case.
+   *
+   * @return parsed body or parsing failure, null if body was aggregated
+   */
+  @Nullable
+  public Try<Object> getParsedBody() {
+    return parsedBody;
+  }
+
   org.asynchttpclient.Response getDelegate() {
     return delegate;
   }
@@ -0,0 +1,51 @@
+package ru.hh.jclient.common.responseconverter;
+
+import ru.hh.jclient.common.Response;
+
+/**
+ * Parses body of a successful response part by part as it arrives, so parsing overlaps with the transfer
+ * and less of it is left by the time the last part is received. Parser may still hold the whole parsed body until then.
+ * Created by {@link IncrementalTypeConverter} for every try of a request.
+ * Methods are called sequentially on IO thread, so they should do only cheap work like tokenizing, leaving the rest to converter function.
+ */
+public interface BodyPartsParser {
+
+  /**
+   * @param bytes next part of response body, not retained by caller
+   */
+  void onBodyPart(byte[] bytes) throws Exception;
+
+  /**
+   * Called after the last part of response body.
+   *
+   * @return parsed body available to converter function with {@link Response#getParsedBody()}
+   */
+  Object onCompleted() throws Exception;
+
+  /**
+   * Called before the first part.
+   *
+   * @param reads lets parser suspend reading of the body while consumer of parsed parts is behind
+   */
+  default void setReads(Reads reads) {
+  }
+
+  /**
+   * Checked after every part.
+   *
+   * @return true if the rest of the body is not needed: the request is aborted and completed with the parts received so far
+   */
+  default boolean isAborted() {
+    return false;
+  }
+
+  /**
+   * reading of response body from the connection, methods can be called from any thread
+   */
+  interface Reads {
+
+    void pause();
+
+    void resume();
+  }
+}
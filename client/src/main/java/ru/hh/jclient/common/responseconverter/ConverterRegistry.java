@@ -0,0 +1,143 @@
+package ru.hh.jclient.common.responseconverter;
+
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * Per-type state of converters, which is expensive to build for every converter or every response.
+ * Converters are created for every request, so they take the state from here when created
+ */
+final class ConverterRegistry {
+  private static final ClassValue<Parser<?>> PROTOBUF_PARSERS = new ClassValue<>() {
+    @Override
+    protected Parser<?> computeValue(Class<?> type) {
+      try {
+        return ((MessageLite) type.getMethod("getDefaultInstance").invoke(null)).getParserForType();
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalArgumentException("Failed to get protobuf parser of " + type, e);
+      }
+    }
+  };
+
+  /**
+   * pools are kept with the class, so they go away together with its class loader
+   */
+  private static final ClassValue<XmlState> XML_STATES = new ClassValue<>() {
+    @Override
+    protected XmlState computeValue(Class<?> type) {
+      return new XmlState(type);
+    }
+  };
+
+  private ConverterRegistry() {
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> Parser<T> getProtobufParser(Class<T> protobufClass) {
+    return (Parser<T>) PROTOBUF_PARSERS.get(protobufClass);
+  }
+
+  /**
+   * @return pool of JAXB context created once for the class
+   */
+  static UnmarshallerPool getUnmarshallerPool(Class<?> xmlClass) {
+    return XML_STATES.get(xmlClass).getPool();
+  }
+
+  /**
+   * @return pool of the given context, which is reused while the class is converted with the same context
+   */
+  static UnmarshallerPool getUnmarshallerPool(Class<?> xmlClass, JAXBContext context) {
+    return XML_STATES.get(xmlClass).getPool(context);
+  }
+
+  /**
+   * pools of JAXB contexts of a class: the one created for the class, built on first use,
+   * and the last one provided by callers, usually the same context every time
+   */
+  private static final class XmlState {
+    private final Class<?> type;
+    private volatile UnmarshallerPool ownPool;
+    private volatile UnmarshallerPool providedPool;
+
+    private XmlState(Class<?> type) {
+      this.type = type;
+    }
+
+    UnmarshallerPool getPool() {
+      UnmarshallerPool pool = ownPool;
+      if (pool == null) {
+        synchronized (this) {
+          pool = ownPool;
+          if (pool == null) {
+            pool = new UnmarshallerPool(createContext());
+            ownPool = pool;
+          }
+        }
+      }
+      return pool;
+    }
+
+    UnmarshallerPool getPool(JAXBContext context) {
+      UnmarshallerPool pool = ownPool;
+      if (pool != null && pool.context == context) {
+        return pool;
+      }
+      pool = providedPool;
+      if (pool == null || pool.context != context) {
+        pool = new UnmarshallerPool(context);
+        providedPool = pool;
+      }
+      return pool;
+    }
+
+    private JAXBContext createContext() {
+      try {
+        return JAXBContext.newInstance(type);
+      } catch (JAXBException e) {
+        throw new IllegalArgumentException("Failed to create JAXB context of " + type, e);
+      }
+    }
+  }
+
+  /**
+   * {@link Unmarshaller} is not thread safe, so idle ones are pooled instead of being shared
+   */
+  static final class UnmarshallerPool {
+    private static final int MAX_IDLE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final JAXBContext context;
+    private final Queue<Unmarshaller> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private UnmarshallerPool(JAXBContext context) {
+      this.context = context;
+    }
+
+    Unmarshaller acquire() throws JAXBException {
+      Unmarshaller unmarshaller = idle.poll();
+      if (unmarshaller == null) {
+        return context.createUnmarshaller();
+      }
+      idleCount.decrementAndGet();
+      return unmarshaller;
+    }
+
+    /**
+     * should be called only if unmarshalling succeeded, as state of unmarshaller is unknown after a failure
+     */
+    void release(Unmarshaller unmarshaller) {
+      if (idleCount.incrementAndGet() > MAX_IDLE) {
+        idleCount.decrementAndGet();
+        return;
+      }
+      idle.offer(unmarshaller);
+    }
+  }
+}
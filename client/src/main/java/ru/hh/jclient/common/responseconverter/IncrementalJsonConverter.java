@@ -0,0 +1,69 @@
+package ru.hh.jclient.common.responseconverter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import static java.util.Objects.requireNonNull;
+import ru.hh.jclient.common.Response;
+import ru.hh.jclient.common.ResultWithResponse;
+import static ru.hh.jclient.common.util.JsonTypeConverter.convertClassToJavaType;
+import static ru.hh.jclient.common.util.JsonTypeConverter.convertReferenceToJavaType;
+import ru.hh.jclient.common.util.MoreFunctionalInterfaces.FailableFunction;
+import ru.hh.jclient.common.util.Try;
+
+/**
+ * Same as {@link JsonConverter}, but body of successful response is tokenized as it arrives, so only binding of tokens
+ * to result type is left when the last byte is received. It saves time, not memory: tokens of the whole body are buffered until then.
+ * Response body is not available to {@link ru.hh.jclient.common.RequestDebug debug} and to the caller in this case.
+ */
+public class IncrementalJsonConverter<T> extends SingleTypeConverter<T> implements IncrementalTypeConverter<T> {
+
+  private final ObjectMapper objectMapper;
+  private final JavaType jsonType;
+
+  private IncrementalJsonConverter(ObjectMapper objectMapper, JavaType jsonType) {
+    this.objectMapper = requireNonNull(objectMapper, "objectMapper must not be null");
+    this.jsonType = requireNonNull(jsonType, "jsonClass must not be null");
+  }
+
+  public IncrementalJsonConverter(ObjectMapper objectMapper, Class<T> jsonClass) {
+    this(objectMapper, convertClassToJavaType(objectMapper, jsonClass));
+  }
+
+  public IncrementalJsonConverter(ObjectMapper objectMapper, TypeReference<T> jsonClass) {
+    this(objectMapper, convertReferenceToJavaType(objectMapper, jsonClass));
+  }
+
+  @Override
+  public BodyPartsParser createBodyPartsParser() {
+    try {
+      return new JsonBodyPartsParser(objectMapper);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public FailableFunction<Response, ResultWithResponse<T>, Exception> singleTypeConverterFunction() {
+    return r -> {
+      Try<Object> parsedBody = r.getParsedBody();
+      if (parsedBody == null) {
+        return new ResultWithResponse<>(objectMapper.readValue(r.getResponseBodyAsStream(), jsonType), r);
+      }
+      if (parsedBody.isFailure()) {
+        throw new IOException("Failed to parse response body", parsedBody.reasonOfFail());
+      }
+      TokenBuffer tokens = (TokenBuffer) parsedBody.get();
+      return new ResultWithResponse<>(objectMapper.readValue(tokens.asParser(objectMapper), jsonType), r);
+    };
+  }
+
+  @Override
+  protected Collection<String> getContentTypes() {
+    return JsonConverter.MEDIA_TYPES;
+  }
+}
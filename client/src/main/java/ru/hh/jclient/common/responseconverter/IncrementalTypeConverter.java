@@ -0,0 +1,14 @@
+package ru.hh.jclient.common.responseconverter;
+
+import ru.hh.jclient.common.Response;
+
+/**
+ * {@link TypeConverter} which parses body of successful responses with {@link BodyPartsParser} as body parts arrive.
+ * Converter function should use {@link Response#getParsedBody()} if it is present and fall back to aggregated body otherwise.
+ *
+ * @param <T> type of conversion result
+ */
+public interface IncrementalTypeConverter<T> extends TypeConverter<T> {
+
+  BodyPartsParser createBodyPartsParser();
+}
@@ -0,0 +1,48 @@
+package ru.hh.jclient.common.responseconverter;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+
+/**
+ * Tokenizes JSON body parts with non-blocking parser into {@link TokenBuffer}, which is bound to result type by converter function.
+ * Only tokenizing overlaps with the transfer: the whole document is buffered as tokens, which take about as much memory as body bytes
+ * or more, and binding starts after the last part. Jackson databind needs a blocking parser, so it can not bind as tokens arrive
+ */
+final class JsonBodyPartsParser implements BodyPartsParser {
+  private final JsonParser parser;
+  private final ByteArrayFeeder feeder;
+  private final TokenBuffer tokens;
+
+  JsonBodyPartsParser(ObjectMapper objectMapper) throws IOException {
+    parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+    feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    tokens = new TokenBuffer(objectMapper, false);
+    tokens.forceUseOfBigDecimal(objectMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS));
+  }
+
+  @Override
+  public void onBodyPart(byte[] bytes) throws IOException {
+    feeder.feedInput(bytes, 0, bytes.length);
+    copyAvailableTokens();
+  }
+
+  @Override
+  public TokenBuffer onCompleted() throws IOException {
+    feeder.endOfInput();
+    copyAvailableTokens();
+    parser.close();
+    return tokens;
+  }
+
+  private void copyAvailableTokens() throws IOException {
+    JsonToken token;
+    while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+      tokens.copyCurrentEvent(parser);
+    }
+  }
+}
@@ -1,7 +1,7 @@
 package ru.hh.jclient.common.responseconverter;
 
 import com.google.protobuf.GeneratedMessageV3;
-import java.io.InputStream;
+import com.google.protobuf.Parser;
 import java.util.Collection;
 import static java.util.Objects.requireNonNull;
 import java.util.Set;
@@ -16,21 +16,19 @@ public class ProtobufConverter<T extends GeneratedMessageV3> extends SingleTypeC
 
   private static final Set<String> MEDIA_TYPES = of(APPLICATION_PROTOBUF, APPLICATION_X_PROTOBUF);
 
-  private Class<T> protobufClass;
+  private final Parser<T> parser;
 
   public ProtobufConverter(Class<T> protobufClass) {
-    this.protobufClass = requireNonNull(protobufClass, "protobufClass");
+    this.parser = ConverterRegistry.getProtobufParser(requireNonNull(protobufClass, "protobufClass"));
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public FailableFunction<Response, ResultWithResponse<T>, Exception> singleTypeConverterFunction() {
     return r -> {
       T value;
       var inputStream = r.getResponseBodyAsStream();
       if (inputStream.available() > 0) {
-        var parseFromMethod = protobufClass.getMethod("parseFrom", InputStream.class);
-        value = (T) parseFromMethod.invoke(null, inputStream);
+        value = parser.parseFrom(inputStream);
       } else {
         value = null;
       }
@@ -6,12 +6,14 @@ import java.util.Set;
 import static java.util.Set.of;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Unmarshaller;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import ru.hh.jclient.common.Response;
 import ru.hh.jclient.common.ResultWithResponse;
+import ru.hh.jclient.common.responseconverter.ConverterRegistry.UnmarshallerPool;
 import static ru.hh.jclient.common.util.ContentType.APPLICATION_XML;
 import static ru.hh.jclient.common.util.ContentType.TEXT_XML;
 import ru.hh.jclient.common.util.MoreFunctionalInterfaces.FailableFunction;
@@ -21,12 +23,20 @@ public class XmlConverter<T> extends SingleTypeConverter<T> {
   private static final Set<String> MEDIA_TYPES = of(TEXT_XML, APPLICATION_XML);
   private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
 
-  private JAXBContext context;
-  private Class<T> xmlClass;
+  private final UnmarshallerPool unmarshallers;
+  private final Class<T> xmlClass;
 
   public XmlConverter(JAXBContext context, Class<T> xmlClass) {
-    this.context = requireNonNull(context, "context must not be null");
     this.xmlClass = requireNonNull(xmlClass, "xmlClass must not be null");
+    this.unmarshallers = ConverterRegistry.getUnmarshallerPool(xmlClass, requireNonNull(context, "context must not be null"));
+  }
+
+  /**
+   * Uses JAXB context created once for the class.
+   */
+  public XmlConverter(Class<T> xmlClass) {
+    this.xmlClass = requireNonNull(xmlClass, "xmlClass must not be null");
+    this.unmarshallers = ConverterRegistry.getUnmarshallerPool(xmlClass);
   }
 
   @Override
@@ -34,7 +44,9 @@ public class XmlConverter<T> extends SingleTypeConverter<T> {
     return r -> {
       Source source = new StreamSource(r.getResponseBodyAsStream());
       XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(source);
-      JAXBElement<T> root = context.createUnmarshaller().unmarshal(reader, xmlClass);
+      Unmarshaller unmarshaller = unmarshallers.acquire();
+      JAXBElement<T> root = unmarshaller.unmarshal(reader, xmlClass);
+      unmarshallers.release(unmarshaller);
       return new ResultWithResponse<>(root.getValue(), r);
     };
   }